@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.blackrook.ogl.enums.GeometryType;
+import com.blackrook.ogl.mesh.PolygonMesh;
+
+/**
+ * Shared fixtures for the benchmarks. Everything here is built from a fixed seed,
+ * so that runs are comparable.
+ * @author Matthew Tropiano
+ */
+final class BenchmarkUtils
+{
+	private BenchmarkUtils() {}
+
+	/**
+	 * Creates a triangle mesh with every attribute set.
+	 * @param vertexCount the amount of vertices.
+	 * @param textureLayers the amount of texture layers.
+	 * @return a new mesh.
+	 */
+	static PolygonMesh createMesh(int vertexCount, int textureLayers)
+	{
+		Random random = new Random(0L);
+		PolygonMesh out = new PolygonMesh(GeometryType.TRIANGLES, vertexCount, textureLayers);
+		for (int i = 0; i < vertexCount; i++)
+		{
+			out.setVertex(i, random.nextFloat(), random.nextFloat(), random.nextFloat());
+			for (int t = 0; t < textureLayers; t++)
+				out.setTextureCoordinate(t, i, random.nextFloat(), random.nextFloat());
+			out.setNormal(i, 0f, 0f, 1f);
+			out.setColor(i, random.nextFloat(), random.nextFloat(), random.nextFloat(), 1f);
+		}
+		return out;
+	}
+
+	/**
+	 * Creates an ARGB image filled with noise.
+	 * @param width the image width.
+	 * @param height the image height.
+	 * @return a new image.
+	 */
+	static BufferedImage createImage(int width, int height)
+	{
+		Random random = new Random(0L);
+		BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] data = new int[width * height];
+		for (int i = 0; i < data.length; i++)
+			data[i] = random.nextInt();
+		out.setRGB(0, 0, width, height, data, 0, width);
+		return out;
+	}
+
+}
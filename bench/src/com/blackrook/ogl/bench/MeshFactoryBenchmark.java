@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.ogl.mesh.PolygonMesh;
+import com.blackrook.ogl.mesh.util.EquilateralShapeDescriptor;
+import com.blackrook.ogl.mesh.util.MeshFactory;
+
+/**
+ * Benchmarks for building meshes with {@link MeshFactory}.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshFactoryBenchmark
+{
+	/** Number of shape sides. */
+	@Param({"8", "256"})
+	public int sides;
+
+	/** The shape to build. */
+	private EquilateralShapeDescriptor descriptor;
+
+	@Setup
+	public void setup()
+	{
+		descriptor = new EquilateralShapeDescriptor(sides, 1.0, 0.0, EquilateralShapeDescriptor.TextureGen.FACE_BOUNDS);
+	}
+
+	@Benchmark
+	public PolygonMesh createMesh()
+	{
+		return MeshFactory.createMesh(descriptor);
+	}
+
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.commons.Common;
+import com.blackrook.ogl.mesh.MeshView;
+import com.blackrook.ogl.mesh.PolygonMesh;
+
+/**
+ * Benchmarks for copying mesh data out of a {@link MeshView}, both packed and interleaved.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshViewBenchmark
+{
+	/** Number of vertices in the mesh. */
+	@Param({"64", "4096"})
+	public int vertexCount;
+
+	/** The view to read from. */
+	private MeshView view;
+	/** Target buffer, big enough for interleaved vertices and colors. */
+	private FloatBuffer target;
+
+	@Setup
+	public void setup()
+	{
+		PolygonMesh mesh = BenchmarkUtils.createMesh(vertexCount, 1);
+		view = mesh.getView();
+		target = Common.allocDirectByteBuffer(vertexCount * 7 * 4).asFloatBuffer();
+	}
+
+	@Benchmark
+	public FloatBuffer getVertices()
+	{
+		view.getVertices(target, 0, 3);
+		return target;
+	}
+
+	@Benchmark
+	public FloatBuffer getColors()
+	{
+		view.getColors(target, 0, 4);
+		return target;
+	}
+
+	@Benchmark
+	public FloatBuffer getVerticesAndColorsInterleaved()
+	{
+		view.getVertices(target, 0, 3, 0, 7);
+		view.getColors(target, 0, 4, 3, 7);
+		return target;
+	}
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.ogl.data.OGLBitmap;
+
+/**
+ * Benchmarks for {@link OGLBitmap} boolean operations.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OGLBitmapBenchmark
+{
+	/** Bitmap size. */
+	@Param({"32", "256"})
+	public int size;
+
+	/** First operand. */
+	private OGLBitmap a;
+	/** Second operand. */
+	private OGLBitmap b;
+	/** Output. */
+	private OGLBitmap out;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(0L);
+		a = new OGLBitmap(size, size);
+		b = new OGLBitmap(size, size);
+		out = new OGLBitmap(size, size);
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++)
+			{
+				a.setBit(x, y, random.nextBoolean());
+				b.setBit(x, y, random.nextBoolean());
+			}
+	}
+
+	@Benchmark
+	public OGLBitmap and()
+	{
+		OGLBitmap.and(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLBitmap or()
+	{
+		OGLBitmap.or(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLBitmap xor()
+	{
+		OGLBitmap.xor(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLBitmap not()
+	{
+		OGLBitmap.not(a, out);
+		return out;
+	}
+
+	@Benchmark
+	public int countBits()
+	{
+		int n = 0;
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++)
+				if (a.getBit(x, y))
+					n++;
+		return n;
+	}
+
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.ogl.data.OGLColor;
+
+/**
+ * Benchmarks for {@link OGLColor} arithmetic.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OGLColorBenchmark
+{
+	/** First operand. */
+	private OGLColor a;
+	/** Second operand. */
+	private OGLColor b;
+	/** Output. */
+	private OGLColor out;
+
+	@Setup
+	public void setup()
+	{
+		a = new OGLColor(0.25f, 0.5f, 0.75f, 0.5f);
+		b = new OGLColor(0.5f, 0.25f, 0.125f, 0.75f);
+		out = new OGLColor();
+	}
+
+	@Benchmark
+	public OGLColor add()
+	{
+		OGLColor.add(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLColor multiply()
+	{
+		OGLColor.multiply(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLColor scale()
+	{
+		OGLColor.scale(a, 0.5f, out);
+		return out;
+	}
+
+	@Benchmark
+	public OGLColor alphaBlend()
+	{
+		OGLColor.alphaBlend(a, b, out);
+		return out;
+	}
+
+	@Benchmark
+	public int getARGB()
+	{
+		return a.getARGB();
+	}
+
+	@Benchmark
+	public OGLColor setARGB()
+	{
+		out.set(0x80402010);
+		return out;
+	}
+
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.awt.image.BufferedImage;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.ogl.OGLGraphicUtils;
+
+/**
+ * Benchmarks for image conversion and resizing in {@link OGLGraphicUtils}.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class OGLGraphicUtilsBenchmark
+{
+	/** Source image size. */
+	@Param({"64", "512"})
+	public int size;
+
+	/** Source image. */
+	private BufferedImage image;
+	/** Source image data. */
+	private IntBuffer imageData;
+
+	@Setup
+	public void setup()
+	{
+		image = BenchmarkUtils.createImage(size, size);
+		ByteBuffer bytes = (ByteBuffer)OGLGraphicUtils.getByteData(image);
+		bytes.order(ByteOrder.LITTLE_ENDIAN);
+		imageData = bytes.asIntBuffer();
+	}
+
+	@Benchmark
+	public Buffer getByteData()
+	{
+		return OGLGraphicUtils.getByteData(image);
+	}
+
+	@Benchmark
+	public BufferedImage setImageData()
+	{
+		imageData.rewind();
+		return OGLGraphicUtils.setImageData(imageData, size, size);
+	}
+
+	@Benchmark
+	public BufferedImage performResize()
+	{
+		return OGLGraphicUtils.performResize(image, size / 2, size / 2);
+	}
+
+	@Benchmark
+	public BufferedImage performResizeBilinear()
+	{
+		return OGLGraphicUtils.performResizeBilinear(image, size / 2, size / 2);
+	}
+
+	@Benchmark
+	public BufferedImage performResizeTrilinear()
+	{
+		return OGLGraphicUtils.performResizeTrilinear(image, size / 2, size / 2);
+	}
+
+}
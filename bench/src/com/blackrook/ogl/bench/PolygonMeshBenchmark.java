@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.bench;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.blackrook.commons.Common;
+import com.blackrook.ogl.mesh.MeshView;
+import com.blackrook.ogl.mesh.PolygonMesh;
+
+/**
+ * Benchmarks for the CPU side of rebuilding a {@link PolygonMesh}'s geometry buffer:
+ * filling every attribute, interleaved, into a direct buffer. A plain direct buffer stands in
+ * for the mapped buffer, so no GL context is needed.
+ * <p>
+ * This does not call the mesh's own rebuild, <code>PolygonMesh.PolygonView.rebuildBuffer(OGLGraphics)</code>:
+ * it needs an {@link com.blackrook.ogl.OGLGraphics}, which can only be made by an {@link com.blackrook.ogl.OGLSystem}
+ * from a live drawable, and stubbing all of GL behind it would add more to the measurement than the fill itself
+ * at small sizes. Instead, the fill loop here is a copy of that method's, call for call, and must be kept
+ * in step with it: including that every texture layer is written at the same offset.
+ * @author Matthew Tropiano
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolygonMeshBenchmark
+{
+	/** Number of vertices in the mesh. */
+	@Param({"64", "4096"})
+	public int vertexCount;
+	/** Number of texture layers. */
+	@Param({"1", "2"})
+	public int textureLayers;
+
+	/** The mesh. */
+	private PolygonMesh mesh;
+	/** Stand-in for the mapped geometry buffer. */
+	private FloatBuffer target;
+	/** Interleaved element width. */
+	private int width;
+
+	@Setup
+	public void setup()
+	{
+		mesh = BenchmarkUtils.createMesh(vertexCount, textureLayers);
+		width = 3 + textureLayers * 2 + 3 + 4;
+		target = Common.allocDirectByteBuffer(vertexCount * width * 4).asFloatBuffer();
+	}
+
+	@Benchmark
+	public FloatBuffer rebuildInterleaved()
+	{
+		MeshView view = mesh.getView();
+		// same calls as PolygonMesh.PolygonView.rebuildBuffer(OGLGraphics).
+		int offs = 0;
+		view.getVertices(target, 0, 3, offs, width);
+		offs += 3;
+		for (int i = 0; i < textureLayers; i++)
+			view.getTextureCoordinates(target, i, 0, 2, offs, width);
+		offs += (textureLayers*2);
+		view.getNormals(target, 0, offs, width);
+		offs += 3;
+		view.getColors(target, 0, 4, offs, width);
+		offs += 4;
+		return target;
+	}
+
+}
@@ -13,16 +13,8 @@ package com.blackrook.ogl;
  */
 public class OGLBuffer extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
+	/** Estimated size in bytes. */
+	private long estimatedBytes;
 
 	/**
 	 * Creates an OpenGL Buffer of a certain type.
@@ -46,39 +38,32 @@ public class OGLBuffer extends OGLObject
 	{
 		glStateNum[0] = getGLId();
 		g.getGL().glDeleteBuffers(1, glStateNum, 0);
+		estimatedBytes = 0L;
 		return true;
 	}
 
 	/**
-	 * Destroys undeleted buffers abandoned from destroyed Java objects.
+	 * Sets the estimated size of this buffer's data.
+	 * @param bytes the size in bytes.
 	 */
-	static void destroyUndeleted(OGLGraphics g)
+	void setEstimatedBytes(long bytes)
 	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			g.getGL().glDeleteBuffers(UNDELETED_LENGTH, UNDELETED_IDS, 0);
-			UNDELETED_LENGTH = 0;
-		}
+		estimatedBytes = bytes;
+		setRegistryBytes(bytes);
 	}
 
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
+	/**
+	 * Returns the amount of memory allocated for this buffer's data in bytes.
+	 */
+	public long getEstimatedBytes()
 	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
+		return estimatedBytes;
 	}
-	
+
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.BUFFER;
 	}
 
 }
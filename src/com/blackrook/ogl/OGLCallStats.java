@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * Per-function OpenGL call counts and CPU times for one frame,
+ * gathered while call tracing is enabled on an {@link OGLGraphics}.
+ * Functions are sorted by cumulative time, most expensive first.
+ * Times include the overhead of tracing itself, so they are best compared relative to each other.
+ * @author Matthew Tropiano
+ * @see OGLGraphics#setCallTracingEnabled(boolean)
+ */
+public class OGLCallStats
+{
+	/** Frame number. */
+	private long frame;
+	/** Function names. */
+	private String[] names;
+	/** Call counts. */
+	private int[] counts;
+	/** Cumulative CPU nanoseconds. */
+	private long[] nanos;
+	/** Total calls. */
+	private int totalCalls;
+	/** Total CPU nanoseconds. */
+	private long totalNanos;
+
+	/**
+	 * Creates a new set of stats from raw per-function counters.
+	 * @param frame the frame number.
+	 * @param allNames the function names by function index.
+	 * @param allCounts the call counts by function index.
+	 * @param allNanos the CPU times by function index.
+	 * @param functionCount the number of function indices in use.
+	 */
+	OGLCallStats(long frame, String[] allNames, int[] allCounts, long[] allNanos, int functionCount)
+	{
+		this.frame = frame;
+
+		int n = 0;
+		for (int i = 0; i < functionCount; i++)
+			if (allCounts[i] > 0)
+				n++;
+
+		this.names = new String[n];
+		this.counts = new int[n];
+		this.nanos = new long[n];
+		this.totalCalls = 0;
+		this.totalNanos = 0L;
+
+		// insertion sort by time, descending. the number of distinct functions per frame is small.
+		int size = 0;
+		for (int i = 0; i < functionCount; i++)
+		{
+			if (allCounts[i] == 0)
+				continue;
+			totalCalls += allCounts[i];
+			totalNanos += allNanos[i];
+			int j = size++;
+			while (j > 0 && nanos[j - 1] < allNanos[i])
+			{
+				names[j] = names[j - 1];
+				counts[j] = counts[j - 1];
+				nanos[j] = nanos[j - 1];
+				j--;
+			}
+			names[j] = allNames[i];
+			counts[j] = allCounts[i];
+			nanos[j] = allNanos[i];
+		}
+	}
+
+	/**
+	 * Returns the number of the frame these stats are for.
+	 * @see OGLGraphics#currentFrame()
+	 */
+	public long getFrame()
+	{
+		return frame;
+	}
+
+	/**
+	 * Returns the number of distinct functions called.
+	 */
+	public int getFunctionCount()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Returns a function's name.
+	 * @param index the function index, in order of cumulative time.
+	 */
+	public String getFunctionName(int index)
+	{
+		return names[index];
+	}
+
+	/**
+	 * Returns the number of calls to a function.
+	 * @param index the function index, in order of cumulative time.
+	 */
+	public int getCallCount(int index)
+	{
+		return counts[index];
+	}
+
+	/**
+	 * Returns the cumulative CPU time spent in a function, in nanoseconds.
+	 * @param index the function index, in order of cumulative time.
+	 */
+	public long getNanos(int index)
+	{
+		return nanos[index];
+	}
+
+	/**
+	 * Returns the total number of calls made.
+	 */
+	public int getTotalCallCount()
+	{
+		return totalCalls;
+	}
+
+	/**
+	 * Returns the total CPU time spent in calls, in nanoseconds.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * Returns a readable report of the most expensive functions.
+	 * @param count the maximum number of functions to list.
+	 */
+	public String getReport(int count)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("Frame ").append(frame).append(": ")
+			.append(totalCalls).append(" calls, ")
+			.append(String.format("%.3f", totalNanos / 1000000.0)).append(" ms\n");
+		for (int i = 0; i < Math.min(count, names.length); i++)
+		{
+			sb.append(String.format("%10.3f ms %8d  %s", nanos[i] / 1000000.0, counts[i], names[i]));
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return getReport(10);
+	}
+
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.commons.list.List;
+import com.blackrook.ogl.exception.GraphicsException;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GL4bc;
+import com.jogamp.opengl.TraceGL2;
+
+/**
+ * A counting and tracing decorator for {@link GL2}.
+ * <p>
+ * This is built on JOGL's generated {@link TraceGL2} pipeline, which wraps every GL function,
+ * by intercepting its text output instead of printing it: each call announces its name and arguments 
+ * just before calling down to the real GL, and ends its line just after, which is enough to 
+ * count and time every function without a hand-written wrapper for each.
+ * <p>
+ * Counts calls and cumulative CPU time per function for each frame, and can
+ * log every call of one frame, along with the library method that made it.
+ * Only the rendering thread may use this.
+ * @author Matthew Tropiano
+ */
+final class OGLCallTracer extends TraceGL2
+{
+	/** Package prefix of library methods that make calls. */
+	private static final String PACKAGE_PREFIX = "com.blackrook.ogl.";
+	/** Stream for output that should never happen. */
+	private static final PrintStream NULL_STREAM = new PrintStream(new OutputStream()
+	{
+		@Override
+		public void write(int b)
+		{
+			// Do nothing.
+		}
+	});
+
+	/** The real GL. */
+	private GL2 delegate;
+
+	/** Function indices by name. */
+	private HashMap<String, Integer> functionIndices;
+	/** Function names by index. */
+	private String[] names;
+	/** Call counts by index, this frame. */
+	private int[] counts;
+	/** CPU nanos by index, this frame. */
+	private long[] nanos;
+	/** Number of function indices in use. */
+	private int functionCount;
+
+	/** Index of the function being called, or -1 if none. */
+	private int callIndex;
+	/** Text of the call being made, if capturing. */
+	private String callText;
+	/** Start time of the call being made. */
+	private long callStart;
+
+	/** Stats of the last finished frame. */
+	private volatile OGLCallStats lastStats;
+
+	/** Maximum calls to log in the next captured frame, or 0 if not capturing. */
+	private volatile int captureRequest;
+	/** Maximum calls to log in the frame being captured, or 0 if not capturing. */
+	private int captureLimit;
+	/** Call log of the frame being captured. */
+	private List<String> captureLog;
+	/** Number of calls not logged in the frame being captured. */
+	private int captureDropped;
+	/** Last completed call log. */
+	private volatile String[] capturedLog;
+
+	/**
+	 * Creates a new tracer.
+	 * @param delegate the GL to forward calls to.
+	 */
+	private OGLCallTracer(GL2 delegate)
+	{
+		super(delegate, NULL_STREAM);
+		this.delegate = delegate;
+		this.functionIndices = new HashMap<String, Integer>(128);
+		this.names = new String[128];
+		this.counts = new int[128];
+		this.nanos = new long[128];
+		this.functionCount = 0;
+		this.callIndex = -1;
+		this.callText = null;
+		this.callStart = 0L;
+		this.lastStats = null;
+		this.captureRequest = 0;
+		this.captureLimit = 0;
+		this.captureLog = null;
+		this.captureDropped = 0;
+		this.capturedLog = null;
+	}
+
+	/**
+	 * Creates a new tracer around a GL.
+	 * @param delegate the GL to forward calls to.
+	 * @return the new tracer.
+	 * @throws GraphicsException if the GL implementation cannot be traced.
+	 */
+	static OGLCallTracer create(GL2 delegate)
+	{
+		// the trace pipeline forwards to the full compatibility interface.
+		if (!(delegate instanceof GL4bc))
+			throw new GraphicsException("Call tracing is not supported on this GL implementation.");
+		return new OGLCallTracer(delegate);
+	}
+
+	/**
+	 * Returns the real GL.
+	 */
+	GL2 getDelegate()
+	{
+		return delegate;
+	}
+
+	/**
+	 * Starts counting a new frame.
+	 */
+	void beginFrame()
+	{
+		// a call that threw never finished its line.
+		callIndex = -1;
+		callText = null;
+		Arrays.fill(counts, 0, functionCount, 0);
+		Arrays.fill(nanos, 0, functionCount, 0L);
+		int request = captureRequest;
+		if (request > 0)
+		{
+			captureRequest = 0;
+			captureLimit = request;
+			captureLog = new List<String>(Math.min(request, 1024));
+			captureDropped = 0;
+		}
+	}
+
+	/**
+	 * Finishes counting a frame.
+	 * @param frame the frame number.
+	 */
+	void endFrame(long frame)
+	{
+		lastStats = new OGLCallStats(frame, names, counts, nanos, functionCount);
+		if (captureLog != null)
+		{
+			String[] out = new String[captureLog.size() + (captureDropped > 0 ? 1 : 0)];
+			for (int i = 0; i < captureLog.size(); i++)
+				out[i] = captureLog.getByIndex(i);
+			if (captureDropped > 0)
+				out[out.length - 1] = "... " + captureDropped + " more calls not logged.";
+			capturedLog = out;
+			captureLog = null;
+			captureLimit = 0;
+		}
+	}
+
+	/**
+	 * Returns the stats of the last finished frame, or null if none.
+	 */
+	OGLCallStats getLastStats()
+	{
+		return lastStats;
+	}
+
+	/**
+	 * Requests that every call of the next frame is logged.
+	 * @param maxCalls the maximum number of calls to log.
+	 */
+	void requestCapture(int maxCalls)
+	{
+		capturedLog = null;
+		captureRequest = Math.max(1, maxCalls);
+	}
+
+	/**
+	 * Returns the last captured call log, or null if none has finished.
+	 */
+	String[] getCapturedLog()
+	{
+		return capturedLog;
+	}
+
+	@Override
+	protected void printIndent()
+	{
+		// Do nothing.
+	}
+
+	@Override
+	protected void print(String text)
+	{
+		// arguments are printed before the call is made.
+		if (callIndex < 0)
+		{
+			int paren = text.indexOf('(');
+			callIndex = getIndex(paren < 0 ? text : text.substring(0, paren));
+			callText = captureLog != null ? text : null;
+		}
+		else if (callText != null)
+			callText = callText + text;
+		callStart = System.nanoTime();
+	}
+
+	@Override
+	protected void println(String text)
+	{
+		// results are printed after the call is made.
+		long elapsed = System.nanoTime() - callStart;
+		if (callIndex < 0)
+			return;
+		counts[callIndex]++;
+		nanos[callIndex] += elapsed;
+		if (captureLog != null && callText != null)
+			log(callText + text, elapsed);
+		callIndex = -1;
+		callText = null;
+	}
+
+	// Gets or assigns a function's index.
+	private int getIndex(String name)
+	{
+		Integer index = functionIndices.get(name);
+		if (index != null)
+			return index;
+
+		int i = functionCount++;
+		if (i == names.length)
+		{
+			names = Arrays.copyOf(names, names.length * 2);
+			counts = Arrays.copyOf(counts, counts.length * 2);
+			nanos = Arrays.copyOf(nanos, nanos.length * 2);
+		}
+		names[i] = name;
+		functionIndices.put(name, i);
+		return i;
+	}
+
+	// Logs a call in the captured frame.
+	private void log(String call, long elapsed)
+	{
+		if (captureLog.size() >= captureLimit)
+		{
+			captureDropped++;
+			return;
+		}
+		captureLog.add(getCaller() + ": " + call + " " + elapsed + "ns");
+	}
+
+	// Returns the library method that made a call.
+	private static String getCaller()
+	{
+		StackTraceElement[] trace = new Throwable().getStackTrace();
+		for (StackTraceElement e : trace)
+		{
+			String className = e.getClassName();
+			if (className.startsWith(PACKAGE_PREFIX) && !className.equals(OGLCallTracer.class.getName()))
+				return className.substring(className.lastIndexOf('.') + 1) + "." + e.getMethodName();
+		}
+		return "?";
+	}
+
+}
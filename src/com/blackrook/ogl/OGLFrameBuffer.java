@@ -14,17 +14,6 @@ package com.blackrook.ogl;
  */
 public class OGLFrameBuffer extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
-
 	/**
 	 * Constructs a new FrameBuffer object.
 	 */
@@ -53,36 +42,10 @@ public class OGLFrameBuffer extends OGLObject
 		return true;
 	}
 
-	/**
-	 * Destroys undeleted buffers abandoned from destroyed Java objects.
-	 */
-	static void destroyUndeleted(OGLGraphics g)
-	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			g.getGL().glDeleteFramebuffers(UNDELETED_LENGTH, UNDELETED_IDS, 0);
-			UNDELETED_LENGTH = 0;
-		}
-	}
-
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
-	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
-	}
-	
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.FRAMEBUFFER;
 	}
 
 }
@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives an {@link OGLDisplay} from a dedicated render thread, calling {@link OGLDisplay#display()}
+ * on a fixed grid of deadlines.
+ * <p>
+ * Waiting is done in two stages: the thread parks until shortly before the deadline,
+ * then spins for the rest, since parking alone can overshoot by a millisecond or more.
+ * The spin threshold trades CPU time for accuracy.
+ * <p>
+ * What happens when a frame overruns its slot is decided by the {@link LatePolicy}.
+ * Pacing jitter (how far after its deadline each frame starts) is recorded for statistics,
+ * which are safe to read from any thread.
+ * @author Matthew Tropiano
+ */
+public class OGLFrameScheduler
+{
+	/** Number of recent jitter values kept for percentiles. */
+	public static final int JITTER_HISTORY = 256;
+	/** Default spin threshold in nanoseconds. */
+	public static final long DEFAULT_SPIN_THRESHOLD_NANOS = 2000000L;
+	/** Default maximum number of frames rendered back-to-back to catch up. */
+	public static final int DEFAULT_MAX_CATCH_UP_FRAMES = 3;
+	/** Consecutive late frames before the adaptive policy lowers the rate. */
+	private static final int ADAPT_DOWN_FRAMES = 5;
+	/** Consecutive frames with headroom before the adaptive policy raises the rate. */
+	private static final int ADAPT_UP_FRAMES = 120;
+	/** Fraction of the faster period a frame must fit in for it to count as headroom. */
+	private static final double ADAPT_UP_HEADROOM = 0.8;
+
+	/** What to do when a frame overruns its slot. */
+	public static enum LatePolicy
+	{
+		/**
+		 * Drop the missed deadlines and wait for the next one on the grid.
+		 * Keeps a steady cadence at the cost of lower throughput.
+		 */
+		SKIP,
+		/**
+		 * Render the missed frames back-to-back, up to a maximum, and drop the rest.
+		 * Keeps the average rate where possible, at the cost of uneven spacing.
+		 */
+		CATCH_UP,
+		/**
+		 * Lower the rate to a whole fraction of the target (1/2, 1/3, ...) while frames are
+		 * consistently late, and raise it again once they consistently fit.
+		 */
+		ADAPT;
+	}
+
+	/** The display to drive. */
+	private OGLDisplay display;
+	/** Render thread, or null if not running. */
+	private volatile Thread thread;
+	/** Is the thread supposed to keep running? */
+	private volatile boolean running;
+
+	/** Target period in nanoseconds, or 0 for as fast as possible. */
+	private volatile long targetPeriodNanos;
+	/** Set when the target changes, so the thread realigns its deadlines. */
+	private volatile boolean targetChanged;
+	/** Late policy. */
+	private volatile LatePolicy latePolicy;
+	/** Spin threshold. */
+	private volatile long spinThresholdNanos;
+	/** Maximum back-to-back catch-up frames. */
+	private volatile int maxCatchUpFrames;
+	/** Current rate divisor for the adaptive policy. */
+	private volatile int adaptDivisor;
+
+	/** Stats lock. */
+	private final Object statsLock;
+	/** Recent jitter values. */
+	private long[] jitterHistory;
+	/** Number of frames rendered. */
+	private long frameCount;
+	/** Number of frames that overran their slot. */
+	private long lateFrameCount;
+	/** Number of deadlines dropped. */
+	private long skippedFrameCount;
+	/** Largest jitter. */
+	private long maxJitterNanos;
+	/** Running jitter mean. */
+	private double jitterMean;
+	/** Running sum of squared jitter differences from the mean. */
+	private double jitterM2;
+
+	/**
+	 * Creates a new scheduler for a display.
+	 * It starts stopped, at 60 frames per second, with the {@link LatePolicy#SKIP} policy.
+	 * @param display the display to drive.
+	 */
+	public OGLFrameScheduler(OGLDisplay display)
+	{
+		this.display = display;
+		this.thread = null;
+		this.running = false;
+		this.targetPeriodNanos = 0L;
+		this.targetChanged = false;
+		this.latePolicy = LatePolicy.SKIP;
+		this.spinThresholdNanos = DEFAULT_SPIN_THRESHOLD_NANOS;
+		this.maxCatchUpFrames = DEFAULT_MAX_CATCH_UP_FRAMES;
+		this.adaptDivisor = 1;
+		this.statsLock = new Object();
+		this.jitterHistory = new long[JITTER_HISTORY];
+		setTargetRate(60.0);
+		resetStats();
+	}
+
+	/**
+	 * Starts the render thread. Does nothing if already running.
+	 */
+	public synchronized void start()
+	{
+		if (thread != null)
+			return;
+		running = true;
+		thread = new Thread("OGLFrameScheduler")
+		{
+			@Override
+			public void run()
+			{
+				try {
+					loop();
+				} finally {
+					running = false;
+					// if the loop died, let start() make a new thread. Not locked: stop() joins while holding the lock.
+					if (thread == this)
+						thread = null;
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the render thread and waits for the frame in progress, if any, to finish.
+	 * Does nothing if not running. Must not be called from the render thread.
+	 */
+	public synchronized void stop()
+	{
+		Thread t = thread;
+		if (t == null)
+			return;
+		running = false;
+		LockSupport.unpark(t);
+		boolean interrupted = false;
+		while (t.isAlive())
+		{
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		thread = null;
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Returns if the render thread is running.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	// The render loop.
+	private void loop()
+	{
+		long deadline = System.nanoTime();
+		int lateStreak = 0;
+		int headroomStreak = 0;
+
+		while (running)
+		{
+			if (targetChanged)
+			{
+				targetChanged = false;
+				adaptDivisor = 1;
+				lateStreak = 0;
+				headroomStreak = 0;
+				deadline = System.nanoTime();
+			}
+
+			long period = targetPeriodNanos * adaptDivisor;
+			if (period > 0L)
+			{
+				waitUntil(deadline);
+				if (!running)
+					break;
+			}
+
+			long start = System.nanoTime();
+			display.display();
+			long end = System.nanoTime();
+
+			if (period <= 0L)
+			{
+				recordFrame(0L, false, 0L);
+				deadline = end;
+				continue;
+			}
+
+			long jitter = start - deadline;
+			deadline += period;
+			boolean late = end > deadline;
+			long skipped = 0L;
+
+			if (!late)
+			{
+				lateStreak = 0;
+				if (latePolicy == LatePolicy.ADAPT && adaptDivisor > 1)
+				{
+					long fasterPeriod = targetPeriodNanos * (adaptDivisor - 1);
+					if (end - start < fasterPeriod * ADAPT_UP_HEADROOM)
+						headroomStreak++;
+					else
+						headroomStreak = 0;
+					if (headroomStreak >= ADAPT_UP_FRAMES)
+					{
+						adaptDivisor--;
+						headroomStreak = 0;
+						deadline = end;
+					}
+				}
+			}
+			else
+			{
+				headroomStreak = 0;
+				long missed = (end - deadline) / period;
+				switch (latePolicy)
+				{
+					case SKIP:
+						skipped = missed + 1;
+						deadline += skipped * period;
+						break;
+					case CATCH_UP:
+						if (missed > maxCatchUpFrames)
+						{
+							skipped = missed - maxCatchUpFrames;
+							deadline += skipped * period;
+						}
+						break;
+					case ADAPT:
+						if (++lateStreak >= ADAPT_DOWN_FRAMES)
+						{
+							adaptDivisor++;
+							lateStreak = 0;
+						}
+						// restart the grid from now, as the old one is already behind.
+						deadline = end;
+						break;
+				}
+			}
+
+			recordFrame(jitter, late, skipped);
+		}
+	}
+
+	// Parks until just before the deadline, then spins.
+	private void waitUntil(long deadline)
+	{
+		long remaining;
+		while (running && (remaining = deadline - System.nanoTime()) > spinThresholdNanos)
+			LockSupport.parkNanos(remaining - spinThresholdNanos);
+		while (running && deadline - System.nanoTime() > 0L)
+			Thread.yield();
+	}
+
+	// Records the stats of one frame.
+	private void recordFrame(long jitter, boolean late, long skipped)
+	{
+		synchronized (statsLock)
+		{
+			jitterHistory[(int)(frameCount % JITTER_HISTORY)] = jitter;
+			frameCount++;
+			if (late)
+				lateFrameCount++;
+			skippedFrameCount += skipped;
+			maxJitterNanos = Math.max(maxJitterNanos, jitter);
+			// Welford's running variance.
+			double delta = jitter - jitterMean;
+			jitterMean += delta / frameCount;
+			jitterM2 += delta * (jitter - jitterMean);
+		}
+	}
+
+	/**
+	 * Sets the target frame rate. Takes effect on the next frame, and restarts the deadline grid.
+	 * @param fps the target rate in frames per second, or 0 to render as fast as possible.
+	 * @throws IllegalArgumentException if fps is negative.
+	 */
+	public void setTargetRate(double fps)
+	{
+		if (fps < 0.0)
+			throw new IllegalArgumentException("Target rate can't be negative.");
+		targetPeriodNanos = fps > 0.0 ? Math.max(1L, Math.round(1000000000.0 / fps)) : 0L;
+		targetChanged = true;
+		Thread t = thread;
+		if (t != null)
+			LockSupport.unpark(t);
+	}
+
+	/**
+	 * Returns the target frame rate, or 0 if rendering as fast as possible.
+	 */
+	public double getTargetRate()
+	{
+		long period = targetPeriodNanos;
+		return period > 0L ? 1000000000.0 / period : 0.0;
+	}
+
+	/**
+	 * Returns the rate currently scheduled, which is lower than the target
+	 * if the {@link LatePolicy#ADAPT} policy has lowered it.
+	 */
+	public double getScheduledRate()
+	{
+		long period = targetPeriodNanos * adaptDivisor;
+		return period > 0L ? 1000000000.0 / period : 0.0;
+	}
+
+	/**
+	 * Sets the late-frame policy.
+	 */
+	public void setLatePolicy(LatePolicy policy)
+	{
+		latePolicy = policy;
+		targetChanged = true;
+	}
+
+	/**
+	 * Returns the late-frame policy.
+	 */
+	public LatePolicy getLatePolicy()
+	{
+		return latePolicy;
+	}
+
+	/**
+	 * Sets how long before a deadline the thread stops parking and starts spinning.
+	 * Larger values are more accurate but use more CPU. 0 disables spinning.
+	 * Default is {@value #DEFAULT_SPIN_THRESHOLD_NANOS}.
+	 * @param nanos the threshold in nanoseconds.
+	 */
+	public void setSpinThresholdNanos(long nanos)
+	{
+		spinThresholdNanos = Math.max(0L, nanos);
+	}
+
+	/**
+	 * Returns how long before a deadline the thread stops parking and starts spinning, in nanoseconds.
+	 */
+	public long getSpinThresholdNanos()
+	{
+		return spinThresholdNanos;
+	}
+
+	/**
+	 * Sets the maximum number of missed frames rendered back-to-back under {@link LatePolicy#CATCH_UP}.
+	 * Default is {@value #DEFAULT_MAX_CATCH_UP_FRAMES}.
+	 */
+	public void setMaxCatchUpFrames(int frames)
+	{
+		maxCatchUpFrames = Math.max(0, frames);
+	}
+
+	/**
+	 * Returns the maximum number of missed frames rendered back-to-back under {@link LatePolicy#CATCH_UP}.
+	 */
+	public int getMaxCatchUpFrames()
+	{
+		return maxCatchUpFrames;
+	}
+
+	/**
+	 * Returns the number of frames rendered.
+	 */
+	public long getFrameCount()
+	{
+		synchronized (statsLock)
+		{
+			return frameCount;
+		}
+	}
+
+	/**
+	 * Returns the number of frames that overran their slot.
+	 */
+	public long getLateFrameCount()
+	{
+		synchronized (statsLock)
+		{
+			return lateFrameCount;
+		}
+	}
+
+	/**
+	 * Returns the number of deadlines dropped without rendering a frame.
+	 */
+	public long getSkippedFrameCount()
+	{
+		synchronized (statsLock)
+		{
+			return skippedFrameCount;
+		}
+	}
+
+	/**
+	 * Returns the mean jitter (time a frame started after its deadline), in nanoseconds.
+	 */
+	public double getMeanJitterNanos()
+	{
+		synchronized (statsLock)
+		{
+			return jitterMean;
+		}
+	}
+
+	/**
+	 * Returns the standard deviation of the jitter, in nanoseconds.
+	 */
+	public double getJitterStdDevNanos()
+	{
+		synchronized (statsLock)
+		{
+			return frameCount > 1L ? Math.sqrt(jitterM2 / (frameCount - 1)) : 0.0;
+		}
+	}
+
+	/**
+	 * Returns the largest jitter seen, in nanoseconds.
+	 */
+	public long getMaxJitterNanos()
+	{
+		synchronized (statsLock)
+		{
+			return maxJitterNanos;
+		}
+	}
+
+	/**
+	 * Returns a percentile of the recent jitter, in nanoseconds.
+	 * The last {@value #JITTER_HISTORY} frames are considered.
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the jitter, or 0 if no frames were rendered yet.
+	 */
+	public long getJitterPercentileNanos(double percentile)
+	{
+		long[] jitter;
+		synchronized (statsLock)
+		{
+			jitter = Arrays.copyOf(jitterHistory, (int)Math.min(frameCount, JITTER_HISTORY));
+		}
+		if (jitter.length == 0)
+			return 0L;
+		Arrays.sort(jitter);
+		int index = (int)Math.ceil(Math.max(0.0, Math.min(100.0, percentile)) / 100.0 * jitter.length) - 1;
+		return jitter[Math.max(0, index)];
+	}
+
+	/**
+	 * Resets all statistics.
+	 */
+	public void resetStats()
+	{
+		synchronized (statsLock)
+		{
+			frameCount = 0L;
+			lateFrameCount = 0L;
+			skippedFrameCount = 0L;
+			maxJitterNanos = 0L;
+			jitterMean = 0.0;
+			jitterM2 = 0.0;
+		}
+	}
+
+}
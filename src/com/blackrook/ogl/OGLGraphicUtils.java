@@ -25,6 +25,7 @@ import com.blackrook.commons.math.RMath;
 import com.blackrook.ogl.enums.BufferType;
 import com.blackrook.ogl.enums.CachingHint;
 import com.blackrook.ogl.enums.DataType;
+import com.blackrook.ogl.enums.TextureFormat;
 
 /**
  * Utility library for graphics stuff.
@@ -61,6 +62,18 @@ public final class OGLGraphicUtils
 	    return out;
 	}
 
+	/**
+	 * Gets the byte data for a texture compressed to an S3TC format.
+	 * @param image the input image.
+	 * @param format the compressed format to use.
+	 * @return a new direct {@link ByteBuffer} of the image's compressed data.
+	 * @see OGLTextureCompressor
+	 */
+	public static ByteBuffer getCompressedByteData(BufferedImage image, TextureFormat format)
+	{
+		return OGLTextureCompressor.compress((ByteBuffer)getByteData(image), format, image.getWidth(), image.getHeight());
+	}
+
 	/**
 	 * Converts color byte data to a BufferedImage.
 	 * @param imageData the input BGRA byte data.
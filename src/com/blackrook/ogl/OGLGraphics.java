@@ -14,6 +14,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
@@ -21,6 +22,7 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.nio.ShortBuffer;
+import java.util.concurrent.Future;
 
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.glu.GLU;
@@ -91,6 +93,16 @@ public class OGLGraphics
 	private boolean pointSmoothingPresent;
 	/** Flag for presence of point sprite extension. */
 	private boolean pointSpritesPresent;
+	/** Flag for presence of S3TC texture compression extension. */
+	private boolean s3tcCompressionPresent;
+	/** Flag for presence of program binary extension. */
+	private boolean programBinaryPresent;
+	/** Flag for presence of parallel shader compile extension. */
+	private boolean parallelShaderCompilePresent;
+	/** Flag for presence of timer query extension. */
+	private boolean timerQueryPresent;
+	/** Flag for presence of conditional rendering. */
+	private boolean conditionalRenderPresent;
 	
 	/** Maximum bindable lights. */
 	private int maxLights;
@@ -117,6 +129,11 @@ public class OGLGraphics
 	
 	/** The current frame rendered. */
 	private long currentFrame;
+
+	/** Live objects made on this context, and the deletion of those garbage collected without being destroyed. */
+	private OGLResourceRegistry resourceRegistry;
+	/** Bound render buffer, held weakly so that binding does not keep an abandoned one alive. */
+	private WeakReference<OGLRenderBuffer> boundRenderBuffer;
 	/** The starting millisecond at creation. */
 	private long startMilliseconds;
 	/** The current millisecond at the beginning of the frame. */
@@ -135,6 +152,33 @@ public class OGLGraphics
 	
 	/** Current running occlusion query. */
 	private OGLOcclusionQuery currentOcclusionQuery;
+	/** Current running timer query. */
+	private OGLTimerQuery currentTimerQuery;
+	/** Current conditional render query. */
+	private OGLOcclusionQuery currentConditionalQuery;
+	/** Shaders being compiled in the background. */
+	private OGLShaderCompiler shaderCompiler;
+
+	/** Current active texture unit. */
+	private int currentTextureUnit;
+	/** Bound 1D textures per texture unit, held weakly so that binding does not keep abandoned textures alive. */
+	private WeakReference<OGLTexture>[] boundTextures1D;
+	/** Bound 2D textures per texture unit, held weakly. */
+	private WeakReference<OGLTexture>[] boundTextures2D;
+	/** Bound cube map textures per texture unit, held weakly. */
+	private WeakReference<OGLTexture>[] boundTexturesCube;
+	/** Bound buffers per buffer type, held weakly. */
+	private WeakReference<OGLBuffer>[] boundBuffers;
+
+	/** Number of OpenGL errors detected. */
+	private volatile long errorCount;
+
+	/** Call tracer, if call tracing is active. */
+	private volatile OGLCallTracer callTracer;
+	/** Is call tracing requested? Applied at the start of the next frame. */
+	private volatile boolean callTracingEnabled;
+	/** Maximum calls of a capture requested before the call tracer was made, or 0 for none. */
+	private volatile int pendingCaptureCalls;
 
 	private int[] INT_STATE;
 	private float[] FLOAT_STATE;
@@ -177,6 +221,22 @@ public class OGLGraphics
 		setArch();
 		setExtVars();
 		
+		shaderCompiler = new OGLShaderCompiler();
+
+		int units = Math.max(1, maxTextureUnits);
+		currentTextureUnit = 0;
+		boundTextures1D = newBindingSlots(units);
+		boundTextures2D = newBindingSlots(units);
+		boundTexturesCube = newBindingSlots(units);
+		boundBuffers = newBindingSlots(BufferType.values().length);
+		errorCount = 0L;
+		callTracer = null;
+		callTracingEnabled = false;
+		pendingCaptureCalls = 0;
+
+		resourceRegistry = new OGLResourceRegistry();
+		boundRenderBuffer = null;
+
 		currentFrame = 0L;
 		currentTimeStepMillis = -1f;
 		currentTimeStepNanos = -1L;
@@ -206,6 +266,9 @@ public class OGLGraphics
 		lastTimeNanos = currentNanos;
 		currentBlitBit = !currentBlitBit;
 		currentFrame++;
+		
+		updateCallTracer();
+		shaderCompiler.poll(this);
 	}
 	
 	/**
@@ -214,13 +277,102 @@ public class OGLGraphics
 	final void endFrame() 
 	{
 	    // Clean up abandoned objects.
-	    OGLBuffer.destroyUndeleted(this);
-	    OGLFrameBuffer.destroyUndeleted(this);
-	    OGLRenderBuffer.destroyUndeleted(this);
-	    OGLOcclusionQuery.destroyUndeleted(this);
-	    OGLShader.destroyUndeleted(this);
-	    OGLShaderProgram.destroyUndeleted(this);
-	    OGLTexture.destroyUndeleted(this);
+	    resourceRegistry.drain(this);
+
+	    if (callTracer != null)
+	    	callTracer.endFrame(currentFrame);
+	}
+
+	// Swaps the call tracer in or out to match the enabled flag.
+	private void updateCallTracer()
+	{
+		if (callTracingEnabled && callTracer == null)
+		{
+			callTracer = OGLCallTracer.create(gl);
+			gl = callTracer;
+		}
+		else if (!callTracingEnabled && callTracer != null)
+		{
+			gl = callTracer.getDelegate();
+			callTracer = null;
+		}
+		if (callTracer != null)
+		{
+			int capture = pendingCaptureCalls;
+			if (capture > 0)
+			{
+				pendingCaptureCalls = 0;
+				callTracer.requestCapture(capture);
+			}
+			callTracer.beginFrame();
+		}
+	}
+
+	/**
+	 * Sets if every OpenGL call made through this context is counted and timed.
+	 * This routes calls through a tracing wrapper, which is much slower, so it is meant 
+	 * for analysis only. Takes effect at the start of the next frame.
+	 * The frame will throw a {@link GraphicsException} if the GL implementation cannot be traced.
+	 * @param enabled true to enable, false to disable.
+	 * @see #getLastFrameCallStats()
+	 * @see #captureFrameCalls(int)
+	 */
+	public void setCallTracingEnabled(boolean enabled)
+	{
+		this.callTracingEnabled = enabled;
+	}
+
+	/**
+	 * Gets if OpenGL calls are counted and timed.
+	 * @see #setCallTracingEnabled(boolean)
+	 */
+	public boolean isCallTracingEnabled()
+	{
+		return callTracingEnabled;
+	}
+
+	/**
+	 * Returns per-function call counts and times of the last finished frame,
+	 * or null if call tracing is not active or no frame has finished yet.
+	 * Safe to call from any thread.
+	 * @see #setCallTracingEnabled(boolean)
+	 */
+	public OGLCallStats getLastFrameCallStats()
+	{
+		OGLCallTracer tracer = callTracer;
+		return tracer != null ? tracer.getLastStats() : null;
+	}
+
+	/**
+	 * Requests that every OpenGL call of the next traced frame be logged with its arguments,
+	 * time, and the library method that made it. Call tracing must be enabled, but need not be active yet:
+	 * if it was just enabled, the capture is of the first traced frame.
+	 * Safe to call from any thread.
+	 * @param maxCalls the maximum number of calls to log. Calls past this are only counted.
+	 * @throws GraphicsException if call tracing is not enabled.
+	 * @see #getCapturedFrameCalls()
+	 */
+	public void captureFrameCalls(int maxCalls)
+	{
+		if (!callTracingEnabled)
+			throw new GraphicsException("Call tracing is not enabled.");
+		OGLCallTracer tracer = callTracer;
+		if (tracer != null)
+			tracer.requestCapture(maxCalls);
+		else
+			pendingCaptureCalls = Math.max(1, maxCalls);
+	}
+
+	/**
+	 * Returns the call log of the last captured frame, one call per line, 
+	 * or null if no capture has finished.
+	 * Safe to call from any thread.
+	 * @see #captureFrameCalls(int)
+	 */
+	public String[] getCapturedFrameCalls()
+	{
+		OGLCallTracer tracer = callTracer;
+		return tracer != null ? tracer.getCapturedLog() : null;
 	}
 
 	/**
@@ -247,12 +399,112 @@ public class OGLGraphics
 		return glut;
 	}
 
+	/**
+	 * Returns the registry of live objects made on this context,
+	 * for memory accounting and leak reports.
+	 */
+	public final OGLResourceRegistry getResourceRegistry()
+	{
+		return resourceRegistry;
+	}
+
 	/** Returns a reference to the parent {@link OGLSystem} that created this. */
 	public final OGLSystem getSystem()
 	{
 		return glSystem;
 	}
 
+	// Records the estimated size of a texture level sent to a bound texture.
+	private void trackTextureData(OGLTexture texture, int face, int level, TextureFormat format, int width, int height)
+	{
+		if (texture == null || !texture.isAllocated())
+			return;
+		long bytes = format.isCompressed() 
+			? OGLTextureCompressor.getCompressedSize(format, width, height) 
+			: (long)Math.ceil((double)width * height * format.sizeFactor);
+		texture.setLevelBytes(face, level, bytes);
+	}
+
+	// Records the size of data sent to a bound buffer.
+	private void trackBufferData(OGLBuffer buffer, long bytes)
+	{
+		if (buffer == null || !buffer.isAllocated())
+			return;
+		buffer.setEstimatedBytes(bytes);
+	}
+
+	// Makes empty binding slots.
+	@SuppressWarnings("unchecked")
+	private static <T> WeakReference<T>[] newBindingSlots(int count)
+	{
+		return (WeakReference<T>[])new WeakReference[count];
+	}
+
+	// Returns a reference to a newly bound object, reusing the slot's reference if it is the same object.
+	private static <T> WeakReference<T> bind(WeakReference<T> slot, T object)
+	{
+		return slot != null && slot.get() == object ? slot : new WeakReference<T>(object);
+	}
+
+	// Returns the object bound in a slot, or null if none or collected.
+	private static <T> T getBound(WeakReference<T> slot)
+	{
+		return slot != null ? slot.get() : null;
+	}
+
+	/**
+	 * Returns the number of texture objects currently allocated on this context.
+	 * Same as <code>getResourceRegistry().getCount(OGLResourceRegistry.Type.TEXTURE)</code>.
+	 */
+	public int getTextureCount()
+	{
+		return resourceRegistry.getCount(OGLResourceRegistry.Type.TEXTURE);
+	}
+
+	/**
+	 * Returns the estimated amount of memory used by all texture data on this context in bytes,
+	 * from the formats and dimensions of the data sent to bound textures.
+	 */
+	public long getTextureBytes()
+	{
+		return resourceRegistry.getBytes(OGLResourceRegistry.Type.TEXTURE);
+	}
+
+	/**
+	 * Returns the number of buffer objects currently allocated on this context.
+	 * Same as <code>getResourceRegistry().getCount(OGLResourceRegistry.Type.BUFFER)</code>.
+	 */
+	public int getBufferCount()
+	{
+		return resourceRegistry.getCount(OGLResourceRegistry.Type.BUFFER);
+	}
+
+	/**
+	 * Returns the amount of memory allocated for all buffer data on this context in bytes.
+	 */
+	public long getBufferBytes()
+	{
+		return resourceRegistry.getBytes(OGLResourceRegistry.Type.BUFFER);
+	}
+
+	/**
+	 * Returns the number of OpenGL objects abandoned without being destroyed
+	 * that are waiting to be deleted at the end of the frame.
+	 */
+	public int getUndeletedObjectCount()
+	{
+		return resourceRegistry.getAbandonedCount();
+	}
+
+	/**
+	 * Returns the estimated bytes of the texture and buffer data of OpenGL objects abandoned 
+	 * without being destroyed that are waiting to be deleted at the end of the frame.
+	 */
+	public long getUndeletedBytes()
+	{
+		return resourceRegistry.getAbandonedBytes();
+	}
+
 	/**
 	 * Sets the architecture flags.
 	 */
@@ -289,6 +541,16 @@ public class OGLGraphics
 			extensionIsPresent("GL_texture_rectangle_arb");
 		pointSmoothingPresent = extensionIsPresent("gl_arb_point_smooth");
 		pointSpritesPresent = extensionIsPresent("gl_arb_point_sprite");
+		s3tcCompressionPresent = extensionIsPresent("gl_ext_texture_compression_s3tc");
+		programBinaryPresent = extensionIsPresent("gl_arb_get_program_binary");
+		parallelShaderCompilePresent = 
+			extensionIsPresent("gl_khr_parallel_shader_compile") || 
+			extensionIsPresent("gl_arb_parallel_shader_compile");
+		timerQueryPresent = extensionIsPresent("gl_arb_timer_query");
+		// core since GL 3.0, so not always advertised as an extension.
+		conditionalRenderPresent = 
+			extensionIsPresent("gl_nv_conditional_render") || 
+			gl.isFunctionAvailable("glBeginConditionalRender");
 
 		maxLights = getGLInt(GL2.GL_MAX_LIGHTS);
 		maxMultitexture = getGLInt(GL2.GL_MAX_TEXTURE_UNITS);
@@ -660,6 +922,51 @@ public class OGLGraphics
 		return pointSpritesPresent;
 	}
 
+	/**
+	 * Returns true if this device supports S3TC (DXT) compressed textures.
+	 * False otherwise.
+	 */
+	public final boolean supportsS3TCTextureCompression()
+	{
+		return s3tcCompressionPresent;
+	}
+
+	/**
+	 * Returns true if this device can save and load linked shader program binaries.
+	 * False otherwise.
+	 */
+	public final boolean supportsProgramBinaries()
+	{
+		return programBinaryPresent;
+	}
+
+	/**
+	 * Returns true if this device compiles shaders in parallel and can report 
+	 * when they are finished without blocking. False otherwise.
+	 */
+	public final boolean supportsParallelShaderCompile()
+	{
+		return parallelShaderCompilePresent;
+	}
+
+	/**
+	 * Returns true if this device supports GPU timer queries.
+	 * False otherwise.
+	 */
+	public final boolean supportsTimerQueries()
+	{
+		return timerQueryPresent;
+	}
+
+	/**
+	 * Returns true if this device supports rendering conditionally on the result of an occlusion query.
+	 * False otherwise.
+	 */
+	public final boolean supportsConditionalRender()
+	{
+		return conditionalRenderPresent;
+	}
+
 	/** Are we running NVidia architecture? */
 	public final boolean isNVidia()
 	{
@@ -754,7 +1061,18 @@ public class OGLGraphics
 			return;
 		int error = gl.glGetError();
 		if (error != GL2.GL_NO_ERROR)
+		{
+			errorCount++;
 			throw new GraphicsException("OpenGL raised error: "+glu.gluErrorString(error));
+		}
+	}
+
+	/**
+	 * Returns the number of OpenGL errors detected by {@link #getError()} so far.
+	 */
+	public long getErrorCount()
+	{
+		return errorCount;
 	}
 
 	/**
@@ -2325,6 +2643,7 @@ public class OGLGraphics
 		if (unit < 0 || unit >= maxTextureUnits)
 			throw new GraphicsException("Illegal texture unit. Must be from 0 to "+(maxTextureUnits-1)+".");
 		gl.glActiveTexture(GL2.GL_TEXTURE0 + unit);
+		currentTextureUnit = unit;
 	}
 	
 	/**
@@ -2346,7 +2665,10 @@ public class OGLGraphics
 		if (texture == null)
 			unsetTexture1D();
 		else
+		{
 			gl.glBindTexture(GL2.GL_TEXTURE_1D, texture.getGLId());
+			boundTextures1D[currentTextureUnit] = bind(boundTextures1D[currentTextureUnit], texture);
+		}
 	}
 	
 	/**
@@ -2402,6 +2724,7 @@ public class OGLGraphics
 			imageData
 		);
 		getError();
+		trackTextureData(getBound(boundTextures1D[currentTextureUnit]), 0, 0, format, width, 1);
 	}
 
 	/**
@@ -2435,6 +2758,7 @@ public class OGLGraphics
 	public void unsetTexture1D()
 	{
 		gl.glBindTexture(GL2.GL_TEXTURE_1D, 0);
+		boundTextures1D[currentTextureUnit] = null;
 	}
 
 	/**
@@ -2446,7 +2770,10 @@ public class OGLGraphics
 		if (texture == null)
 			unsetTexture2D();
 		else
+		{
 			gl.glBindTexture(GL2.GL_TEXTURE_2D, texture.getGLId());
+			boundTextures2D[currentTextureUnit] = bind(boundTextures2D[currentTextureUnit], texture);
+		}
 	}
 
 	/**
@@ -2486,6 +2813,21 @@ public class OGLGraphics
 	 * @throws GraphicsException if the buffer provided is not direct.
 	 */
 	public void setTextureData2D(Buffer imageData, TextureFormat format, int width, int height, int border)
+	{
+		setTextureData2D(imageData, format, 0, width, height, border);
+	}
+	
+	/**
+	 * Sends a texture into OpenGL's memory for a mipmap level of the current 2D texture.
+	 * @param imageData the BGRA image to send.
+	 * @param format the internal format.
+	 * @param level the mipmap level to set (0 is the largest).
+	 * @param width the texture width in texels.
+	 * @param height the texture height in texels.
+	 * @param border the texel border to add, if any.
+	 * @throws GraphicsException if the buffer provided is not direct.
+	 */
+	public void setTextureData2D(Buffer imageData, TextureFormat format, int level, int width, int height, int border)
 	{
 		if (width > getMaxTextureSize() || height > getMaxTextureSize())
 			throw new GraphicsException("Texture is too large. Maximum size is "+getMaxTextureSize()+" pixels.");
@@ -2496,7 +2838,7 @@ public class OGLGraphics
 		clearError();
 		gl.glTexImage2D(
 			GL2.GL_TEXTURE_2D,
-			0,
+			level,
 			format.glid, 
 			width,
 			height,
@@ -2506,6 +2848,84 @@ public class OGLGraphics
 			imageData
 		);
 		getError();
+		trackTextureData(getBound(boundTextures2D[currentTextureUnit]), 0, level, format, width, height);
+	}
+	
+	/**
+	 * Sends precompressed texture data into OpenGL's memory for the current 2D texture.
+	 * No conversion is done by the driver, so the data must already be in the provided format.
+	 * @param imageData the compressed image data to send.
+	 * @param format the compressed internal format.
+	 * @param width the texture width in texels.
+	 * @param height the texture height in texels.
+	 * @param border the texel border to add, if any.
+	 * @throws GraphicsException if the buffer provided is not direct, or the format is not a compressed format.
+	 * @see OGLTextureCompressor
+	 */
+	public void setCompressedTextureData2D(Buffer imageData, TextureFormat format, int width, int height, int border)
+	{
+		setCompressedTextureData2D(imageData, format, 0, width, height, border);
+	}
+	
+	/**
+	 * Sends precompressed texture data into OpenGL's memory for a mipmap level of the current 2D texture.
+	 * No conversion is done by the driver, so the data must already be in the provided format.
+	 * @param imageData the compressed image data to send.
+	 * @param format the compressed internal format.
+	 * @param level the mipmap level to set (0 is the largest).
+	 * @param width the texture width in texels.
+	 * @param height the texture height in texels.
+	 * @param border the texel border to add, if any.
+	 * @throws GraphicsException if the buffer provided is not direct, or the format is not a compressed format.
+	 * @see OGLTextureCompressor
+	 */
+	public void setCompressedTextureData2D(Buffer imageData, TextureFormat format, int level, int width, int height, int border)
+	{
+		if (!format.isCompressed())
+			throw new GraphicsException("Format "+format+" is not a compressed format.");
+		
+		if (width > getMaxTextureSize() || height > getMaxTextureSize())
+			throw new GraphicsException("Texture is too large. Maximum size is "+getMaxTextureSize()+" pixels.");
+
+		if (!imageData.isDirect())
+			throw new GraphicsException("Data must be a direct buffer."); 
+		
+		clearError();
+		gl.glCompressedTexImage2D(
+			GL2.GL_TEXTURE_2D,
+			level,
+			format.glid, 
+			width,
+			height,
+			border,
+			OGLTextureCompressor.getCompressedSize(format, width, height),
+			imageData
+		);
+		getError();
+		trackTextureData(getBound(boundTextures2D[currentTextureUnit]), 0, level, format, width, height);
+	}
+	
+	/**
+	 * Sends every mipmap level of a texture file into OpenGL's memory for the current 2D texture.
+	 * The level data is sent straight from the file's mapped buffers.
+	 * The texture's maximum mipmap level is set to the last level in the file.
+	 * @param textureFile the texture file to send.
+	 * @throws GraphicsException if the format is compressed and this device does not support S3TC compression.
+	 */
+	public void setTextureData2D(OGLTextureFile textureFile)
+	{
+		TextureFormat format = textureFile.getFormat();
+		if (format.isCompressed() && !supportsS3TCTextureCompression())
+			throw new GraphicsException("S3TC texture compression is not supported by this device.");
+
+		for (int i = 0; i < textureFile.getLevelCount(); i++)
+		{
+			if (format.isCompressed())
+				setCompressedTextureData2D(textureFile.getLevelData(i), format, i, textureFile.getLevelWidth(i), textureFile.getLevelHeight(i), 0);
+			else
+				setTextureData2D(textureFile.getLevelData(i), format, i, textureFile.getLevelWidth(i), textureFile.getLevelHeight(i), 0);
+		}
+		gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MAX_LEVEL, textureFile.getLevelCount() - 1);
 	}
 	
 	/**
@@ -2559,6 +2979,7 @@ public class OGLGraphics
 	public void unsetTexture2D()
 	{
 		gl.glBindTexture(GL2.GL_TEXTURE_2D, 0);
+		boundTextures2D[currentTextureUnit] = null;
 	}
 
 	/**
@@ -2570,7 +2991,10 @@ public class OGLGraphics
 		if (texture == null)
 			unsetTextureCube();
 		else
+		{
 			gl.glBindTexture(GL2.GL_TEXTURE_CUBE_MAP, texture.getGLId());
+			boundTexturesCube[currentTextureUnit] = bind(boundTexturesCube[currentTextureUnit], texture);
+		}
 	}
 
 	/**
@@ -2633,6 +3057,7 @@ public class OGLGraphics
 			imageData
 		);
 		getError();
+		trackTextureData(getBound(boundTexturesCube[currentTextureUnit]), face.ordinal(), 0, format, width, height);
 	}
 	
 	/**
@@ -2671,6 +3096,7 @@ public class OGLGraphics
 	public void unsetTextureCube()
 	{
 		gl.glBindTexture(GL2.GL_TEXTURE_CUBE_MAP,0);
+		boundTexturesCube[currentTextureUnit] = null;
 	}
 
 	/**
@@ -2758,6 +3184,40 @@ public class OGLGraphics
 		return new OGLShader(this, programs);
 	}
 
+	/**
+	 * Creates a new shader object without waiting for it to compile and link.
+	 * All compile and link calls are issued right away, and the driver's progress is polled
+	 * at the start of each frame - the returned future is completed on the frame that the
+	 * shader is finished. Do not wait on the future from the rendering thread, since it
+	 * will never be completed while that thread is blocked.
+	 * <p>
+	 * If {@link #supportsParallelShaderCompile()} is false, the driver may still compile
+	 * on its own threads, but finishing a shader may block - only a few are finished each frame.
+	 * Each source can be null and is just left absent in the complete program.
+	 * @param streamName the name of the originating stream (can appear in exceptions).
+	 * @param vertexSource the vertex program source, or null for none.
+	 * @param geometrySource the geometry program source, or null for none.
+	 * @param fragmentSource the fragment program source, or null for none.
+	 * @return a future that resolves to the new, linked shader object. 
+	 * 		If compilation/linking failed, it completes with a {@link GraphicsException} as its cause.
+	 * @throws GraphicsException if all sources are null, or the objects could not be created.
+	 */
+	public Future<OGLShader> createShaderAsync(String streamName, String vertexSource, String geometrySource, String fragmentSource)
+	{
+		if (vertexSource == null && geometrySource == null && fragmentSource == null)
+			throw new GraphicsException("All provided sources are null!");
+		return shaderCompiler.submit(this, streamName, vertexSource, geometrySource, fragmentSource);
+	}
+
+	/**
+	 * Returns the number of shaders created via {@link #createShaderAsync(String, String, String, String)}
+	 * that are still compiling or linking.
+	 */
+	public int getPendingShaderCount()
+	{
+		return shaderCompiler.getPendingCount();
+	}
+
 	/**
 	 * Binds a shader to the current context.
 	 * @param shader the shader to bind. Null unbinds the current shader.
@@ -2838,7 +3298,7 @@ public class OGLGraphics
 	 */
 	public void setShaderUniformVec2(int locationId, float value0, float value1)
 	{
-		gl.glUniform2fv(locationId, 1, new float[]{value0, value1}, 0);
+		gl.glUniform2f(locationId, value0, value1);
 	}
 	
 	/**
@@ -2849,7 +3309,7 @@ public class OGLGraphics
 	 */
 	public void setShaderUniformVec3(int locationId, float value0, float value1, float value2)
 	{
-		gl.glUniform3fv(locationId, 1, new float[]{value0, value1, value2}, 0);
+		gl.glUniform3f(locationId, value0, value1, value2);
 	}
 	
 	/**
@@ -2862,7 +3322,7 @@ public class OGLGraphics
 	 */
 	public void setShaderUniformVec4(int locationId, float value0, float value1, float value2, float value3)
 	{
-		gl.glUniform4fv(locationId, 1, new float[]{value0, value1, value2, value3}, 0);
+		gl.glUniform4f(locationId, value0, value1, value2, value3);
 	}
 	
 	/**
@@ -2912,7 +3372,10 @@ public class OGLGraphics
 		if (frameRenderBuffer == null)
 			unsetFrameRenderBuffer();
 		else
+		{
 			gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, frameRenderBuffer.getGLId());
+			boundRenderBuffer = bind(boundRenderBuffer, frameRenderBuffer);
+		}
 	}
 
 	/**
@@ -2926,6 +3389,9 @@ public class OGLGraphics
 		if (width < 1 || height < 1)
 			throw new GraphicsException("Render buffer size cannot be less than 1 in any dimension.");
 		gl.glRenderbufferStorage(GL2.GL_RENDERBUFFER, format.glid, width, height);
+		OGLRenderBuffer renderBuffer = getBound(boundRenderBuffer);
+		if (renderBuffer != null && renderBuffer.isAllocated())
+			renderBuffer.setEstimatedBytes((long)Math.ceil((double)width * height * format.sizeFactor));
 	}
 
 	/**
@@ -2934,6 +3400,7 @@ public class OGLGraphics
 	public void unsetFrameRenderBuffer()
 	{
 		gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, 0);
+		boundRenderBuffer = null;
 	}
 
 	/**
@@ -3099,6 +3566,95 @@ public class OGLGraphics
 		currentOcclusionQuery = null;
 	}
 
+	/**
+	 * Starts rendering conditionally on the result of an occlusion query: 
+	 * until {@link #endConditionalRender()}, drawing commands are discarded by the GPU 
+	 * if no samples passed the query. The CPU never waits on the result.
+	 * <p>
+	 * Conditional renders cannot overlap each other, or an exception will be thrown!
+	 * @param query the occlusion query to use. It must have been ended.
+	 * @param wait if true, the GPU waits for the query result before deciding.
+	 * 		If false, the GPU may render anyway if the result is not ready yet.
+	 * @throws GraphicsException if a conditional render is already in progress.
+	 */
+	public void startConditionalRender(OGLOcclusionQuery query, boolean wait)
+	{
+		if (currentConditionalQuery != null)
+			throw new GraphicsException("A conditional render is already active.");
+		gl.glBeginConditionalRender(query.getGLId(), wait ? GL2.GL_QUERY_WAIT : GL2.GL_QUERY_NO_WAIT);
+		currentConditionalQuery = query;
+	}
+
+	/**
+	 * Returns true if a conditional render is in progress, false otherwise.
+	 */
+	public boolean isConditionalRenderActive()
+	{
+		return currentConditionalQuery != null;
+	}
+
+	/**
+	 * Ends rendering conditionally.
+	 * @throws GraphicsException if no conditional render is in progress.
+	 */
+	public void endConditionalRender()
+	{
+		if (currentConditionalQuery == null)
+			throw new GraphicsException("Attempt to end conditional render without starting one.");
+		gl.glEndConditionalRender();
+		currentConditionalQuery = null;
+	}
+
+	/**
+	 * Creates a new timer query.
+	 * @return a new timer query object.
+	 * @throws GraphicsException if the object could not be created.
+	 */
+	public OGLTimerQuery createTimerQuery()
+	{
+		return new OGLTimerQuery(this);
+	}
+	
+	/**
+	 * Starts a timer query that measures the GPU time taken by the commands issued
+	 * between startTimerQuery() and endTimerQuery().
+	 * <p>
+	 * Two elapsed-time queries cannot overlap each other, or an exception will be thrown!
+	 * For nested measurements, use timestamps via {@link #setTimestamp(OGLTimerQuery)}.
+	 * @param query the query to start.
+	 * @throws GraphicsException if a timer query is already in progress.
+	 */
+	public void startTimerQuery(OGLTimerQuery query)
+	{
+		if (currentTimerQuery != null)
+			throw new GraphicsException("A timer query is already active.");
+		gl.glBeginQuery(GL2.GL_TIME_ELAPSED, query.getGLId());
+		currentTimerQuery = query;
+	}
+
+	/**
+	 * Ends the current timer query.
+	 * @throws GraphicsException if no timer query is in progress.
+	 */
+	public void endTimerQuery()
+	{
+		if (currentTimerQuery == null)
+			throw new GraphicsException("Attempt to end timer query without starting one.");
+		gl.glEndQuery(GL2.GL_TIME_ELAPSED);
+		currentTimerQuery = null;
+	}
+
+	/**
+	 * Records the GPU time, in nanoseconds, at which all previously-issued commands 
+	 * have finished into a timer query. This does not block, and can be freely nested
+	 * inside other timer queries.
+	 * @param query the query to use.
+	 */
+	public void setTimestamp(OGLTimerQuery query)
+	{
+		gl.glQueryCounter(query.getGLId(), GL2.GL_TIMESTAMP);
+	}
+
 	/**
 	 * Creates a new buffer object.
 	 * @return a new, uninitialized buffer object.
@@ -3119,7 +3675,10 @@ public class OGLGraphics
 		if (buffer == null)
 			unsetBuffer(type);
 		else
+		{
 			gl.glBindBuffer(type.glValue, buffer.getGLId());
+			boundBuffers[type.ordinal()] = bind(boundBuffers[type.ordinal()], buffer);
+		}
 	}
 
 	/**
@@ -3134,6 +3693,7 @@ public class OGLGraphics
 		clearError();
 		gl.glBufferData(type.glValue, elements * dataType.size, null, cachingHint.glValue);
 		getError();
+		trackBufferData(getBound(boundBuffers[type.ordinal()]), (long)elements * dataType.size);
 	}
 	
 	/**
@@ -3150,6 +3710,7 @@ public class OGLGraphics
 		clearError();
 		gl.glBufferData(type.glValue, dataType.size * data.capacity(), data, cachingHint.glValue);
 		getError();
+		trackBufferData(getBound(boundBuffers[type.ordinal()]), (long)dataType.size * data.capacity());
 	}
 	
 	/**
@@ -3270,6 +3831,7 @@ public class OGLGraphics
 	public void unsetBuffer(BufferType type)
 	{
 		gl.glBindBuffer(type.glValue, 0);
+		boundBuffers[type.ordinal()] = null;
 	}
 
 	/**
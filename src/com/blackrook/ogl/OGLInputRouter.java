@@ -0,0 +1,460 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import com.blackrook.ogl.input.OGLInputSubscriber;
+
+/**
+ * Routes input events to a list of nodes.
+ * <p>
+ * For each event type, this keeps an array of just the nodes that subscribe to it
+ * (see {@link OGLInputSubscriber}), front-most first (the last node in the list is drawn last,
+ * so it is closest to the screen). The arrays are rebuilt on the next event after the node list
+ * changes or {@link #invalidate()} is called, so sending an event only visits interested nodes.
+ * <p>
+ * Two targets can take events ahead of the arrays:
+ * <ul>
+ * <li>The focus node gets key events first. If it does not handle one, the event goes through the arrays as usual,
+ * skipping the focus node, also in the routers of nested nodes that it is routed through.</li>
+ * <li>The pointer capture node gets all mouse button, wheel, and movement events, and no other node does.</li>
+ * </ul>
+ * Either target can be any node, including one nested in another. A nested node's container
+ * must implement {@link Container}, and be attached with {@link #attach(OGLCanvasNode)}, so that
+ * removing the node or any of its containers clears it as a target.
+ * <p>
+ * Disabled nodes are never sent events.
+ * <p>
+ * Events must be routed on one thread (the render thread). The focus and capture nodes
+ * can be set, and the routing invalidated, from any thread.
+ * @author Matthew Tropiano
+ */
+public class OGLInputRouter
+{
+	/* ========= Dispatch array indices ======= */
+	private static final int KEY_PRESS = 0;
+	private static final int KEY_RELEASE = 1;
+	private static final int KEY_TYPED = 2;
+	private static final int MOUSE_PRESS = 3;
+	private static final int MOUSE_RELEASE = 4;
+	private static final int MOUSE_WHEEL = 5;
+	private static final int MOUSE_MOVE = 6;
+	private static final int MOUSE_ENTER_EXIT = 7;
+	private static final int GAMEPAD_PRESS = 8;
+	private static final int GAMEPAD_RELEASE = 9;
+	private static final int GAMEPAD_AXIS = 10;
+	private static final int GAMEPAD_AXIS_TAP = 11;
+	private static final int TYPE_COUNT = 12;
+	/* ======================================== */
+
+	/** Focus node of the outermost router routing a key event on this thread, which nested routers skip. */
+	private static final ThreadLocal<OGLCanvasNode> ROUTING_FOCUS = new ThreadLocal<OGLCanvasNode>();
+
+	/** Empty dispatch array. */
+	private static final OGLCanvasNode[] NO_NODES = new OGLCanvasNode[0];
+
+	/** The routed nodes. */
+	private OGLNodeList nodeList;
+	/** Node array that the dispatch arrays were built from. */
+	private OGLCanvasNode[] dispatchNodes;
+	/** Subscribed nodes per event type, front-most first. */
+	private OGLCanvasNode[][] dispatch;
+	/** Do the dispatch arrays need rebuilding? */
+	private volatile boolean dirty;
+	/** Node that gets key events first, if any. */
+	private volatile OGLCanvasNode focusNode;
+	/** Node that gets all pointer events, if any. */
+	private volatile OGLCanvasNode captureNode;
+	/** Router of the container that this router's nodes are nested in, if any. */
+	private volatile OGLInputRouter parent;
+
+	/**
+	 * Creates a new router for a list of nodes.
+	 * Changes to the list are picked up on the next event.
+	 * @param nodeList the node list.
+	 */
+	public OGLInputRouter(OGLNodeList nodeList)
+	{
+		this.nodeList = nodeList;
+		this.dispatchNodes = null;
+		this.dispatch = new OGLCanvasNode[TYPE_COUNT][];
+		this.dirty = true;
+		this.focusNode = null;
+		this.captureNode = null;
+		this.parent = null;
+	}
+
+	/**
+	 * Returns the input event mask of a node: its own if it is an {@link OGLInputSubscriber},
+	 * or {@link OGLInputSubscriber#INPUT_ALL} if not.
+	 */
+	public static int getInputEventMask(OGLCanvasNode node)
+	{
+		return node instanceof OGLInputSubscriber ? ((OGLInputSubscriber)node).getInputEventMask() : OGLInputSubscriber.INPUT_ALL;
+	}
+
+	/**
+	 * Marks the dispatch arrays for rebuilding on the next event.
+	 * Call this when a node's input mask changes.
+	 */
+	public void invalidate()
+	{
+		dirty = true;
+	}
+
+	// Rebuilds the dispatch arrays if needed.
+	private OGLCanvasNode[][] getDispatch()
+	{
+		OGLCanvasNode[] nodes = nodeList.getNodes();
+		if (!dirty && nodes == dispatchNodes)
+			return dispatch;
+
+		dirty = false;
+		int size = nodes.length;
+		int[] masks = new int[size];
+		int[] counts = new int[TYPE_COUNT];
+		for (int i = 0; i < size; i++)
+		{
+			masks[i] = getInputEventMask(nodes[i]);
+			for (int t = 0; t < TYPE_COUNT; t++)
+				if ((masks[i] & (1 << t)) != 0)
+					counts[t]++;
+		}
+		for (int t = 0; t < TYPE_COUNT; t++)
+		{
+			OGLCanvasNode[] out = counts[t] > 0 ? new OGLCanvasNode[counts[t]] : NO_NODES;
+			int n = 0;
+			for (int i = size - 1; i >= 0; i--)
+				if ((masks[i] & (1 << t)) != 0)
+					out[n++] = nodes[i];
+			dispatch[t] = out;
+		}
+		dispatchNodes = nodes;
+		return dispatch;
+	}
+
+	/**
+	 * Returns the number of nodes subscribed to at least one of a set of event types.
+	 * @param inputMask the event types, as a bitwise OR of <code>OGLInputSubscriber.INPUT_*</code> constants.
+	 */
+	public int getSubscriberCount(int inputMask)
+	{
+		int out = 0;
+		for (OGLCanvasNode node : nodeList.getNodes())
+			if ((getInputEventMask(node) & inputMask) != 0)
+				out++;
+		return out;
+	}
+
+	/**
+	 * Sets the node that gets key events first.
+	 * @param node the node, or null for none.
+	 */
+	public void setFocusNode(OGLCanvasNode node)
+	{
+		focusNode = node;
+	}
+
+	/**
+	 * Returns the node that gets key events first, or null for none.
+	 */
+	public OGLCanvasNode getFocusNode()
+	{
+		return focusNode;
+	}
+
+	/**
+	 * Sets the node that gets all mouse button, wheel, and movement events.
+	 * @param node the node, or null to release the capture.
+	 */
+	public void setPointerCapture(OGLCanvasNode node)
+	{
+		captureNode = node;
+	}
+
+	/**
+	 * Returns the node that gets all mouse button, wheel, and movement events, or null for none.
+	 */
+	public OGLCanvasNode getPointerCapture()
+	{
+		return captureNode;
+	}
+
+	/**
+	 * Links a node that was added to this router's list, so that if it is a {@link Container},
+	 * removing nodes nested in it also clears them as focus or capture targets here and above.
+	 * @param node the node.
+	 */
+	public void attach(OGLCanvasNode node)
+	{
+		if (node instanceof Container)
+			((Container)node).getInputRouter().parent = this;
+	}
+
+	/**
+	 * Unlinks a node that was removed from this router's list, and forgets it, or any node nested in it,
+	 * as the focus or capture node of this router and of the routers of the containers above it.
+	 * @param node the node.
+	 */
+	public void release(OGLCanvasNode node)
+	{
+		if (node instanceof Container)
+			((Container)node).getInputRouter().parent = null;
+		for (OGLInputRouter router = this; router != null; router = router.parent)
+		{
+			OGLCanvasNode focus = router.focusNode;
+			if (focus != null && (focus == node || contains(node, focus)))
+				router.focusNode = null;
+			OGLCanvasNode capture = router.captureNode;
+			if (capture != null && (capture == node || contains(node, capture)))
+				router.captureNode = null;
+		}
+	}
+
+	// Checks if a node is nested anywhere in a container.
+	private static boolean contains(OGLCanvasNode container, OGLCanvasNode node)
+	{
+		if (!(container instanceof Container))
+			return false;
+		for (OGLCanvasNode child : ((Container)container).getInputRouter().nodeList.getNodes())
+			if (child == node || contains(child, node))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a key press.
+	 * @return true if handled, false if not.
+	 */
+	public boolean keyPress(int keyCode)
+	{
+		OGLCanvasNode outer = ROUTING_FOCUS.get();
+		OGLCanvasNode focus = focusNode;
+		if (focus != null && focus != outer && focus.isEnabled() && focus.glKeyPress(keyCode))
+			return true;
+		if (focus == null || outer != null)
+			return keyPressDispatch(keyCode, focus, outer);
+		ROUTING_FOCUS.set(focus);
+		try {
+			return keyPressDispatch(keyCode, focus, null);
+		} finally {
+			ROUTING_FOCUS.remove();
+		}
+	}
+
+	// Sends a key event through the dispatch array, skipping the focus nodes that already had it.
+	private boolean keyPressDispatch(int keyCode, OGLCanvasNode focus, OGLCanvasNode outer)
+	{
+		for (OGLCanvasNode node : getDispatch()[KEY_PRESS])
+			if (node != focus && node != outer && node.isEnabled() && node.glKeyPress(keyCode))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a key release.
+	 * @return true if handled, false if not.
+	 */
+	public boolean keyRelease(int keyCode)
+	{
+		OGLCanvasNode outer = ROUTING_FOCUS.get();
+		OGLCanvasNode focus = focusNode;
+		if (focus != null && focus != outer && focus.isEnabled() && focus.glKeyRelease(keyCode))
+			return true;
+		if (focus == null || outer != null)
+			return keyReleaseDispatch(keyCode, focus, outer);
+		ROUTING_FOCUS.set(focus);
+		try {
+			return keyReleaseDispatch(keyCode, focus, null);
+		} finally {
+			ROUTING_FOCUS.remove();
+		}
+	}
+
+	// Sends a key event through the dispatch array, skipping the focus nodes that already had it.
+	private boolean keyReleaseDispatch(int keyCode, OGLCanvasNode focus, OGLCanvasNode outer)
+	{
+		for (OGLCanvasNode node : getDispatch()[KEY_RELEASE])
+			if (node != focus && node != outer && node.isEnabled() && node.glKeyRelease(keyCode))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a typed key.
+	 * @return true if handled, false if not.
+	 */
+	public boolean keyTyped(int keyCode)
+	{
+		OGLCanvasNode outer = ROUTING_FOCUS.get();
+		OGLCanvasNode focus = focusNode;
+		if (focus != null && focus != outer && focus.isEnabled() && focus.glKeyTyped(keyCode))
+			return true;
+		if (focus == null || outer != null)
+			return keyTypedDispatch(keyCode, focus, outer);
+		ROUTING_FOCUS.set(focus);
+		try {
+			return keyTypedDispatch(keyCode, focus, null);
+		} finally {
+			ROUTING_FOCUS.remove();
+		}
+	}
+
+	// Sends a key event through the dispatch array, skipping the focus nodes that already had it.
+	private boolean keyTypedDispatch(int keyCode, OGLCanvasNode focus, OGLCanvasNode outer)
+	{
+		for (OGLCanvasNode node : getDispatch()[KEY_TYPED])
+			if (node != focus && node != outer && node.isEnabled() && node.glKeyTyped(keyCode))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a mouse button press.
+	 * @return true if handled, false if not.
+	 */
+	public boolean mousePress(int mouseButton)
+	{
+		OGLCanvasNode capture = captureNode;
+		if (capture != null)
+			return capture.isEnabled() && capture.glMousePress(mouseButton);
+		for (OGLCanvasNode node : getDispatch()[MOUSE_PRESS])
+			if (node.isEnabled() && node.glMousePress(mouseButton))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a mouse button release.
+	 * @return true if handled, false if not.
+	 */
+	public boolean mouseRelease(int mouseButton)
+	{
+		OGLCanvasNode capture = captureNode;
+		if (capture != null)
+			return capture.isEnabled() && capture.glMouseRelease(mouseButton);
+		for (OGLCanvasNode node : getDispatch()[MOUSE_RELEASE])
+			if (node.isEnabled() && node.glMouseRelease(mouseButton))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a mouse wheel movement.
+	 * @return true if handled, false if not.
+	 */
+	public boolean mouseWheel(int units)
+	{
+		OGLCanvasNode capture = captureNode;
+		if (capture != null)
+			return capture.isEnabled() && capture.glMouseWheel(units);
+		for (OGLCanvasNode node : getDispatch()[MOUSE_WHEEL])
+			if (node.isEnabled() && node.glMouseWheel(units))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a mouse movement to every subscribed node.
+	 */
+	public void mouseMove(int changeX, int positionX, int changeY, int positionY)
+	{
+		OGLCanvasNode capture = captureNode;
+		if (capture != null)
+		{
+			if (capture.isEnabled())
+				capture.glMouseMove(changeX, positionX, changeY, positionY);
+			return;
+		}
+		for (OGLCanvasNode node : getDispatch()[MOUSE_MOVE])
+			if (node.isEnabled())
+				node.glMouseMove(changeX, positionX, changeY, positionY);
+	}
+
+	/**
+	 * Routes the mouse entering the canvas to every subscribed node.
+	 */
+	public void mouseEnter()
+	{
+		for (OGLCanvasNode node : getDispatch()[MOUSE_ENTER_EXIT])
+			if (node.isEnabled())
+				node.glMouseEnter();
+	}
+
+	/**
+	 * Routes the mouse exiting the canvas to every subscribed node.
+	 */
+	public void mouseExit()
+	{
+		for (OGLCanvasNode node : getDispatch()[MOUSE_ENTER_EXIT])
+			if (node.isEnabled())
+				node.glMouseExit();
+	}
+
+	/**
+	 * Routes a gamepad button press.
+	 * @return true if handled, false if not.
+	 */
+	public boolean gamepadPress(int gamepadId, int gamepadButton)
+	{
+		for (OGLCanvasNode node : getDispatch()[GAMEPAD_PRESS])
+			if (node.isEnabled() && node.glGamepadPress(gamepadId, gamepadButton))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a gamepad button release.
+	 * @return true if handled, false if not.
+	 */
+	public boolean gamepadRelease(int gamepadId, int gamepadButton)
+	{
+		for (OGLCanvasNode node : getDispatch()[GAMEPAD_RELEASE])
+			if (node.isEnabled() && node.glGamepadRelease(gamepadId, gamepadButton))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a gamepad axis change.
+	 * @return true if handled, false if not.
+	 */
+	public boolean gamepadAxis(int gamepadId, int gamepadAxisId, float value)
+	{
+		for (OGLCanvasNode node : getDispatch()[GAMEPAD_AXIS])
+			if (node.isEnabled() && node.glGamepadAxisChange(gamepadId, gamepadAxisId, value))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Routes a gamepad axis tap.
+	 * @return true if handled, false if not.
+	 */
+	public boolean gamepadAxisTap(int gamepadId, int gamepadAxisId, boolean positive)
+	{
+		for (OGLCanvasNode node : getDispatch()[GAMEPAD_AXIS_TAP])
+			if (node.isEnabled() && node.glGamepadAxisTap(gamepadId, gamepadAxisId, positive))
+				return true;
+		return false;
+	}
+
+	/**
+	 * A node that routes input to nodes nested in it with a router of its own.
+	 */
+	public interface Container
+	{
+		/**
+		 * Returns the router of the nested nodes.
+		 */
+		public OGLInputRouter getInputRouter();
+	}
+
+}
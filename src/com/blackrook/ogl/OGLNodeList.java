@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * A copy-on-write list of nodes, for node containers.
+ * <p>
+ * Nodes can be added and removed from any thread. Each change builds a new array and publishes it
+ * in one write, so the render thread can take the current array with {@link #getNodes()} and
+ * iterate it without locks, while changes made meanwhile show up the next time it takes the array.
+ * <p>
+ * Changes are serialized with a lock, and cost a copy of the array, so this suits
+ * lists that are iterated far more often than they change.
+ * @author Matthew Tropiano
+ */
+public final class OGLNodeList
+{
+	/** Empty array. */
+	private static final OGLCanvasNode[] NO_NODES = new OGLCanvasNode[0];
+
+	/** Current array. Never changed after it is published. */
+	private volatile OGLCanvasNode[] nodes;
+
+	/**
+	 * Creates a new, empty node list.
+	 */
+	public OGLNodeList()
+	{
+		nodes = NO_NODES;
+	}
+
+	/**
+	 * Returns the current array of nodes, in drawing order.
+	 * The array is shared, and must not be changed. It is not affected by later changes to this list.
+	 */
+	public OGLCanvasNode[] getNodes()
+	{
+		return nodes;
+	}
+
+	/**
+	 * Returns the number of nodes.
+	 */
+	public int size()
+	{
+		return nodes.length;
+	}
+
+	/**
+	 * Adds a node to the end of the list.
+	 * @param node the node.
+	 * @throws NullPointerException if node is null.
+	 */
+	public synchronized void add(OGLCanvasNode node)
+	{
+		if (node == null)
+			throw new NullPointerException("node is null.");
+		OGLCanvasNode[] old = nodes;
+		OGLCanvasNode[] out = new OGLCanvasNode[old.length + 1];
+		System.arraycopy(old, 0, out, 0, old.length);
+		out[old.length] = node;
+		nodes = out;
+	}
+
+	/**
+	 * Removes the first occurrence of a node from the list.
+	 * @param node the node.
+	 * @return true if it was removed, false if it was not in the list.
+	 */
+	public synchronized boolean remove(OGLCanvasNode node)
+	{
+		OGLCanvasNode[] old = nodes;
+		int index = -1;
+		for (int i = 0; i < old.length && index < 0; i++)
+			if (old[i].equals(node))
+				index = i;
+		if (index < 0)
+			return false;
+
+		if (old.length == 1)
+		{
+			nodes = NO_NODES;
+			return true;
+		}
+		OGLCanvasNode[] out = new OGLCanvasNode[old.length - 1];
+		System.arraycopy(old, 0, out, 0, index);
+		System.arraycopy(old, index + 1, out, index, old.length - index - 1);
+		nodes = out;
+		return true;
+	}
+
+	/**
+	 * Removes all nodes.
+	 */
+	public synchronized void clear()
+	{
+		nodes = NO_NODES;
+	}
+
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014, 2015 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.commons.list.List;
+
+/**
+ * Measures the GPU time of individual {@link OGLCanvasNode}s, using one {@link OGLTimerQueryRing} per node.
+ * Used by {@link OGLSystem} and node containers when GPU timing is enabled on them.
+ * <p>
+ * Removed nodes' queries can't be freed outside of the rendering thread, 
+ * so they are held until the next call to {@link #cleanup(OGLGraphics)}.
+ * Nodes can be removed from any thread.
+ * @author Matthew Tropiano
+ */
+public final class OGLNodeTimer
+{
+	/** Rings by node. */
+	private HashMap<OGLCanvasNode, OGLTimerQueryRing> rings;
+	/** Nodes removed since the last cleanup. */
+	private ConcurrentLinkedQueue<OGLCanvasNode> removed;
+	/** Rings of removed nodes. */
+	private List<OGLTimerQueryRing> retired;
+	/** Latency for new rings. */
+	private int latency;
+
+	/**
+	 * Creates a new node timer with the default latency.
+	 */
+	public OGLNodeTimer()
+	{
+		this(OGLTimerQueryRing.DEFAULT_LATENCY);
+	}
+
+	/**
+	 * Creates a new node timer.
+	 * @param latency the number of frames that results can lag behind before being dropped.
+	 */
+	public OGLNodeTimer(int latency)
+	{
+		this.rings = new HashMap<OGLCanvasNode, OGLTimerQueryRing>(8);
+		this.removed = new ConcurrentLinkedQueue<OGLCanvasNode>();
+		this.retired = new List<OGLTimerQueryRing>(2);
+		this.latency = latency;
+	}
+
+	/**
+	 * Creates or destroys a container's node timer to match its enabled flag, then cleans it up for the frame.
+	 * Called by a container at the start of its display, on the rendering thread.
+	 * @param g the graphics context to use.
+	 * @param timer the container's current timer, or null if it has none.
+	 * @param enabled true if GPU timing is enabled on the container.
+	 * @return the timer to use for this frame, or null if nodes should not be timed.
+	 */
+	public static OGLNodeTimer update(OGLGraphics g, OGLNodeTimer timer, boolean enabled)
+	{
+		if (enabled && timer == null && g.supportsTimerQueries())
+			timer = new OGLNodeTimer();
+		else if (!enabled && timer != null)
+		{
+			timer.destroy(g);
+			timer = null;
+		}
+		if (timer != null)
+			timer.cleanup(g);
+		return timer;
+	}
+
+	/**
+	 * Starts timing a node.
+	 * @param g the graphics context to use.
+	 * @param node the node about to be displayed.
+	 * @return the ring to call {@link OGLTimerQueryRing#end(OGLGraphics)} on after the node is displayed.
+	 */
+	public OGLTimerQueryRing start(OGLGraphics g, OGLCanvasNode node)
+	{
+		OGLTimerQueryRing ring = rings.get(node);
+		if (ring == null)
+		{
+			ring = new OGLTimerQueryRing(latency);
+			rings.put(node, ring);
+		}
+		ring.start(g);
+		return ring;
+	}
+
+	/**
+	 * Returns the most recently resolved GPU time of a node in nanoseconds,
+	 * or -1 if the node has not been timed or nothing has resolved yet.
+	 * @param node the node.
+	 */
+	public long getGPUTimeNanos(OGLCanvasNode node)
+	{
+		OGLTimerQueryRing ring = rings.get(node);
+		return ring != null ? ring.getElapsedNanos() : -1L;
+	}
+
+	/**
+	 * Stops timing a node. Its queries are freed on the next {@link #cleanup(OGLGraphics)}.
+	 * @param node the node.
+	 */
+	public void remove(OGLCanvasNode node)
+	{
+		removed.add(node);
+	}
+
+	/**
+	 * Frees the queries of removed nodes.
+	 * @param g the graphics context to use.
+	 */
+	public void cleanup(OGLGraphics g)
+	{
+		OGLCanvasNode node;
+		while ((node = removed.poll()) != null)
+		{
+			OGLTimerQueryRing ring = rings.removeUsingKey(node);
+			if (ring != null)
+				retired.add(ring);
+		}
+		while (!retired.isEmpty())
+			retired.removeIndex(retired.size() - 1).destroy(g);
+	}
+
+	/**
+	 * Frees all queries and stops timing all nodes.
+	 * @param g the graphics context to use.
+	 */
+	public void destroy(OGLGraphics g)
+	{
+		cleanup(g);
+		Iterator<OGLTimerQueryRing> it = rings.valueIterator();
+		while (it.hasNext())
+			it.next().destroy(g);
+		rings.clear();
+	}
+
+}
@@ -25,6 +25,8 @@ public abstract class OGLObject
 	
 	/** OpenGL object id. */
 	private int glId;
+	/** Entry in the context's resource registry, if this type is tracked. */
+	private OGLResourceRegistry.Entry registryEntry;
 	/** OpenGL temp variable. */
 	protected int[] glStateNum;
 	
@@ -48,7 +50,14 @@ public abstract class OGLObject
 		if (isAllocated())
 		{
 			if (free(g))
+			{
 				glId = ID_NONE;
+				if (registryEntry != null)
+				{
+					registryEntry.release();
+					registryEntry = null;
+				}
+			}
 		}
 	}
 	
@@ -80,9 +89,39 @@ public abstract class OGLObject
 			glId = allocate(g);
 			if (!isAllocated())
 				throw new GraphicsException("Object could not be allocated.");
+			OGLResourceRegistry.Type type = getResourceType();
+			if (type != null)
+				registryEntry = g.getResourceRegistry().register(this, type, glId);
 		}
 	}
 
+	/**
+	 * Returns the type this object is tracked as in its context's {@link OGLResourceRegistry},
+	 * or null if it is not tracked (and not deleted if garbage collected without being destroyed).
+	 */
+	OGLResourceRegistry.Type getResourceType()
+	{
+		return null;
+	}
+
+	/**
+	 * Sets the estimated size of this object's data in its context's {@link OGLResourceRegistry}.
+	 */
+	final void setRegistryBytes(long bytes)
+	{
+		if (registryEntry != null)
+			registryEntry.setBytes(bytes);
+	}
+
+	/**
+	 * Returns the estimated size of this object's data in its context's {@link OGLResourceRegistry},
+	 * or 0 if it is not tracked or not allocated.
+	 */
+	final long getRegistryBytes()
+	{
+		return registryEntry != null ? registryEntry.getBytes() : 0L;
+	}
+
 	/**
 	 * Allocates this object and returns an OpenGL id of the the newly-created
 	 * object.
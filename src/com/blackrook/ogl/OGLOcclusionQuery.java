@@ -18,17 +18,6 @@ import com.jogamp.opengl.*;
  */
 public class OGLOcclusionQuery extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
-	
 	/**
 	 * Creates a new Occlusion Query object handle.
 	 * @param g the graphics context to use.
@@ -80,36 +69,10 @@ public class OGLOcclusionQuery extends OGLObject
 		return glStateNum[0];
 	}
 
-	/**
-	 * Destroys undeleted query objects abandoned from destroyed Java objects.
-	 */
-	static void destroyUndeleted(OGLGraphics g)
-	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			g.getGL().glDeleteQueries(UNDELETED_LENGTH, UNDELETED_IDS, 0);
-			UNDELETED_LENGTH = 0;
-		}
-	}
-
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
-	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
-	}
-	
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.QUERY;
 	}
 
 }
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2014, 2015 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.Iterator;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.commons.list.List;
+
+/**
+ * A pool of occlusion queries with a frame-lagged result cache, keyed by any object
+ * (usually the thing being tested, such as a node).
+ * <p>
+ * Each frame, a key's query is issued with {@link #startQuery(OGLGraphics, Object)} and
+ * {@link #endQuery(OGLGraphics)}. Results are never waited on: they are read back when the driver
+ * reports them available, which is usually a frame or more later, and the most recent result
+ * is cached per key. Each key gets a small ring of queries so that a new query can be issued
+ * while older ones are still in flight. Queries of removed keys go back to the pool for reuse.
+ * @author Matthew Tropiano
+ */
+public class OGLOcclusionQueryPool
+{
+	/** Default number of frames that results can lag behind. */
+	public static final int DEFAULT_LATENCY = 2;
+
+	/** Free queries. */
+	private List<OGLOcclusionQuery> free;
+	/** Entries by key. */
+	private HashMap<Object, Entry> entries;
+	/** Entries of removed keys, to release on next poll. */
+	private List<Entry> retired;
+	/** Ring length for new entries. */
+	private int slots;
+	/** The entry with a query in progress. */
+	private Entry current;
+
+	/**
+	 * Creates a new pool with the default latency.
+	 */
+	public OGLOcclusionQueryPool()
+	{
+		this(DEFAULT_LATENCY);
+	}
+
+	/**
+	 * Creates a new pool.
+	 * @param latency the number of frames that results can lag behind before being dropped.
+	 */
+	public OGLOcclusionQueryPool(int latency)
+	{
+		this.free = new List<OGLOcclusionQuery>(8);
+		this.entries = new HashMap<Object, Entry>(8);
+		this.retired = new List<Entry>(2);
+		this.slots = Math.max(1, latency) + 1;
+		this.current = null;
+	}
+
+	/**
+	 * Reads back the available results for a key, then starts its next query.
+	 * Only one query can be in progress at a time.
+	 * @param g the graphics context to use.
+	 * @param key the key.
+	 * @return the query that was started.
+	 * @throws GraphicsException if an occlusion query is already in progress.
+	 */
+	public OGLOcclusionQuery startQuery(OGLGraphics g, Object key)
+	{
+		Entry entry = entries.get(key);
+		if (entry == null)
+		{
+			entry = new Entry(slots);
+			entries.put(key, entry);
+		}
+		entry.poll(g);
+
+		OGLOcclusionQuery query = entry.queries[entry.next];
+		if (query == null)
+			query = entry.queries[entry.next] = obtain(g);
+		// reusing a slot whose result never came back drops that result.
+		entry.pending[entry.next] = false;
+		g.startQuery(query);
+		current = entry;
+		return query;
+	}
+
+	/**
+	 * Ends the query in progress.
+	 * @param g the graphics context to use.
+	 * @throws GraphicsException if no query is in progress.
+	 */
+	public void endQuery(OGLGraphics g)
+	{
+		g.endQuery();
+		if (current != null)
+		{
+			current.pending[current.next] = true;
+			current.last = current.queries[current.next];
+			current.next = (current.next + 1) % current.queries.length;
+			current = null;
+		}
+	}
+
+	/**
+	 * Returns the most recently resolved sample count for a key, 
+	 * or -1 if none has resolved yet or the key is unknown.
+	 * @param key the key.
+	 */
+	public int getSamplesPassed(Object key)
+	{
+		Entry entry = entries.get(key);
+		return entry != null ? entry.samples : -1;
+	}
+
+	/**
+	 * Returns if a key was visible according to its most recently resolved result.
+	 * If no result has resolved yet, this is true, so that things are drawn until known to be hidden.
+	 * @param key the key.
+	 */
+	public boolean isVisible(Object key)
+	{
+		return getSamplesPassed(key) != 0;
+	}
+
+	/**
+	 * Returns the most recently ended query for a key, for use with 
+	 * {@link OGLGraphics#startConditionalRender(OGLOcclusionQuery, boolean)}, or null if none.
+	 * @param key the key.
+	 */
+	public OGLOcclusionQuery getLastQuery(Object key)
+	{
+		Entry entry = entries.get(key);
+		return entry != null ? entry.last : null;
+	}
+
+	/**
+	 * Stops tracking a key. Its queries return to the pool on the next {@link #cleanup(OGLGraphics)}.
+	 * @param key the key.
+	 */
+	public void remove(Object key)
+	{
+		Entry entry = entries.removeUsingKey(key);
+		if (entry != null)
+			retired.add(entry);
+	}
+
+	/**
+	 * Returns queries of removed keys to the pool.
+	 * This does not need to be called from the rendering thread, 
+	 * since no OpenGL calls are made, but the pool is not thread-safe.
+	 * @param g the graphics context to use.
+	 */
+	public void cleanup(OGLGraphics g)
+	{
+		while (!retired.isEmpty())
+		{
+			Entry entry = retired.removeIndex(retired.size() - 1);
+			for (OGLOcclusionQuery q : entry.queries)
+				if (q != null)
+					free.add(q);
+		}
+	}
+
+	/**
+	 * Destroys all queries, pooled or in use, and forgets all keys.
+	 * @param g the graphics context to use.
+	 */
+	public void destroy(OGLGraphics g)
+	{
+		Iterator<Entry> it = entries.valueIterator();
+		while (it.hasNext())
+			retired.add(it.next());
+		entries.clear();
+		cleanup(g);
+		while (!free.isEmpty())
+			free.removeIndex(free.size() - 1).destroy(g);
+	}
+
+	/**
+	 * Returns the number of pooled queries not in use.
+	 */
+	public int getFreeCount()
+	{
+		return free.size();
+	}
+
+	// Gets a free query, or creates one.
+	private OGLOcclusionQuery obtain(OGLGraphics g)
+	{
+		if (!free.isEmpty())
+			return free.removeIndex(free.size() - 1);
+		return g.createQuery();
+	}
+
+	/**
+	 * A key's ring of queries.
+	 */
+	private static class Entry
+	{
+		/** Query ring. */
+		private OGLOcclusionQuery[] queries;
+		/** Is each slot waiting on a result? */
+		private boolean[] pending;
+		/** Next slot to issue into. */
+		private int next;
+		/** Last ended query. */
+		private OGLOcclusionQuery last;
+		/** Most recent resolved sample count. */
+		private int samples;
+
+		Entry(int slots)
+		{
+			this.queries = new OGLOcclusionQuery[slots];
+			this.pending = new boolean[slots];
+			this.next = 0;
+			this.last = null;
+			this.samples = -1;
+		}
+
+		// Reads back available results, oldest first.
+		void poll(OGLGraphics g)
+		{
+			for (int i = 0; i < pending.length; i++)
+			{
+				int slot = (next + i) % pending.length;
+				if (!pending[slot])
+					continue;
+				// later slots will not be ready if this one isn't.
+				if (!queries[slot].isReady(g))
+					break;
+				samples = queries[slot].getSamplesPassed(g);
+				pending[slot] = false;
+			}
+		}
+	}
+
+}
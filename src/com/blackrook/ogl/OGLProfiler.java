@@ -0,0 +1,593 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.commons.list.List;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A hierarchical frame profiler that records named, nested scopes with CPU times and,
+ * optionally, GPU times, and keeps the last several frames for inspection or export.
+ * <p>
+ * When set on an {@link OGLSystem}, each frame is wrapped in a root scope, and each node's
+ * display is wrapped in a scope named after the node's class, as is each child of an
+ * {@link com.blackrook.ogl.node.OGLMultiNode}. Nodes can add their own scopes with
+ * {@link #push(OGLGraphics, String)} and {@link #pop(OGLGraphics)}, getting the profiler via
+ * <code>g.getSystem().getProfiler()</code>.
+ * <p>
+ * GPU times are measured with timestamp queries, if enabled and supported, and are read back
+ * without waiting, so frames only become visible to readers once their GPU results are in
+ * (or have been given up on), a few frames after they were drawn.
+ * <p>
+ * Recording allocates nothing once warmed up, and only the rendering thread writes.
+ * Any thread can read recorded frames with {@link #getFrames()} or {@link #writeChromeTrace(Writer)}
+ * without locking: frames that were overwritten while being read are discarded from the result.
+ * @author Matthew Tropiano
+ */
+public class OGLProfiler
+{
+	/** Default number of frames kept. */
+	public static final int DEFAULT_FRAME_COUNT = 120;
+	/** Default maximum number of scopes per frame. */
+	public static final int DEFAULT_MAX_SCOPES = 256;
+	/** Number of frames that GPU results can lag behind before being dropped. */
+	public static final int GPU_LATENCY = 3;
+	/** Name of the root scope of each frame. */
+	public static final String FRAME_SCOPE_NAME = "Frame";
+
+	/** Frame slots. */
+	private Slot[] slots;
+	/** Number of frames readable at once. */
+	private int frameCount;
+	/** Maximum scopes per frame. */
+	private int maxScopes;
+
+	/** Last frame visible to readers. */
+	private volatile long publishedFrame;
+	/** Frame being written. */
+	private volatile long writingFrame;
+	/** Last frame finished by the writer. */
+	private long completedFrame;
+
+	/** Slot of the frame being written, or null if not in a frame. */
+	private Slot current;
+	/** Open scope index stack. */
+	private int[] stack;
+	/** Open scope stack depth. */
+	private int depth;
+	/** Number of open scopes not recorded due to limits. */
+	private int overflowDepth;
+	/** Number of scopes not recorded due to limits. */
+	private long overflowCount;
+
+	/** Is GPU timing requested? */
+	private boolean gpuTimingEnabled;
+	/** Is GPU timing active for the frame being written? */
+	private boolean gpuActive;
+	/** Free timestamp queries. */
+	private List<OGLTimerQuery> freeQueries;
+	/** Scope names by class. */
+	private HashMap<Class<?>, String> nameCache;
+
+	/**
+	 * Creates a new profiler with the default frame count and scope limit.
+	 */
+	public OGLProfiler()
+	{
+		this(DEFAULT_FRAME_COUNT, DEFAULT_MAX_SCOPES);
+	}
+
+	/**
+	 * Creates a new profiler.
+	 * @param frameCount the number of recent frames to keep.
+	 * @param maxScopes the maximum number of scopes recorded per frame, including the root scope.
+	 * 		Scopes past this limit are counted, but not recorded.
+	 */
+	public OGLProfiler(int frameCount, int maxScopes)
+	{
+		this.frameCount = Math.max(1, frameCount);
+		this.maxScopes = Math.max(1, maxScopes);
+		// room for readable frames, frames waiting on GPU results, and the one being written.
+		this.slots = new Slot[this.frameCount + GPU_LATENCY + 1];
+		for (int i = 0; i < slots.length; i++)
+			slots[i] = new Slot(this.maxScopes);
+
+		this.publishedFrame = -1L;
+		this.writingFrame = -1L;
+		this.completedFrame = -1L;
+		this.current = null;
+		this.stack = new int[this.maxScopes];
+		this.depth = 0;
+		this.overflowDepth = 0;
+		this.overflowCount = 0L;
+		this.gpuTimingEnabled = false;
+		this.gpuActive = false;
+		this.freeQueries = new List<OGLTimerQuery>(32);
+		this.nameCache = new HashMap<Class<?>, String>(16);
+	}
+
+	/**
+	 * Sets if GPU times are recorded. This uses timestamp queries, and only has an effect
+	 * if {@link OGLGraphics#supportsTimerQueries()} is true. Takes effect on the next frame.
+	 * @param enabled true to enable, false to disable.
+	 */
+	public void setGPUTimingEnabled(boolean enabled)
+	{
+		this.gpuTimingEnabled = enabled;
+	}
+
+	/**
+	 * Gets if GPU times are recorded.
+	 */
+	public boolean isGPUTimingEnabled()
+	{
+		return gpuTimingEnabled;
+	}
+
+	/**
+	 * Starts recording a frame, and opens its root scope.
+	 * Called by {@link OGLSystem} if this profiler is set on it.
+	 * @param g the graphics context to use.
+	 * @throws GraphicsException if a frame is already being recorded.
+	 */
+	public void beginFrame(OGLGraphics g)
+	{
+		if (current != null)
+			throw new GraphicsException("Profiler frame already started.");
+
+		resolve(g);
+
+		long frame = completedFrame + 1;
+		writingFrame = frame;
+		current = slots[(int)(frame % slots.length)];
+		current.frameNumber = frame;
+		current.scopeCount = 0;
+		current.gpuPending = false;
+		depth = 0;
+		overflowDepth = 0;
+		gpuActive = gpuTimingEnabled && g.supportsTimerQueries();
+
+		push(g, FRAME_SCOPE_NAME);
+	}
+
+	/**
+	 * Closes any open scopes, including the root scope, and finishes recording a frame.
+	 * Called by {@link OGLSystem} if this profiler is set on it.
+	 * @param g the graphics context to use.
+	 * @throws GraphicsException if no frame is being recorded.
+	 */
+	public void endFrame(OGLGraphics g)
+	{
+		if (current == null)
+			throw new GraphicsException("Profiler frame not started.");
+
+		overflowDepth = 0;
+		while (depth > 0)
+			pop(g);
+
+		current.gpuPending = gpuActive;
+		completedFrame = current.frameNumber;
+		current = null;
+		if (!gpuActive && publishedFrame == completedFrame - 1)
+			publishedFrame = completedFrame;
+	}
+
+	/**
+	 * Opens a named scope. Does nothing if no frame is being recorded.
+	 * @param g the graphics context to use.
+	 * @param name the scope name.
+	 */
+	public void push(OGLGraphics g, String name)
+	{
+		if (current == null)
+			return;
+
+		if (overflowDepth > 0 || current.scopeCount == maxScopes)
+		{
+			overflowDepth++;
+			overflowCount++;
+			return;
+		}
+
+		int index = current.scopeCount++;
+		current.names[index] = name;
+		current.depths[index] = depth;
+		current.gpuStart[index] = -1L;
+		current.gpuEnd[index] = -1L;
+		if (gpuActive)
+			g.setTimestamp(current.startQueries[index] = obtainQuery(g));
+		else
+			current.startQueries[index] = null;
+		current.endQueries[index] = null;
+		stack[depth++] = index;
+		current.cpuEnd[index] = -1L;
+		current.cpuStart[index] = System.nanoTime();
+	}
+
+	/**
+	 * Opens a scope named after an object's class, such as a node being displayed.
+	 * Does nothing if no frame is being recorded.
+	 * @param g the graphics context to use.
+	 * @param object the object to name the scope after.
+	 */
+	public void push(OGLGraphics g, Object object)
+	{
+		if (current != null)
+			push(g, getName(object.getClass()));
+	}
+
+	/**
+	 * Closes the most recently opened scope. Does nothing if no frame is being recorded.
+	 * @param g the graphics context to use.
+	 * @throws GraphicsException if no scope is open.
+	 */
+	public void pop(OGLGraphics g)
+	{
+		if (current == null)
+			return;
+
+		if (overflowDepth > 0)
+		{
+			overflowDepth--;
+			return;
+		}
+		if (depth == 0)
+			throw new GraphicsException("Profiler scope popped without a push.");
+
+		long nanos = System.nanoTime();
+		int index = stack[--depth];
+		current.cpuEnd[index] = nanos;
+		if (gpuActive)
+			g.setTimestamp(current.endQueries[index] = obtainQuery(g));
+	}
+
+	// Reads back GPU results of finished frames, and publishes frames that are done.
+	private void resolve(OGLGraphics g)
+	{
+		while (publishedFrame < completedFrame)
+		{
+			Slot slot = slots[(int)((publishedFrame + 1) % slots.length)];
+			if (slot.gpuPending)
+			{
+				// the root end timestamp is issued last, so the rest are in if it is.
+				if (slot.endQueries[0].isReady(g))
+				{
+					for (int i = 0; i < slot.scopeCount; i++)
+					{
+						slot.gpuStart[i] = slot.startQueries[i].getNanos(g);
+						slot.gpuEnd[i] = slot.endQueries[i].getNanos(g);
+					}
+				}
+				else if (completedFrame - publishedFrame < GPU_LATENCY)
+					break;
+				releaseQueries(slot);
+			}
+			publishedFrame = slot.frameNumber;
+		}
+	}
+
+	// Returns a slot's queries to the free list.
+	private void releaseQueries(Slot slot)
+	{
+		for (int i = 0; i < slot.scopeCount; i++)
+		{
+			if (slot.startQueries[i] != null)
+				freeQueries.add(slot.startQueries[i]);
+			if (slot.endQueries[i] != null)
+				freeQueries.add(slot.endQueries[i]);
+			slot.startQueries[i] = null;
+			slot.endQueries[i] = null;
+		}
+		slot.gpuPending = false;
+	}
+
+	// Gets a free timestamp query, or creates one.
+	private OGLTimerQuery obtainQuery(OGLGraphics g)
+	{
+		if (!freeQueries.isEmpty())
+			return freeQueries.removeIndex(freeQueries.size() - 1);
+		return g.createTimerQuery();
+	}
+
+	// Gets a scope name for a class.
+	private String getName(Class<?> clazz)
+	{
+		String out = nameCache.get(clazz);
+		if (out == null)
+		{
+			out = clazz.getSimpleName();
+			if (out.length() == 0)
+				out = clazz.getName();
+			nameCache.put(clazz, out);
+		}
+		return out;
+	}
+
+	/**
+	 * Destroys all queries used by this profiler.
+	 * Frames still waiting on GPU results are published without them.
+	 * @param g the graphics context to use.
+	 */
+	public void destroy(OGLGraphics g)
+	{
+		for (Slot slot : slots)
+			if (slot.gpuPending)
+				releaseQueries(slot);
+		publishedFrame = completedFrame;
+		while (!freeQueries.isEmpty())
+			freeQueries.removeIndex(freeQueries.size() - 1).destroy(g);
+	}
+
+	/**
+	 * Returns the number of scopes that were not recorded because
+	 * a frame's scope limit was reached.
+	 */
+	public long getOverflowCount()
+	{
+		return overflowCount;
+	}
+
+	/**
+	 * Returns copies of the most recent recorded frames, oldest first.
+	 * Safe to call from any thread.
+	 */
+	public Frame[] getFrames()
+	{
+		long last = publishedFrame;
+		if (last < 0)
+			return new Frame[0];
+		long first = Math.max(0L, last - frameCount + 1);
+
+		Frame[] out = new Frame[(int)(last - first + 1)];
+		for (long f = first; f <= last; f++)
+			out[(int)(f - first)] = new Frame(slots[(int)(f % slots.length)]);
+
+		// the writer starts overwriting slots at the one after the oldest published frame.
+		// discard any copies that could have been overwritten while reading.
+		long oldestSafe = writingFrame - slots.length + 1;
+		int skip = 0;
+		while (skip < out.length && (out[skip].frameNumber < oldestSafe || out[skip].frameNumber != first + skip))
+			skip++;
+		if (skip == 0)
+			return out;
+		Frame[] trimmed = new Frame[out.length - skip];
+		System.arraycopy(out, skip, trimmed, 0, trimmed.length);
+		return trimmed;
+	}
+
+	/**
+	 * Writes the most recent recorded frames in the Chrome trace event format (JSON),
+	 * readable by <code>chrome://tracing</code> and other trace viewers.
+	 * CPU scopes are written to one thread track, and GPU scopes to another.
+	 * GPU times are aligned so that each frame's GPU root scope starts with its CPU root scope,
+	 * since the GPU clock has a different origin.
+	 * Safe to call from any thread.
+	 * @param writer the writer to write to. It is not closed.
+	 * @throws IOException if the writer throws it.
+	 */
+	public void writeChromeTrace(Writer writer) throws IOException
+	{
+		Frame[] frames = getFrames();
+		long origin = frames.length > 0 ? frames[0].cpuStart[0] : 0L;
+
+		writer.write("{\"traceEvents\":[\n");
+		writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":1,\"args\":{\"name\":\"CPU\"}},\n");
+		writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":2,\"args\":{\"name\":\"GPU\"}}");
+		for (Frame frame : frames)
+		{
+			for (int i = 0; i < frame.scopeCount; i++)
+			{
+				writeEvent(writer, frame.names[i], "cpu", 1, frame.cpuStart[i] - origin, frame.cpuEnd[i] - frame.cpuStart[i], frame.frameNumber);
+				if (frame.gpuStart[i] >= 0L && frame.gpuStart[0] >= 0L)
+				{
+					long start = frame.cpuStart[0] - origin + (frame.gpuStart[i] - frame.gpuStart[0]);
+					writeEvent(writer, frame.names[i], "gpu", 2, start, frame.gpuEnd[i] - frame.gpuStart[i], frame.frameNumber);
+				}
+			}
+		}
+		writer.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+		writer.flush();
+	}
+
+	// Writes one complete event. Times are written in microseconds.
+	private static void writeEvent(Writer writer, String name, String category, int tid, long startNanos, long durationNanos, long frame) throws IOException
+	{
+		writer.write(",\n{\"name\":\"");
+		writeEscaped(writer, name);
+		writer.write("\",\"cat\":\"");
+		writer.write(category);
+		writer.write("\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+		writer.write(String.valueOf(tid));
+		writer.write(",\"ts\":");
+		writer.write(String.valueOf(startNanos / 1000.0));
+		writer.write(",\"dur\":");
+		writer.write(String.valueOf(Math.max(0L, durationNanos) / 1000.0));
+		writer.write(",\"args\":{\"frame\":");
+		writer.write(String.valueOf(frame));
+		writer.write("}}");
+	}
+
+	// Writes a JSON-escaped string.
+	private static void writeEscaped(Writer writer, String s) throws IOException
+	{
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				default:
+					if (c < 0x20)
+						writer.write(String.format("\\u%04x", (int)c));
+					else
+						writer.write(c);
+					break;
+			}
+		}
+	}
+
+	/**
+	 * A frame slot, written by the rendering thread.
+	 */
+	private static class Slot
+	{
+		/** Frame number. */
+		private long frameNumber;
+		/** Number of scopes. */
+		private int scopeCount;
+		/** Scope names. */
+		private String[] names;
+		/** Scope depths. */
+		private int[] depths;
+		/** CPU start times. */
+		private long[] cpuStart;
+		/** CPU end times. */
+		private long[] cpuEnd;
+		/** GPU start times, or -1 if not measured. */
+		private long[] gpuStart;
+		/** GPU end times, or -1 if not measured. */
+		private long[] gpuEnd;
+		/** GPU start queries. */
+		private OGLTimerQuery[] startQueries;
+		/** GPU end queries. */
+		private OGLTimerQuery[] endQueries;
+		/** Is this waiting on GPU results? */
+		private boolean gpuPending;
+
+		Slot(int maxScopes)
+		{
+			this.frameNumber = -1L;
+			this.scopeCount = 0;
+			this.names = new String[maxScopes];
+			this.depths = new int[maxScopes];
+			this.cpuStart = new long[maxScopes];
+			this.cpuEnd = new long[maxScopes];
+			this.gpuStart = new long[maxScopes];
+			this.gpuEnd = new long[maxScopes];
+			this.startQueries = new OGLTimerQuery[maxScopes];
+			this.endQueries = new OGLTimerQuery[maxScopes];
+			this.gpuPending = false;
+		}
+	}
+
+	/**
+	 * A copy of a recorded frame. Scopes are in the order that they were opened,
+	 * and scope 0 is the root scope of the frame.
+	 */
+	public static class Frame
+	{
+		/** Frame number. */
+		private long frameNumber;
+		/** Number of scopes. */
+		private int scopeCount;
+		/** Scope names. */
+		private String[] names;
+		/** Scope depths. */
+		private int[] depths;
+		/** CPU start times. */
+		private long[] cpuStart;
+		/** CPU end times. */
+		private long[] cpuEnd;
+		/** GPU start times. */
+		private long[] gpuStart;
+		/** GPU end times. */
+		private long[] gpuEnd;
+
+		Frame(Slot slot)
+		{
+			this.frameNumber = slot.frameNumber;
+			this.scopeCount = Math.min(slot.scopeCount, slot.names.length);
+			this.names = new String[scopeCount];
+			this.depths = new int[scopeCount];
+			this.cpuStart = new long[scopeCount];
+			this.cpuEnd = new long[scopeCount];
+			this.gpuStart = new long[scopeCount];
+			this.gpuEnd = new long[scopeCount];
+			System.arraycopy(slot.names, 0, names, 0, scopeCount);
+			System.arraycopy(slot.depths, 0, depths, 0, scopeCount);
+			System.arraycopy(slot.cpuStart, 0, cpuStart, 0, scopeCount);
+			System.arraycopy(slot.cpuEnd, 0, cpuEnd, 0, scopeCount);
+			System.arraycopy(slot.gpuStart, 0, gpuStart, 0, scopeCount);
+			System.arraycopy(slot.gpuEnd, 0, gpuEnd, 0, scopeCount);
+		}
+
+		/**
+		 * Returns this frame's number, counted from the first frame this profiler recorded.
+		 */
+		public long getFrameNumber()
+		{
+			return frameNumber;
+		}
+
+		/**
+		 * Returns the number of scopes in this frame.
+		 */
+		public int getScopeCount()
+		{
+			return scopeCount;
+		}
+
+		/**
+		 * Returns a scope's name.
+		 * @param index the scope index.
+		 */
+		public String getScopeName(int index)
+		{
+			return names[index];
+		}
+
+		/**
+		 * Returns a scope's nesting depth. The root scope is at depth 0.
+		 * @param index the scope index.
+		 */
+		public int getScopeDepth(int index)
+		{
+			return depths[index];
+		}
+
+		/**
+		 * Returns a scope's CPU start time, in {@link System#nanoTime()} nanoseconds.
+		 * @param index the scope index.
+		 */
+		public long getScopeStartNanos(int index)
+		{
+			return cpuStart[index];
+		}
+
+		/**
+		 * Returns a scope's CPU time in nanoseconds.
+		 * @param index the scope index.
+		 */
+		public long getScopeCPUNanos(int index)
+		{
+			return cpuEnd[index] - cpuStart[index];
+		}
+
+		/**
+		 * Returns a scope's GPU time in nanoseconds, or -1 if it was not measured.
+		 * @param index the scope index.
+		 */
+		public long getScopeGPUNanos(int index)
+		{
+			return gpuStart[index] >= 0L ? gpuEnd[index] - gpuStart[index] : -1L;
+		}
+	}
+
+}
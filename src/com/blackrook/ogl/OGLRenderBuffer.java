@@ -13,16 +13,8 @@ package com.blackrook.ogl;
  */
 public class OGLRenderBuffer extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
+	/** Estimated size in bytes. */
+	private long estimatedBytes;
 
 	/**
 	 * Constructs a new RenderBuffer object.
@@ -49,39 +41,33 @@ public class OGLRenderBuffer extends OGLObject
 		g.clearError();
 		g.getGL().glDeleteRenderbuffers(1, glStateNum, 0);
 		g.getError();
+		estimatedBytes = 0L;
 		return true;
 	}
 
 	/**
-	 * Destroys undeleted buffers abandoned from destroyed Java objects.
+	 * Sets the estimated size of this render buffer's storage.
+	 * @param bytes the size in bytes.
 	 */
-	static void destroyUndeleted(OGLGraphics g)
+	void setEstimatedBytes(long bytes)
 	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			g.getGL().glDeleteRenderbuffers(UNDELETED_LENGTH, UNDELETED_IDS, 0);
-			UNDELETED_LENGTH = 0;
-		}
+		estimatedBytes = bytes;
+		setRegistryBytes(bytes);
 	}
 
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
+	/**
+	 * Returns the estimated amount of memory used by this render buffer's storage in bytes,
+	 * from the format and dimensions it was given.
+	 */
+	public long getEstimatedBytes()
 	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
+		return estimatedBytes;
 	}
-	
+
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.RENDERBUFFER;
 	}
 
 }
@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * Keeps the textures, buffers, and other objects it manages within a budget of video memory.
+ * <p>
+ * Each managed object is a {@link Resource} made from a {@link Loader}, which creates the object
+ * and sends its data, from a copy kept in main memory or by reloading it from wherever it came from.
+ * Nodes call {@link Resource#get(OGLGraphics)} each time they use the object. If it is not resident,
+ * it is loaded then, and if that puts the resident total over budget, the least-recently-used
+ * resources are evicted (destroyed) until it fits again. Resources used in the current frame are
+ * never evicted, so the budget can be exceeded for a frame that uses more than the budget.
+ * <p>
+ * Sizes come from the estimates in the context's {@link OGLResourceRegistry}.
+ * <p>
+ * This is not thread-safe: everything must be done on the render thread of one context.
+ * @author Matthew Tropiano
+ */
+public class OGLResidencyManager
+{
+	/** Budget in bytes. */
+	private long budgetBytes;
+	/** Resident resources, least recently used first. */
+	private LinkedHashMap<Resource<?>, Boolean> resident;
+	/** Estimated bytes of resident resources. */
+	private long residentBytes;
+	/** Number of managed resources. */
+	private int managedCount;
+
+	/** Uses of resident resources. */
+	private long hits;
+	/** Uses of resources that had to be loaded. */
+	private long misses;
+	/** Resources evicted. */
+	private long evictions;
+
+	/**
+	 * Creates a new residency manager.
+	 * @param budgetBytes the video memory budget in bytes.
+	 */
+	public OGLResidencyManager(long budgetBytes)
+	{
+		this.budgetBytes = Math.max(0L, budgetBytes);
+		this.resident = new LinkedHashMap<Resource<?>, Boolean>(16, 0.75f, true);
+		this.residentBytes = 0L;
+		this.managedCount = 0;
+		this.hits = 0L;
+		this.misses = 0L;
+		this.evictions = 0L;
+	}
+
+	/**
+	 * Starts managing a resource. Nothing is loaded until it is first used.
+	 * @param loader the loader that creates the resource's object.
+	 * @return the new resource.
+	 */
+	public <T extends OGLObject> Resource<T> manage(Loader<T> loader)
+	{
+		managedCount++;
+		return new Resource<T>(this, loader);
+	}
+
+	/**
+	 * Evicts least-recently-used resources until the resident total is within budget,
+	 * but not any used in the current frame.
+	 * @param g the graphics context to use.
+	 * @return the number of resources evicted.
+	 */
+	public int trim(OGLGraphics g)
+	{
+		int out = 0;
+		long frame = g.currentFrame();
+		Iterator<Resource<?>> it = resident.keySet().iterator();
+		while (residentBytes > budgetBytes && it.hasNext())
+		{
+			Resource<?> resource = it.next();
+			// everything after this was used more recently.
+			if (resource.lastUseFrame == frame)
+				break;
+			it.remove();
+			resource.unload(g);
+			evictions++;
+			out++;
+		}
+		return out;
+	}
+
+	/**
+	 * Sets the video memory budget. Takes effect on the next load or {@link #trim(OGLGraphics)}.
+	 * @param bytes the budget in bytes.
+	 */
+	public void setBudgetBytes(long bytes)
+	{
+		budgetBytes = Math.max(0L, bytes);
+	}
+
+	/**
+	 * Returns the video memory budget in bytes.
+	 */
+	public long getBudgetBytes()
+	{
+		return budgetBytes;
+	}
+
+	/**
+	 * Returns the estimated bytes of all resident resources.
+	 */
+	public long getResidentBytes()
+	{
+		return residentBytes;
+	}
+
+	/**
+	 * Returns the number of resident resources.
+	 */
+	public int getResidentCount()
+	{
+		return resident.size();
+	}
+
+	/**
+	 * Returns the number of managed resources, resident or not.
+	 */
+	public int getManagedCount()
+	{
+		return managedCount;
+	}
+
+	/**
+	 * Returns the number of uses that found the resource resident.
+	 */
+	public long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of uses that had to load the resource.
+	 */
+	public long getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of uses that found the resource resident, from 0 to 1,
+	 * or 0 if there have been no uses.
+	 */
+	public double getHitRate()
+	{
+		long total = hits + misses;
+		return total > 0L ? (double)hits / total : 0.0;
+	}
+
+	/**
+	 * Returns the fraction of uses that had to load the resource, from 0 to 1,
+	 * or 0 if there have been no uses.
+	 */
+	public double getMissRate()
+	{
+		long total = hits + misses;
+		return total > 0L ? (double)misses / total : 0.0;
+	}
+
+	/**
+	 * Returns the number of resources evicted.
+	 */
+	public long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Resets the hit, miss, and eviction counts.
+	 */
+	public void resetStats()
+	{
+		hits = 0L;
+		misses = 0L;
+		evictions = 0L;
+	}
+
+	/**
+	 * Creates the object of a managed resource and sends its data.
+	 * Called when the resource is used and is not resident.
+	 * <p>
+	 * A loader for a texture might keep the image data in main memory and send it again
+	 * each time, or read it back from its file, or regenerate it.
+	 * @param <T> the object type.
+	 */
+	public interface Loader<T extends OGLObject>
+	{
+		/**
+		 * Creates a new object and sends its data.
+		 * @param g the graphics context to use.
+		 * @return the new object.
+		 */
+		public T load(OGLGraphics g);
+	}
+
+	/**
+	 * A managed object, which may or may not be resident.
+	 * @param <T> the object type.
+	 */
+	public static class Resource<T extends OGLObject>
+	{
+		/** Manager that this belongs to. */
+		private OGLResidencyManager manager;
+		/** The loader. */
+		private Loader<T> loader;
+		/** The object, or null if not resident. */
+		private T object;
+		/** Estimated bytes of the object, when it was loaded. */
+		private long bytes;
+		/** Frame that this was last used in. */
+		private long lastUseFrame;
+		/** Has this been released? */
+		private boolean released;
+
+		private Resource(OGLResidencyManager manager, Loader<T> loader)
+		{
+			this.manager = manager;
+			this.loader = loader;
+			this.object = null;
+			this.bytes = 0L;
+			this.lastUseFrame = -1L;
+			this.released = false;
+		}
+
+		/**
+		 * Returns this resource's object, loading it first if it is not resident,
+		 * and marks it as used in the current frame.
+		 * @param g the graphics context to use.
+		 * @return the object.
+		 * @throws GraphicsException if this resource was released, or if the loader returned null.
+		 */
+		public T get(OGLGraphics g)
+		{
+			if (released)
+				throw new GraphicsException("Resource was released.");
+			lastUseFrame = g.currentFrame();
+			if (object != null && object.isAllocated())
+			{
+				// moves this to the most-recently-used end.
+				manager.resident.get(this);
+				manager.hits++;
+				return object;
+			}
+
+			manager.misses++;
+			// destroyed by someone else.
+			if (object != null)
+			{
+				manager.resident.remove(this);
+				manager.residentBytes -= bytes;
+				object = null;
+				bytes = 0L;
+			}
+			object = loader.load(g);
+			if (object == null)
+				throw new GraphicsException("Loader returned no object.");
+			bytes = object.getRegistryBytes();
+			manager.resident.put(this, Boolean.TRUE);
+			manager.residentBytes += bytes;
+			manager.trim(g);
+			return object;
+		}
+
+		// Destroys the object, if resident.
+		private void unload(OGLGraphics g)
+		{
+			if (object == null)
+				return;
+			object.destroy(g);
+			object = null;
+			manager.residentBytes -= bytes;
+			bytes = 0L;
+		}
+
+		/**
+		 * Evicts this resource now, if it is resident. It is loaded again on its next use.
+		 * @param g the graphics context to use.
+		 */
+		public void evict(OGLGraphics g)
+		{
+			if (manager.resident.remove(this) != null)
+			{
+				unload(g);
+				manager.evictions++;
+			}
+		}
+
+		/**
+		 * Destroys this resource's object, if resident, and stops managing it.
+		 * @param g the graphics context to use.
+		 */
+		public void release(OGLGraphics g)
+		{
+			if (released)
+				return;
+			if (manager.resident.remove(this) != null)
+				unload(g);
+			released = true;
+			manager.managedCount--;
+		}
+
+		/**
+		 * Returns if this resource's object is resident.
+		 */
+		public boolean isResident()
+		{
+			return object != null;
+		}
+
+		/**
+		 * Returns the estimated bytes of this resource's object, or 0 if it is not resident.
+		 */
+		public long getBytes()
+		{
+			return bytes;
+		}
+
+		/**
+		 * Returns the frame that this resource was last used in, or -1 if never used.
+		 */
+		public long getLastUseFrame()
+		{
+			return lastUseFrame;
+		}
+	}
+
+}
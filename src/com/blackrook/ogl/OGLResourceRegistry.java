@@ -0,0 +1,547 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.blackrook.commons.list.List;
+
+/**
+ * A registry of every live {@link OGLObject} made on one {@link OGLGraphics} context,
+ * with the estimated size of its data, for memory accounting and finding leaks.
+ * <p>
+ * Texture sizes are estimated from the formats and dimensions of the data sent to them
+ * (see {@link com.blackrook.ogl.enums.TextureFormat#sizeFactor}), buffer sizes from the data sent to them, and
+ * render buffer sizes from their storage format and dimensions. Totals per object type are kept
+ * as objects come and go, so reading them is cheap and can be done from any thread.
+ * <p>
+ * The registry can also list the objects that have been alive longer than some age (see {@link #getLeakReport()}),
+ * with where each was allocated if allocation sites are recorded (see {@link #setAllocationSitesEnabled(boolean)}).
+ * <p>
+ * Objects that are garbage collected without being destroyed are deleted on this context,
+ * in one call per object type, at the end of its next frame. Each object is tracked with a phantom reference;
+ * when one is collected, a shared daemon thread moves its reference to the lock-free queue of the registry it belongs to.
+ * @author Matthew Tropiano
+ */
+public final class OGLResourceRegistry
+{
+	/** Object types, by how they are deleted. */
+	public enum Type
+	{
+		/** {@link OGLBuffer}s. */
+		BUFFER,
+		/** {@link OGLFrameBuffer}s. */
+		FRAMEBUFFER,
+		/** {@link OGLRenderBuffer}s. */
+		RENDERBUFFER,
+		/** {@link OGLOcclusionQuery}s and {@link OGLTimerQuery}s. */
+		QUERY,
+		/** {@link OGLShader}s. */
+		SHADER,
+		/** {@link OGLShaderProgram}s. */
+		SHADER_PROGRAM,
+		/** {@link OGLTexture}s. */
+		TEXTURE;
+	}
+
+	/** Default age after which an object is listed in the leak report: 5 minutes. */
+	public static final long DEFAULT_LEAK_AGE_MILLIS = 5L * 60L * 1000L;
+
+	/** Package of the library classes, skipped when finding allocation sites. */
+	private static final String PACKAGE_NAME = OGLResourceRegistry.class.getPackage().getName();
+
+	/** Number of object types. */
+	private static final int TYPE_COUNT = Type.values().length;
+
+	/** Queue that the garbage collector puts the references of collected objects on. */
+	private static final ReferenceQueue<OGLObject> COLLECTED = new ReferenceQueue<OGLObject>();
+
+	static
+	{
+		Thread thread = new Thread("OGLResourceRegistry")
+		{
+			@Override
+			public void run()
+			{
+				while (true)
+				{
+					try {
+						Entry entry = (Entry)COLLECTED.remove();
+						entry.owner.abandon(entry);
+					} catch (InterruptedException e) {
+						// keep going: this thread lives as long as the VM.
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Entries of live objects, kept so that they are not collected before their objects. */
+	private Set<Entry> live;
+	/** Live objects, per type. */
+	private AtomicIntegerArray liveCounts;
+	/** Estimated bytes of live objects, per type. */
+	private AtomicLongArray liveBytes;
+
+	/** Entries of collected objects, waiting for deletion. */
+	private ConcurrentLinkedQueue<Entry> abandoned;
+	/** Number of collected objects waiting for deletion. */
+	private AtomicInteger abandonedCount;
+	/** Estimated bytes of collected objects waiting for deletion. */
+	private AtomicLong abandonedBytes;
+
+	/** Are allocation sites recorded? */
+	private volatile boolean allocationSitesEnabled;
+	/** Age after which an object is listed in the leak report. */
+	private volatile long leakAgeNanos;
+
+	/** Ids to delete, per type. Only touched by the render thread. */
+	private int[][] deleteIds;
+	/** Number of ids to delete, per type. Only touched by the render thread. */
+	private int[] deleteCounts;
+
+	/**
+	 * Creates a new registry.
+	 */
+	OGLResourceRegistry()
+	{
+		live = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+		liveCounts = new AtomicIntegerArray(TYPE_COUNT);
+		liveBytes = new AtomicLongArray(TYPE_COUNT);
+		abandoned = new ConcurrentLinkedQueue<Entry>();
+		abandonedCount = new AtomicInteger(0);
+		abandonedBytes = new AtomicLong(0L);
+		allocationSitesEnabled = false;
+		leakAgeNanos = DEFAULT_LEAK_AGE_MILLIS * 1000000L;
+		deleteIds = new int[TYPE_COUNT][];
+		for (int i = 0; i < TYPE_COUNT; i++)
+			deleteIds[i] = new int[OGLObject.INIT_UNALLOC_SIZE];
+		deleteCounts = new int[TYPE_COUNT];
+	}
+
+	/**
+	 * Starts tracking an allocated object.
+	 * @param object the object.
+	 * @param type the object type.
+	 * @param id the OpenGL id of the object.
+	 * @return the entry to call {@link Entry#release()} on when the object is destroyed.
+	 */
+	Entry register(OGLObject object, Type type, int id)
+	{
+		Entry out = new Entry(object, this, type, id, allocationSitesEnabled ? new Throwable() : null);
+		live.add(out);
+		liveCounts.incrementAndGet(type.ordinal());
+		return out;
+	}
+
+	// Stops counting an entry as live.
+	private boolean unregister(Entry entry)
+	{
+		if (!live.remove(entry))
+			return false;
+		liveCounts.decrementAndGet(entry.type.ordinal());
+		liveBytes.addAndGet(entry.type.ordinal(), -entry.bytes);
+		return true;
+	}
+
+	// Queues the id of a collected object for deletion.
+	private void abandon(Entry entry)
+	{
+		if (!unregister(entry))
+			return;
+		abandoned.add(entry);
+		abandonedCount.incrementAndGet();
+		abandonedBytes.addAndGet(entry.bytes);
+	}
+
+	/**
+	 * Deletes the OpenGL objects of all collected objects.
+	 * Must be called on the render thread of this registry's context.
+	 * @param g the graphics context.
+	 */
+	void drain(OGLGraphics g)
+	{
+		if (abandonedCount.get() == 0)
+			return;
+
+		int count = 0;
+		Entry entry;
+		while ((entry = abandoned.poll()) != null)
+		{
+			int t = entry.type.ordinal();
+			if (deleteCounts[t] == deleteIds[t].length)
+			{
+				int[] newArray = new int[deleteIds[t].length * 2];
+				System.arraycopy(deleteIds[t], 0, newArray, 0, deleteCounts[t]);
+				deleteIds[t] = newArray;
+			}
+			deleteIds[t][deleteCounts[t]++] = entry.id;
+			abandonedBytes.addAndGet(-entry.bytes);
+			count++;
+		}
+		abandonedCount.addAndGet(-count);
+
+		for (Type type : Type.values())
+		{
+			int t = type.ordinal();
+			int n = deleteCounts[t];
+			if (n > 0)
+			{
+				delete(g, type, deleteIds[t], n);
+				deleteCounts[t] = 0;
+			}
+		}
+	}
+
+	// Deletes a batch of OpenGL objects of one type.
+	private static void delete(OGLGraphics g, Type type, int[] ids, int count)
+	{
+		switch (type)
+		{
+			case BUFFER:
+				g.getGL().glDeleteBuffers(count, ids, 0);
+				break;
+			case FRAMEBUFFER:
+				g.getGL().glDeleteFramebuffers(count, ids, 0);
+				break;
+			case RENDERBUFFER:
+				g.getGL().glDeleteRenderbuffers(count, ids, 0);
+				break;
+			case QUERY:
+				g.getGL().glDeleteQueries(count, ids, 0);
+				break;
+			case SHADER:
+				// programs have no batch delete.
+				for (int i = 0; i < count; i++)
+					g.getGL().glDeleteProgram(ids[i]);
+				break;
+			case SHADER_PROGRAM:
+				for (int i = 0; i < count; i++)
+					g.getGL().glDeleteShader(ids[i]);
+				break;
+			case TEXTURE:
+				g.getGL().glDeleteTextures(count, ids, 0);
+				break;
+		}
+	}
+
+	/**
+	 * Returns the number of collected objects waiting for deletion.
+	 */
+	int getAbandonedCount()
+	{
+		return abandonedCount.get();
+	}
+
+	/**
+	 * Returns the estimated bytes of the collected objects waiting for deletion.
+	 */
+	long getAbandonedBytes()
+	{
+		return abandonedBytes.get();
+	}
+
+	/**
+	 * Returns the number of live objects of a type.
+	 * @param type the object type.
+	 */
+	public int getCount(Type type)
+	{
+		return liveCounts.get(type.ordinal());
+	}
+
+	/**
+	 * Returns the estimated bytes of the data of live objects of a type.
+	 * Only textures, buffers, and render buffers have data.
+	 * @param type the object type.
+	 */
+	public long getBytes(Type type)
+	{
+		return liveBytes.get(type.ordinal());
+	}
+
+	/**
+	 * Returns the number of live objects of all types.
+	 */
+	public int getTotalCount()
+	{
+		int out = 0;
+		for (int i = 0; i < TYPE_COUNT; i++)
+			out += liveCounts.get(i);
+		return out;
+	}
+
+	/**
+	 * Returns the estimated bytes of the data of live objects of all types.
+	 */
+	public long getTotalBytes()
+	{
+		long out = 0L;
+		for (int i = 0; i < TYPE_COUNT; i++)
+			out += liveBytes.get(i);
+		return out;
+	}
+
+	/**
+	 * Sets if the allocation site of each new object is recorded, for the leak report.
+	 * This captures a stack trace per allocation, so it is best left off unless hunting leaks.
+	 * Objects allocated while this is off have no allocation site.
+	 * Default is false.
+	 */
+	public void setAllocationSitesEnabled(boolean enabled)
+	{
+		allocationSitesEnabled = enabled;
+	}
+
+	/**
+	 * Returns if the allocation site of each new object is recorded.
+	 */
+	public boolean isAllocationSitesEnabled()
+	{
+		return allocationSitesEnabled;
+	}
+
+	/**
+	 * Sets the age after which a live object is listed in the leak report.
+	 * Default is {@link #DEFAULT_LEAK_AGE_MILLIS}.
+	 * @param millis the age in milliseconds.
+	 */
+	public void setLeakAgeMillis(long millis)
+	{
+		leakAgeNanos = Math.max(0L, millis) * 1000000L;
+	}
+
+	/**
+	 * Returns the age after which a live object is listed in the leak report, in milliseconds.
+	 */
+	public long getLeakAgeMillis()
+	{
+		return leakAgeNanos / 1000000L;
+	}
+
+	/**
+	 * Returns the live objects older than the leak age, oldest first.
+	 * @see #setLeakAgeMillis(long)
+	 */
+	public List<Allocation> getLeakReport()
+	{
+		return getObjectsOlderThan(leakAgeNanos / 1000000L);
+	}
+
+	/**
+	 * Returns the live objects older than an age, oldest first.
+	 * @param millis the age in milliseconds.
+	 */
+	public List<Allocation> getObjectsOlderThan(long millis)
+	{
+		long now = System.nanoTime();
+		long age = millis * 1000000L;
+		List<Allocation> found = new List<Allocation>();
+		for (Entry entry : live)
+			if (now - entry.createdNanos >= age)
+				found.add(new Allocation(entry, now));
+
+		Allocation[] sorted = new Allocation[found.size()];
+		found.toArray(sorted);
+		Arrays.sort(sorted, new Comparator<Allocation>()
+		{
+			@Override
+			public int compare(Allocation a, Allocation b)
+			{
+				return a.ageNanos > b.ageNanos ? -1 : (a.ageNanos < b.ageNanos ? 1 : 0);
+			}
+		});
+		List<Allocation> out = new List<Allocation>(Math.max(1, sorted.length));
+		for (Allocation a : sorted)
+			out.add(a);
+		return out;
+	}
+
+	/**
+	 * A live object in a report.
+	 */
+	public static class Allocation
+	{
+		/** Object type. */
+		private Type type;
+		/** Object class name. */
+		private String className;
+		/** OpenGL id. */
+		private int glId;
+		/** Estimated bytes. */
+		private long bytes;
+		/** Age when reported. */
+		private long ageNanos;
+		/** Stack trace of the allocation, if recorded. */
+		private Throwable trace;
+
+		private Allocation(Entry entry, long now)
+		{
+			this.type = entry.type;
+			this.className = entry.className;
+			this.glId = entry.id;
+			this.bytes = entry.bytes;
+			this.ageNanos = now - entry.createdNanos;
+			this.trace = entry.trace;
+		}
+
+		/**
+		 * Returns the object type.
+		 */
+		public Type getType()
+		{
+			return type;
+		}
+
+		/**
+		 * Returns the simple name of the object's class.
+		 */
+		public String getClassName()
+		{
+			return className;
+		}
+
+		/**
+		 * Returns the OpenGL id of the object.
+		 */
+		public int getGLId()
+		{
+			return glId;
+		}
+
+		/**
+		 * Returns the estimated bytes of the object's data.
+		 */
+		public long getBytes()
+		{
+			return bytes;
+		}
+
+		/**
+		 * Returns how long the object had been alive when reported, in nanoseconds.
+		 */
+		public long getAgeNanos()
+		{
+			return ageNanos;
+		}
+
+		/**
+		 * Returns the first caller outside of this library that led to the object's allocation,
+		 * or null if allocation sites were not recorded when it was allocated.
+		 */
+		public StackTraceElement getAllocationSite()
+		{
+			if (trace == null)
+				return null;
+			StackTraceElement[] elements = trace.getStackTrace();
+			for (StackTraceElement e : elements)
+			{
+				String name = e.getClassName();
+				int dot = name.lastIndexOf('.');
+				if (dot < 0 || !name.substring(0, dot).equals(PACKAGE_NAME))
+					return e;
+			}
+			return elements.length > 0 ? elements[elements.length - 1] : null;
+		}
+
+		/**
+		 * Returns the full stack trace of the object's allocation,
+		 * or null if allocation sites were not recorded when it was allocated.
+		 */
+		public StackTraceElement[] getAllocationTrace()
+		{
+			return trace != null ? trace.getStackTrace() : null;
+		}
+
+		@Override
+		public String toString()
+		{
+			StackTraceElement site = getAllocationSite();
+			return className + " id:" + glId + " " + bytes + " bytes, " + (ageNanos / 1000000L) + "ms old"
+				+ (site != null ? ", allocated at " + site : "");
+		}
+	}
+
+	/**
+	 * A reference to an allocated object, holding what is needed to delete it after it is collected.
+	 */
+	static final class Entry extends PhantomReference<OGLObject>
+	{
+		/** Registry that this belongs to. */
+		private OGLResourceRegistry owner;
+		/** Object type. */
+		private Type type;
+		/** Object class name. */
+		private String className;
+		/** OpenGL id. */
+		private int id;
+		/** Time of allocation. */
+		private long createdNanos;
+		/** Stack trace of the allocation, if recorded. */
+		private Throwable trace;
+		/** Estimated size of the object's data. */
+		private volatile long bytes;
+
+		private Entry(OGLObject object, OGLResourceRegistry owner, Type type, int id, Throwable trace)
+		{
+			super(object, COLLECTED);
+			this.owner = owner;
+			this.type = type;
+			this.className = object.getClass().getSimpleName();
+			this.id = id;
+			this.createdNanos = System.nanoTime();
+			this.trace = trace;
+			this.bytes = 0L;
+		}
+
+		/**
+		 * Sets the estimated size of the object's data.
+		 */
+		void setBytes(long bytes)
+		{
+			long delta = bytes - this.bytes;
+			this.bytes = bytes;
+			if (delta != 0L && owner.live.contains(this))
+				owner.liveBytes.addAndGet(type.ordinal(), delta);
+		}
+
+		/**
+		 * Returns the estimated size of the object's data.
+		 */
+		long getBytes()
+		{
+			return bytes;
+		}
+
+		/**
+		 * Stops tracking the object, after it was destroyed properly.
+		 */
+		void release()
+		{
+			owner.unregister(this);
+			clear();
+		}
+	}
+
+}
@@ -11,11 +11,13 @@
 package com.blackrook.ogl;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import com.jogamp.opengl.*;
 
 import com.blackrook.commons.Common;
 import com.blackrook.commons.hash.HashMap;
+import com.blackrook.commons.math.Matrix4F;
 import com.blackrook.ogl.exception.*;
 
 /**
@@ -24,17 +26,6 @@ import com.blackrook.ogl.exception.*;
  */
 public class OGLShader extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
-	
 	/** Map type names. */
 	private static final HashMap<Integer, String> TYPENAMES = new HashMap<Integer, String>() 
 	{{
@@ -156,7 +147,7 @@ public class OGLShader extends OGLObject
 	
 	/** The shader log. */
 	private String log;
-	/** Uniform location hash. */
+	/** Uniforms by active uniform index. */
 	private Uniform[] uniformLocationList;
 	/** Uniform hash. */
 	private HashMap<String, Uniform> uniformMap;
@@ -167,6 +158,29 @@ public class OGLShader extends OGLObject
 	 * @param programs the programs to attach.
 	 */
 	OGLShader(OGLGraphics g, OGLShaderProgram ... programs)
+	{
+		this(g, false, programs);
+	}
+	
+	/**
+	 * Creates a new Shader. 
+	 * Each program can be null and is just left absent in the complete program.
+	 * @param retrievable if true, hints to the driver that the linked binary will be retrieved.
+	 * @param programs the programs to attach.
+	 */
+	OGLShader(OGLGraphics g, boolean retrievable, OGLShaderProgram ... programs)
+	{
+		this(g, retrievable, false, programs);
+	}
+	
+	/**
+	 * Creates a new Shader. 
+	 * Each program can be null and is just left absent in the complete program.
+	 * @param retrievable if true, hints to the driver that the linked binary will be retrieved.
+	 * @param deferred if true, linking is started but not waited on - {@link #finishLink(OGLGraphics)} must be called later.
+	 * @param programs the programs to attach.
+	 */
+	OGLShader(OGLGraphics g, boolean retrievable, boolean deferred, OGLShaderProgram[] programs)
 	{
 		super(g);
 		this.vertexProgram = null;
@@ -216,19 +230,78 @@ public class OGLShader extends OGLObject
 		if (fragmentProgram != null)
 			gl.glAttachShader(getGLId(), fragmentProgram.getGLId());
 
+		if (retrievable)
+			gl.glProgramParameteri(getGLId(), GL2.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL2.GL_TRUE);
+
+		gl.glLinkProgramARB(getGLId());
+		if (!deferred)
+			finishLink(g);
+	}
+
+	/**
+	 * Creates a new Shader from a previously-retrieved program binary.
+	 * @param binaryFormat the driver-specific binary format.
+	 * @param binary the binary data, from its position to its limit.
+	 * @throws GraphicsException if the driver rejects the binary.
+	 */
+	OGLShader(OGLGraphics g, int binaryFormat, ByteBuffer binary)
+	{
+		super(g);
+		this.vertexProgram = null;
+		this.geometryProgram = null;
+		this.fragmentProgram = null;
+
+		GL2 gl = g.getGL();
+
+		// drivers reject binaries made by other drivers or versions, with an error for an unknown format or a failed link status.
+		g.clearError();
+		gl.glProgramBinary(getGLId(), binaryFormat, binary, binary.remaining());
+		boolean error = gl.glGetError() != GL2.GL_NO_ERROR;
+		gl.glGetProgramiv(getGLId(), GL2.GL_LINK_STATUS, glStateNum, 0);
+		if (error || glStateNum[0] == 0)
+		{
+			destroy(g);
+			throw new GraphicsException("Program binary was rejected by the driver.");
+		}
+		log = readLog(g);
+
+		uniforms(g);
+		g.getError();
+	}
+
+	/**
+	 * Checks if linking has finished, without blocking.
+	 * If the device cannot report this, this always returns true.
+	 * @param g the OGLGraphics instance to use.
+	 * @return true if finished, false if not.
+	 */
+	final boolean isLinkComplete(OGLGraphics g)
+	{
+		if (!g.supportsParallelShaderCompile())
+			return true;
+		g.getGL().glGetProgramiv(getGLId(), GL2.GL_COMPLETION_STATUS_ARB, glStateNum, 0);
+		return glStateNum[0] != 0;
+	}
+
+	/**
+	 * Waits for linking to finish, checks the result, and reads the uniforms.
+	 * @param g the OGLGraphics instance to use.
+	 * @throws GraphicsException if linking failed.
+	 */
+	final void finishLink(OGLGraphics g)
+	{
 		// did they link properly?
-		link(g);
+		checkLink(g);
 		g.getError();
 		
 		uniforms(g);
 		g.getError();
 	}
 
-	// Links the programs.
-	private void link(OGLGraphics g) throws GraphicsException
+	// Checks the link status of the programs.
+	private void checkLink(OGLGraphics g) throws GraphicsException
 	{
 		GL2 gl = g.getGL();
-	    gl.glLinkProgramARB(getGLId());
 	    log = readLog(g);
 	    gl.glGetObjectParameterivARB(getGLId(), GL2.GL_OBJECT_LINK_STATUS_ARB, glStateNum, 0);
 	    if (glStateNum[0] == 0)
@@ -269,20 +342,46 @@ public class OGLShader extends OGLObject
 			gl.glGetActiveUniform(getGLId(), i, NAMESIZE, length, 0, size, 0, type, 0, name, 0);
 			
 			uniformLocationList[i] = new Uniform();
-			uniformLocationList[i].locationId = i;
 			uniformLocationList[i].length = length[0];
 			try {
 				uniformLocationList[i].name = new String(name, 0, uniformLocationList[i].length, "UTF-8");
 			} catch (UnsupportedEncodingException e) {/* should not happen. */}
+			uniformLocationList[i].locationId = gl.glGetUniformLocation(getGLId(), uniformLocationList[i].name);
 			uniformLocationList[i].size = size[0];
 			uniformLocationList[i].type = type[0];
 			uniformLocationList[i].typeName = TYPENAMES.get(type[0]);
+			uniformLocationList[i].handle = createHandle(uniformLocationList[i]);
 			
 			uniformMap.put(uniformLocationList[i].name, uniformLocationList[i]);
 		}
 		g.clearError();
 	}
 
+	// Creates the typed handle for a uniform, or null if there is no handle type for it.
+	private static UniformHandle createHandle(Uniform uniform)
+	{
+		switch (uniform.type)
+		{
+			case GL2.GL_FLOAT:
+				return new UniformFloat(uniform);
+			case GL2.GL_FLOAT_VEC2:
+				return new UniformVec2(uniform);
+			case GL2.GL_FLOAT_VEC3:
+				return new UniformVec3(uniform);
+			case GL2.GL_FLOAT_VEC4:
+				return new UniformVec4(uniform);
+			case GL2.GL_FLOAT_MAT4:
+				return new UniformMat4(uniform);
+			case GL2.GL_INT:
+			case GL2.GL_BOOL:
+				return new UniformInt(uniform);
+			default:
+				if (uniform.typeName != null && uniform.typeName.contains("sampler"))
+					return new UniformSampler(uniform);
+				return null;
+		}
+	}
+
 	@Override
 	protected int allocate(OGLGraphics g)
 	{
@@ -298,6 +397,24 @@ public class OGLShader extends OGLObject
 		return true;
 	}
 	
+	/**
+	 * Retrieves the linked program binary of this shader.
+	 * The shader should have been linked with the retrievable hint set.
+	 * @param binaryFormat the output array for the driver-specific binary format (first index is set).
+	 * @return a new direct buffer of the binary, or null if the driver did not provide one.
+	 */
+	ByteBuffer getProgramBinary(OGLGraphics g, int[] binaryFormat)
+	{
+		GL2 gl = g.getGL();
+		gl.glGetProgramiv(getGLId(), GL2.GL_PROGRAM_BINARY_LENGTH, glStateNum, 0);
+		if (glStateNum[0] <= 0)
+			return null;
+		ByteBuffer out = Common.allocDirectByteBuffer(glStateNum[0]);
+		gl.glGetProgramBinary(getGLId(), glStateNum[0], glStateNum, 0, binaryFormat, 0, out);
+		out.limit(glStateNum[0]);
+		return out;
+	}
+
 	/**
 	 * Returns the log from this program's linking.
 	 */
@@ -314,16 +431,30 @@ public class OGLShader extends OGLObject
 		return uniformLocationList.length;
 	}
 
+	/**
+	 * Gets a {@link Uniform} by its active uniform index.
+	 * @param index the index, from 0 to {@link #getUniformCount()} - 1.
+	 * @return the corresponding uniform or null if not found.
+	 */
+	public Uniform getUniformByIndex(int index)
+	{
+		if (index < 0 || index >= uniformLocationList.length)
+			return null;
+		return uniformLocationList[index];
+	}
+	
 	/**
 	 * Gets a {@link Uniform} by its location id.
+	 * This searches all uniforms - prefer holding onto the result or a typed handle.
 	 * @param locationId the location id.
 	 * @return the corresponding uniform or null if not found.
 	 */
 	public Uniform getUniform(int locationId)
 	{
-		if (locationId < 0 || locationId >= uniformLocationList.length)
-			return null;
-		return uniformLocationList[locationId];
+		for (int i = 0; i < uniformLocationList.length; i++)
+			if (uniformLocationList[i].locationId == locationId)
+				return uniformLocationList[i];
+		return null;
 	}
 	
 	/**
@@ -337,36 +468,118 @@ public class OGLShader extends OGLObject
 	}
 	
 	/**
-	 * Destroys undeleted shader programs abandoned from destroyed Java objects.
+	 * Gets a typed handle for a <code>float</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a float.
 	 */
-	static void destroyUndeleted(OGLGraphics g)
+	public UniformFloat getUniformFloat(String name)
 	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			for (int i = 0; i < UNDELETED_LENGTH; i++)
-				g.getGL().glDeleteObjectARB(UNDELETED_IDS[i]);
-			UNDELETED_LENGTH = 0;
-		}
+		UniformHandle out = getHandle(name, UniformFloat.class);
+		return out != null ? (UniformFloat)out : new UniformFloat(null);
 	}
-
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
+	
+	/**
+	 * Gets a typed handle for a <code>vec2</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a vec2.
+	 */
+	public UniformVec2 getUniformVec2(String name)
 	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
+		UniformHandle out = getHandle(name, UniformVec2.class);
+		return out != null ? (UniformVec2)out : new UniformVec2(null);
+	}
+	
+	/**
+	 * Gets a typed handle for a <code>vec3</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a vec3.
+	 */
+	public UniformVec3 getUniformVec3(String name)
+	{
+		UniformHandle out = getHandle(name, UniformVec3.class);
+		return out != null ? (UniformVec3)out : new UniformVec3(null);
+	}
+	
+	/**
+	 * Gets a typed handle for a <code>vec4</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a vec4.
+	 */
+	public UniformVec4 getUniformVec4(String name)
+	{
+		UniformHandle out = getHandle(name, UniformVec4.class);
+		return out != null ? (UniformVec4)out : new UniformVec4(null);
+	}
+	
+	/**
+	 * Gets a typed handle for a <code>mat4</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a mat4.
+	 */
+	public UniformMat4 getUniformMat4(String name)
+	{
+		UniformHandle out = getHandle(name, UniformMat4.class);
+		return out != null ? (UniformMat4)out : new UniformMat4(null);
+	}
+	
+	/**
+	 * Gets a typed handle for an <code>int</code> or <code>bool</code> uniform.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not an int or bool.
+	 */
+	public UniformInt getUniformInt(String name)
+	{
+		UniformHandle out = getHandle(name, UniformInt.class);
+		return out != null ? (UniformInt)out : new UniformInt(null);
+	}
+	
+	/**
+	 * Gets a typed handle for a sampler uniform of any kind.
+	 * If the shader has no active uniform by this name (for instance, if the compiler 
+	 * optimized it out), the returned handle does nothing when set.
+	 * @param name the uniform name.
+	 * @return the handle.
+	 * @throws GraphicsException if the uniform exists, but is not a sampler.
+	 */
+	public UniformSampler getUniformSampler(String name)
+	{
+		UniformHandle out = getHandle(name, UniformSampler.class);
+		return out != null ? (UniformSampler)out : new UniformSampler(null);
+	}
+	
+	// Gets and checks the handle for a uniform. Returns null if no such uniform.
+	private UniformHandle getHandle(String name, Class<? extends UniformHandle> handleType)
+	{
+		Uniform uniform = uniformMap.get(name);
+		if (uniform == null)
+			return null;
+		if (!handleType.isInstance(uniform.handle))
+			throw new GraphicsException("Uniform \""+name+"\" is of type "+uniform.typeName+", not usable as "+handleType.getSimpleName()+".");
+		return uniform.handle;
 	}
 	
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.SHADER;
 	}
 	
 	/**
@@ -386,6 +599,8 @@ public class OGLShader extends OGLObject
 		private int type;
 		/** Uniform type. */
 		private String typeName;
+		/** Typed handle. */
+		private UniformHandle handle;
 		
 		/** @return the uniform location id. */
 		public int getLocationId() 
@@ -431,5 +646,222 @@ public class OGLShader extends OGLObject
 		
 	}
 
+	/**
+	 * A typed handle to a uniform on a shader, resolved when the shader was linked.
+	 * Setting a value is a single GL call on the stored location - no lookups are done.
+	 * Like the <code>setShaderUniform</code> methods on {@link OGLGraphics}, values are set
+	 * on the currently-bound shader, so the owning shader must be bound when setting.
+	 */
+	public static abstract class UniformHandle
+	{
+		/** The uniform, or null if not an active uniform. */
+		private Uniform uniform;
+		/** Location id, or -1 if not an active uniform. */
+		protected final int locationId;
+		
+		UniformHandle(Uniform uniform)
+		{
+			this.uniform = uniform;
+			this.locationId = uniform != null ? uniform.locationId : -1;
+		}
+		
+		/** @return the uniform, or null if this is not an active uniform. */
+		public Uniform getUniform() 
+		{
+			return uniform;
+		}
+		
+		/** @return the uniform location id, or -1 if this is not an active uniform. */
+		public int getLocationId() 
+		{
+			return locationId;
+		}
+		
+		/** @return true if this is an active uniform, false if setting it does nothing. */
+		public boolean isActive() 
+		{
+			return locationId >= 0;
+		}
+		
+		@Override
+		public String toString() 
+		{
+			return getClass().getSimpleName() + (uniform != null ? " " + uniform.name : " (inactive)") + " (location "+locationId+")";
+		}
+	}
+	
+	/**
+	 * A handle to a <code>float</code> uniform.
+	 */
+	public static final class UniformFloat extends UniformHandle
+	{
+		UniformFloat(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param value the value to set.
+		 */
+		public void set(OGLGraphics g, float value)
+		{
+			g.getGL().glUniform1f(locationId, value);
+		}
+	}
+	
+	/**
+	 * A handle to a <code>vec2</code> uniform.
+	 */
+	public static final class UniformVec2 extends UniformHandle
+	{
+		UniformVec2(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param x the first value to set.
+		 * @param y the second value to set.
+		 */
+		public void set(OGLGraphics g, float x, float y)
+		{
+			g.getGL().glUniform2f(locationId, x, y);
+		}
+	}
+	
+	/**
+	 * A handle to a <code>vec3</code> uniform.
+	 */
+	public static final class UniformVec3 extends UniformHandle
+	{
+		UniformVec3(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param x the first value to set.
+		 * @param y the second value to set.
+		 * @param z the third value to set.
+		 */
+		public void set(OGLGraphics g, float x, float y, float z)
+		{
+			g.getGL().glUniform3f(locationId, x, y, z);
+		}
+	}
+	
+	/**
+	 * A handle to a <code>vec4</code> uniform.
+	 */
+	public static final class UniformVec4 extends UniformHandle
+	{
+		UniformVec4(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param x the first value to set.
+		 * @param y the second value to set.
+		 * @param z the third value to set.
+		 * @param w the fourth value to set.
+		 */
+		public void set(OGLGraphics g, float x, float y, float z, float w)
+		{
+			g.getGL().glUniform4f(locationId, x, y, z, w);
+		}
+	}
+	
+	/**
+	 * A handle to a <code>mat4</code> uniform.
+	 */
+	public static final class UniformMat4 extends UniformHandle
+	{
+		UniformMat4(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param matrixArray the column-major matrix values (at least 16).
+		 */
+		public void set(OGLGraphics g, float[] matrixArray)
+		{
+			g.getGL().glUniformMatrix4fv(locationId, 1, false, matrixArray, 0);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param matrix the matrix to set.
+		 */
+		public void set(OGLGraphics g, Matrix4F matrix)
+		{
+			set(g, matrix.getArray());
+		}
+	}
+	
+	/**
+	 * A handle to an <code>int</code> or <code>bool</code> uniform.
+	 */
+	public static final class UniformInt extends UniformHandle
+	{
+		UniformInt(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param value the value to set.
+		 */
+		public void set(OGLGraphics g, int value)
+		{
+			g.getGL().glUniform1i(locationId, value);
+		}
+		
+		/**
+		 * Sets this uniform on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param value the value to set.
+		 */
+		public void set(OGLGraphics g, boolean value)
+		{
+			g.getGL().glUniform1i(locationId, value ? 1 : 0);
+		}
+	}
+	
+	/**
+	 * A handle to a sampler uniform.
+	 */
+	public static final class UniformSampler extends UniformHandle
+	{
+		UniformSampler(Uniform uniform)
+		{
+			super(uniform);
+		}
+		
+		/**
+		 * Sets the texture unit that this sampler reads from on the currently-bound shader.
+		 * @param g the OGLGraphics instance to use.
+		 * @param textureUnit the texture unit index (0 is the first unit).
+		 */
+		public void set(OGLGraphics g, int textureUnit)
+		{
+			g.getGL().glUniform1i(locationId, textureUnit);
+		}
+	}
+	
 }
 
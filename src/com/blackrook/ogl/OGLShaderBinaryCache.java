@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.blackrook.commons.Common;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A persistent cache of linked shader program binaries on disk.
+ * <p>
+ * Shaders are keyed by a hash of their program sources plus the renderer and version
+ * strings of the GL implementation, since binaries are only valid on the driver that made them.
+ * On a hit, the shader is created from the stored binary via <code>glProgramBinary</code>,
+ * skipping compilation and linking. On a miss, or if the driver rejects a stored binary
+ * (for instance, after a driver update that kept the same version string), the shader is
+ * compiled and linked from source as usual, and its binary is stored for next time.
+ * <p>
+ * If the device does not support program binaries (see {@link OGLGraphics#supportsProgramBinaries()}),
+ * shaders are always compiled from source and nothing is stored.
+ * @author Matthew Tropiano
+ */
+public class OGLShaderBinaryCache
+{
+	/** Cache file extension. */
+	private static final String EXTENSION = ".bin";
+	/** Cache file magic number ("BRPB"). */
+	private static final int MAGIC = 0x42504252;
+	/** Cache file header size: magic, binary format, binary length. */
+	private static final int HEADER_SIZE = 12;
+	/** Hex digits. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** Cache directory. */
+	private File directory;
+
+	/** Number of shaders created from stored binaries. */
+	private int hits;
+	/** Number of shaders compiled from source. */
+	private int misses;
+	/** Number of stored binaries rejected by the driver. */
+	private int rejections;
+
+	/**
+	 * Creates a shader binary cache in a directory.
+	 * @param directory the cache directory. Created if it does not exist.
+	 * @throws GraphicsException if the directory could not be created.
+	 */
+	public OGLShaderBinaryCache(File directory)
+	{
+		if (!directory.exists() && !directory.mkdirs())
+			throw new GraphicsException("Could not create shader cache directory \""+directory.getPath()+"\".");
+		if (!directory.isDirectory())
+			throw new GraphicsException("\""+directory.getPath()+"\" is not a directory.");
+		this.directory = directory;
+		this.hits = 0;
+		this.misses = 0;
+		this.rejections = 0;
+	}
+
+	/**
+	 * Creates a cache key from shader sources and the current GL implementation.
+	 * @param g the OGLGraphics instance to use.
+	 * @param vertexSource the vertex program source, or null for none.
+	 * @param geometrySource the geometry program source, or null for none.
+	 * @param fragmentSource the fragment program source, or null for none.
+	 * @return the key, as a hex string.
+	 */
+	public static String getKey(OGLGraphics g, String vertexSource, String geometrySource, String fragmentSource)
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new GraphicsException("SHA-1 digest not available: "+e.getMessage());
+		}
+
+		update(digest, g.getGLVendor());
+		update(digest, g.getGLRenderer());
+		update(digest, g.getGLVersion());
+		update(digest, vertexSource);
+		update(digest, geometrySource);
+		update(digest, fragmentSource);
+
+		byte[] hash = digest.digest();
+		char[] out = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++)
+		{
+			out[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+			out[i * 2 + 1] = HEX[hash[i] & 0x0f];
+		}
+		return new String(out);
+	}
+
+	// Adds a string to a digest, keeping null distinct from empty.
+	private static void update(MessageDigest digest, String s)
+	{
+		if (s == null)
+		{
+			digest.update((byte)0);
+			return;
+		}
+		digest.update((byte)1);
+		try {
+			digest.update(s.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {/* should not happen. */}
+		digest.update((byte)0);
+	}
+
+	/**
+	 * Creates a shader from its program sources, using a stored binary if possible.
+	 * @param g the OGLGraphics instance to use.
+	 * @param streamName the name of the originating stream (can appear in exceptions).
+	 * @param vertexSource the vertex program source, or null for none.
+	 * @param geometrySource the geometry program source, or null for none.
+	 * @param fragmentSource the fragment program source, or null for none.
+	 * @return a new, linked shader object.
+	 * @throws GraphicsException if the object could not be created, or compilation/linking failed.
+	 */
+	public OGLShader createShader(OGLGraphics g, String streamName, String vertexSource, String geometrySource, String fragmentSource)
+	{
+		if (!g.supportsProgramBinaries())
+		{
+			synchronized (this)
+			{
+				misses++;
+			}
+			return compile(g, streamName, vertexSource, geometrySource, fragmentSource, false);
+		}
+
+		String key = getKey(g, vertexSource, geometrySource, fragmentSource);
+		File file = getFile(key);
+
+		OGLShader out = load(g, file);
+		if (out != null)
+		{
+			synchronized (this)
+			{
+				hits++;
+			}
+			return out;
+		}
+
+		synchronized (this)
+		{
+			misses++;
+		}
+		out = compile(g, streamName, vertexSource, geometrySource, fragmentSource, true);
+
+		int[] binaryFormat = new int[1];
+		ByteBuffer binary = out.getProgramBinary(g, binaryFormat);
+		if (binary != null)
+		{
+			try {
+				store(file, binaryFormat[0], binary);
+			} catch (IOException e) {
+				// not fatal - the shader is still good.
+				file.delete();
+			}
+		}
+		return out;
+	}
+
+	// Compiles and links a shader from source.
+	private static OGLShader compile(OGLGraphics g, String streamName, String vertexSource, String geometrySource, String fragmentSource, boolean retrievable)
+	{
+		OGLShaderProgram vertex = null;
+		OGLShaderProgram geometry = null;
+		OGLShaderProgram fragment = null;
+		try {
+			vertex = vertexSource != null ? new OGLShaderProgramVertex(g, streamName + " (vertex)", vertexSource) : null;
+			geometry = geometrySource != null ? new OGLShaderProgramGeometry(g, streamName + " (geometry)", geometrySource) : null;
+			fragment = fragmentSource != null ? new OGLShaderProgramFragment(g, streamName + " (fragment)", fragmentSource) : null;
+			return new OGLShader(g, retrievable, vertex, geometry, fragment);
+		} finally {
+			// programs are not needed once linked, or if a stage failed.
+			if (vertex != null)
+				vertex.destroy(g);
+			if (geometry != null)
+				geometry.destroy(g);
+			if (fragment != null)
+				fragment.destroy(g);
+		}
+	}
+
+	// Loads a shader from a stored binary. Returns null if not present or rejected.
+	private OGLShader load(OGLGraphics g, File file)
+	{
+		if (!file.exists())
+			return null;
+
+		ByteBuffer data;
+		try {
+			data = read(file);
+		} catch (IOException e) {
+			return null;
+		}
+
+		if (data == null)
+		{
+			file.delete();
+			return null;
+		}
+
+		try {
+			return new OGLShader(g, data.getInt(4), data);
+		} catch (GraphicsException e) {
+			synchronized (this)
+			{
+				rejections++;
+			}
+			file.delete();
+			return null;
+		}
+	}
+
+	// Reads a stored binary. Returns null if the file is malformed. The buffer is positioned at the binary data.
+	private static ByteBuffer read(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+				return null;
+			ByteBuffer out = Common.allocDirectByteBuffer((int)size);
+			while (out.hasRemaining() && channel.read(out) >= 0);
+			out.flip();
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			if (out.getInt(0) != MAGIC || out.getInt(8) != size - HEADER_SIZE)
+				return null;
+			out.position(HEADER_SIZE);
+			return out;
+		} finally {
+			raf.close();
+		}
+	}
+
+	// Writes a binary to a file.
+	private static void store(File file, int binaryFormat, ByteBuffer binary) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(binaryFormat);
+		header.putInt(binary.remaining());
+		header.flip();
+
+		// write to a temporary file first so that a partial write is never seen as an entry.
+		File temp = new File(file.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			FileOutputStream fos = new FileOutputStream(temp);
+			try {
+				FileChannel channel = fos.getChannel();
+				while (header.hasRemaining())
+					channel.write(header);
+				while (binary.hasRemaining())
+					channel.write(binary);
+			} finally {
+				fos.close();
+			}
+			written = true;
+		} finally {
+			if (!written)
+				temp.delete();
+		}
+
+		file.delete();
+		if (!temp.renameTo(file))
+		{
+			temp.delete();
+			throw new IOException("Could not move shader binary into place: \""+file.getPath()+"\"");
+		}
+	}
+
+	// Returns the file for a key.
+	private File getFile(String key)
+	{
+		return new File(directory, key + EXTENSION);
+	}
+
+	/**
+	 * Deletes all stored binaries.
+	 */
+	public void clear()
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File f : files)
+			if (f.isFile() && f.getName().endsWith(EXTENSION))
+				f.delete();
+	}
+
+	/**
+	 * Returns this cache's directory.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Returns the number of shaders created from stored binaries.
+	 */
+	public synchronized int getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of shaders compiled from source.
+	 */
+	public synchronized int getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of stored binaries rejected by the driver.
+	 */
+	public synchronized int getRejectionCount()
+	{
+		return rejections;
+	}
+
+}
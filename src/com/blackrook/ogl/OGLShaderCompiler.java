@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.blackrook.commons.list.List;
+
+/**
+ * Tracks shaders that are compiling and linking in the background,
+ * and resolves them once per frame when the driver reports they are done.
+ * <p>
+ * All compile and link calls for a shader are issued when it is submitted. If the device
+ * supports <code>GL_KHR_parallel_shader_compile</code>, completion is polled without blocking.
+ * Otherwise, status checks block, so pending shaders are resolved a few at a time,
+ * under a time budget per frame.
+ * @author Matthew Tropiano
+ */
+final class OGLShaderCompiler
+{
+	/** Time budget per poll in nanoseconds, for devices that cannot report completion. */
+	private static final long BLOCKING_BUDGET_NANOS = 4000000L;
+
+	/** Pending jobs. */
+	private List<Job> pending;
+
+	/**
+	 * Creates a new shader compiler.
+	 */
+	OGLShaderCompiler()
+	{
+		this.pending = new List<Job>(8);
+	}
+
+	/**
+	 * Starts compiling and linking a shader.
+	 * Each source can be null and is just left absent in the complete program.
+	 * @param g the OGLGraphics instance to use.
+	 * @param streamName the name of the originating stream (can appear in exceptions).
+	 * @param vertexSource the vertex program source, or null for none.
+	 * @param geometrySource the geometry program source, or null for none.
+	 * @param fragmentSource the fragment program source, or null for none.
+	 * @return a future that resolves to the linked shader.
+	 */
+	Future<OGLShader> submit(OGLGraphics g, String streamName, String vertexSource, String geometrySource, String fragmentSource)
+	{
+		Job job = new Job(g, streamName, vertexSource, geometrySource, fragmentSource);
+		pending.add(job);
+		return job.future;
+	}
+
+	/**
+	 * Resolves all pending shaders that have finished.
+	 * @param g the OGLGraphics instance to use.
+	 */
+	void poll(OGLGraphics g)
+	{
+		if (pending.isEmpty())
+			return;
+
+		boolean blocking = !g.supportsParallelShaderCompile();
+		long start = System.nanoTime();
+		int i = 0;
+		while (i < pending.size())
+		{
+			if (blocking && System.nanoTime() - start > BLOCKING_BUDGET_NANOS)
+				break;
+
+			Job job = pending.getByIndex(i);
+			if (job.isComplete(g))
+			{
+				pending.removeIndex(i);
+				job.resolve(g);
+			}
+			else
+				i++;
+		}
+	}
+
+	/**
+	 * Returns the number of shaders still compiling or linking.
+	 */
+	int getPendingCount()
+	{
+		return pending.size();
+	}
+
+	/**
+	 * A single shader being built.
+	 */
+	private static class Job implements Callable<OGLShader>
+	{
+		/** The graphics context used. */
+		private OGLGraphics graphics;
+		/** Stream name. */
+		private String streamName;
+		/** Programs, in vertex, geometry, fragment order. Can contain nulls. */
+		private OGLShaderProgram[] programs;
+		/** Program names for errors. */
+		private String[] programNames;
+		/** The shader being linked. */
+		private OGLShader shader;
+		/** The future result. */
+		private FutureTask<OGLShader> future;
+
+		Job(OGLGraphics g, String streamName, String vertexSource, String geometrySource, String fragmentSource)
+		{
+			this.graphics = g;
+			this.streamName = streamName;
+			this.programs = new OGLShaderProgram[3];
+			this.programNames = new String[]{
+				streamName + " (vertex)",
+				streamName + " (geometry)",
+				streamName + " (fragment)"
+			};
+			this.future = new FutureTask<OGLShader>(this);
+
+			if (vertexSource != null)
+				programs[0] = new OGLShaderProgramVertex(g);
+			if (geometrySource != null)
+				programs[1] = new OGLShaderProgramGeometry(g);
+			if (fragmentSource != null)
+				programs[2] = new OGLShaderProgramFragment(g);
+
+			g.clearError();
+			if (programs[0] != null)
+				programs[0].startCompile(g, vertexSource);
+			if (programs[1] != null)
+				programs[1].startCompile(g, geometrySource);
+			if (programs[2] != null)
+				programs[2].startCompile(g, fragmentSource);
+			this.shader = new OGLShader(g, false, true, programs);
+			g.getError();
+		}
+
+		// Checks if all compiling and linking is done.
+		boolean isComplete(OGLGraphics g)
+		{
+			for (OGLShaderProgram p : programs)
+				if (p != null && !p.isCompileComplete(g))
+					return false;
+			return shader.isLinkComplete(g);
+		}
+
+		// Finishes the shader and completes the future.
+		void resolve(OGLGraphics g)
+		{
+			future.run();
+			if (future.isCancelled())
+				shader.destroy(g);
+			// programs are not needed once linked.
+			for (OGLShaderProgram p : programs)
+				if (p != null)
+					p.destroy(g);
+		}
+
+		@Override
+		public OGLShader call() throws Exception
+		{
+			try {
+				for (int i = 0; i < programs.length; i++)
+					if (programs[i] != null)
+						programs[i].finishCompile(graphics, programNames[i]);
+				shader.finishLink(graphics);
+			} catch (Exception e) {
+				shader.destroy(graphics);
+				throw e;
+			}
+			return shader;
+		}
+
+	}
+
+}
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.blackrook.commons.Common;
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A GLSL source preprocessor that resolves <code>#include</code> directives
+ * and injects sets of <code>#define</code>s.
+ * <p>
+ * <code>#include "file"</code> is searched for relative to the including file first,
+ * then in each include path in order. <code>#include &lt;file&gt;</code> is only searched for
+ * in the include paths. Files that contain <code>#pragma once</code> are only included once.
+ * Included files are read and split once, and cached until their modification time changes.
+ * <p>
+ * Defines are inserted after the <code>#version</code> directive, if any, and <code>#line</code>
+ * directives are added around inserted text so that compiler errors still report the
+ * original line numbers.
+ * <p>
+ * This class is thread-safe.
+ * @author Matthew Tropiano
+ */
+public class OGLShaderPreprocessor
+{
+	/** Include search paths. */
+	private File[] includePaths;
+	/** Parsed includes by canonical path. */
+	private HashMap<String, Include> includeCache;
+
+	/**
+	 * Creates a new preprocessor.
+	 * @param includePaths the directories to search for included files, in order.
+	 */
+	public OGLShaderPreprocessor(File ... includePaths)
+	{
+		this.includePaths = Arrays.copyOf(includePaths, includePaths.length);
+		this.includeCache = new HashMap<String, Include>();
+	}
+
+	/**
+	 * Returns a define set in canonical form: sorted, with no duplicates,
+	 * so that equal sets of defines compare as equal arrays.
+	 * @param defines the defines, each either "NAME" or "NAME=VALUE".
+	 * @return a new array of the canonical define set.
+	 * @throws GraphicsException if a define has no name.
+	 */
+	public static String[] getCanonicalDefines(String ... defines)
+	{
+		String[] out = new String[defines.length];
+		for (int i = 0; i < defines.length; i++)
+		{
+			String d = defines[i].trim();
+			int eq = d.indexOf('=');
+			String name = (eq < 0 ? d : d.substring(0, eq)).trim();
+			if (name.length() == 0)
+				throw new GraphicsException("Define \""+defines[i]+"\" has no name.");
+			out[i] = eq < 0 ? name : name + "=" + d.substring(eq + 1).trim();
+		}
+		Arrays.sort(out);
+
+		int n = 0;
+		for (int i = 0; i < out.length; i++)
+			if (n == 0 || !out[i].equals(out[n - 1]))
+				out[n++] = out[i];
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+
+	/**
+	 * Preprocesses a shader source file.
+	 * @param file the source file.
+	 * @param defines the defines to add, each either "NAME" or "NAME=VALUE".
+	 * @return the preprocessed source code.
+	 * @throws IOException if the file or an included file could not be read.
+	 * @throws GraphicsException if an include could not be found or includes itself.
+	 */
+	public String process(File file, String ... defines) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		String source;
+		try {
+			source = Common.getTextualContents(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+		return process(file.getPath(), file.getCanonicalPath(), file.getAbsoluteFile().getParentFile(), source, defines);
+	}
+
+	/**
+	 * Preprocesses shader source code.
+	 * Quoted includes are only searched for in the include paths, since the source has no directory.
+	 * @param streamName the name of the originating stream (can appear in exceptions).
+	 * @param source the source code.
+	 * @param defines the defines to add, each either "NAME" or "NAME=VALUE".
+	 * @return the preprocessed source code.
+	 * @throws IOException if an included file could not be read.
+	 * @throws GraphicsException if an include could not be found or includes itself.
+	 */
+	public String process(String streamName, String source, String ... defines) throws IOException
+	{
+		return process(streamName, null, null, source, defines);
+	}
+
+	// Preprocesses source. The canonical name is that of the source file, or null if not from a file.
+	private String process(String streamName, String canonicalName, File directory, String source, String[] defines) throws IOException
+	{
+		String[] lines = splitLines(source);
+		StringBuilder out = new StringBuilder(source.length() + 64 * defines.length);
+
+		// find #version, which must stay in front of everything.
+		int start = 0;
+		for (int i = 0; i < lines.length; i++)
+		{
+			String trimmed = lines[i].trim();
+			if (trimmed.length() == 0 || trimmed.startsWith("//"))
+				continue;
+			if (getDirective(trimmed).equals("version"))
+			{
+				for (int j = 0; j <= i; j++)
+					out.append(lines[j]).append('\n');
+				start = i + 1;
+			}
+			break;
+		}
+
+		if (defines.length > 0)
+		{
+			for (String d : getCanonicalDefines(defines))
+			{
+				int eq = d.indexOf('=');
+				out.append("#define ");
+				if (eq < 0)
+					out.append(d);
+				else
+					out.append(d, 0, eq).append(' ').append(d, eq + 1, d.length());
+				out.append('\n');
+			}
+			out.append("#line ").append(start + 1).append('\n');
+		}
+
+		HashMap<String, Boolean> once = new HashMap<String, Boolean>(4);
+		String root = canonicalName != null ? canonicalName : streamName;
+		expand(out, streamName, directory, lines, start, new String[]{root}, 1, once, canonicalName);
+		return out.toString();
+	}
+
+	// Appends lines, expanding includes.
+	private void expand(StringBuilder out, String name, File directory, String[] lines, int start, String[] stack, int depth, HashMap<String, Boolean> once, String canonicalName) throws IOException
+	{
+		for (int i = start; i < lines.length; i++)
+		{
+			String trimmed = lines[i].trim();
+			String directive = getDirective(trimmed);
+			if (directive.equals("include"))
+			{
+				// first character is the opening delimiter.
+				String target = getIncludeTarget(name, i, trimmed);
+				boolean quoted = target.charAt(0) == '"';
+				target = target.substring(1);
+				File file = resolve(target, quoted ? directory : null);
+				if (file == null)
+					throw new GraphicsException("\""+name+"\", line "+(i + 1)+": could not find include \""+target+"\".");
+				Include include = getInclude(file);
+
+				// a file already seen with "#pragma once" is skipped, even if it is still being expanded.
+				if (once.containsKey(include.canonicalName))
+				{
+					out.append('\n');
+					continue;
+				}
+
+				for (int s = 0; s < depth; s++)
+					if (stack[s].equals(include.canonicalName))
+						throw new GraphicsException("\""+name+"\", line "+(i + 1)+": \""+target+"\" includes itself.");
+
+				String[] nextStack = stack.length > depth ? stack : Arrays.copyOf(stack, stack.length * 2);
+				nextStack[depth] = include.canonicalName;
+				out.append("#line 1\n");
+				expand(out, file.getPath(), file.getParentFile(), include.lines, 0, nextStack, depth + 1, once, include.canonicalName);
+				out.append("#line ").append(i + 2).append('\n');
+			}
+			else if (directive.equals("pragma") && trimmed.substring(trimmed.indexOf("pragma") + 6).trim().equals("once"))
+			{
+				if (canonicalName != null)
+					once.put(canonicalName, Boolean.TRUE);
+				out.append('\n');
+			}
+			else
+				out.append(lines[i]).append('\n');
+		}
+	}
+
+	// Returns the name of a preprocessor directive on a trimmed line, or an empty string if not a directive.
+	private static String getDirective(String trimmed)
+	{
+		if (!trimmed.startsWith("#"))
+			return "";
+		int s = 1 + countSpaces(trimmed, 1);
+		int e = s;
+		while (e < trimmed.length() && Character.isLetter(trimmed.charAt(e)))
+			e++;
+		return trimmed.substring(s, e);
+	}
+
+	// Counts spaces and tabs starting at an index.
+	private static int countSpaces(String s, int index)
+	{
+		int n = 0;
+		while (index + n < s.length() && (s.charAt(index + n) == ' ' || s.charAt(index + n) == '\t'))
+			n++;
+		return n;
+	}
+
+	// Gets the target of an #include directive, prefixed with its opening delimiter.
+	private static String getIncludeTarget(String name, int line, String trimmed)
+	{
+		int s = trimmed.indexOf("include") + 7;
+		s += countSpaces(trimmed, s);
+		if (s < trimmed.length())
+		{
+			char open = trimmed.charAt(s);
+			char close = open == '"' ? '"' : (open == '<' ? '>' : 0);
+			int e = close != 0 ? trimmed.indexOf(close, s + 1) : -1;
+			if (e > s + 1)
+				return open + trimmed.substring(s + 1, e);
+		}
+		throw new GraphicsException("\""+name+"\", line "+(line + 1)+": malformed #include.");
+	}
+
+	// Finds an included file.
+	private File resolve(String target, File directory)
+	{
+		if (directory != null)
+		{
+			File f = new File(directory, target);
+			if (f.isFile())
+				return f;
+		}
+		for (File path : includePaths)
+		{
+			File f = new File(path, target);
+			if (f.isFile())
+				return f;
+		}
+		return null;
+	}
+
+	// Gets a parsed include, reading it if not cached or changed.
+	private Include getInclude(File file) throws IOException
+	{
+		String canonicalName = file.getCanonicalPath();
+		long modified = file.lastModified();
+		synchronized (includeCache)
+		{
+			Include include = includeCache.get(canonicalName);
+			if (include != null && include.lastModified == modified)
+				return include;
+		}
+
+		FileInputStream in = new FileInputStream(file);
+		Include include = new Include();
+		try {
+			include.canonicalName = canonicalName;
+			include.lastModified = modified;
+			include.lines = splitLines(Common.getTextualContents(in, "UTF-8"));
+		} finally {
+			in.close();
+		}
+
+		synchronized (includeCache)
+		{
+			includeCache.put(canonicalName, include);
+		}
+		return include;
+	}
+
+	// Splits source into lines.
+	private static String[] splitLines(String source)
+	{
+		return source.split("\\r?\\n", -1);
+	}
+
+	/**
+	 * Clears the cache of parsed include files.
+	 */
+	public void clearIncludeCache()
+	{
+		synchronized (includeCache)
+		{
+			includeCache.clear();
+		}
+	}
+
+	/**
+	 * A parsed include file.
+	 */
+	private static class Include
+	{
+		/** Canonical file path. */
+		private String canonicalName;
+		/** Modification time when read. */
+		private long lastModified;
+		/** Source lines. */
+		private String[] lines;
+	}
+
+}
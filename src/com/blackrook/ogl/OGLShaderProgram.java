@@ -21,17 +21,6 @@ import com.blackrook.ogl.exception.GraphicsException;
  */
 public abstract class OGLShaderProgram extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
-
 	/** Shader program type. */
 	private ShaderProgramType type;
 	/** Compile log. */
@@ -55,19 +44,49 @@ public abstract class OGLShaderProgram extends OGLObject
 	 */
 	protected void construct(OGLGraphics g, String streamName, String sourceCode)
 	{
-		GL2 gl = g.getGL();
 		g.clearError();
-		gl.glShaderSource(getGLId(), 1, new String[]{sourceCode}, (int[])null, 0);
-		compile(g, streamName);
+		startCompile(g, sourceCode);
+		finishCompile(g, streamName);
 		g.getError();
 	}
 	
-	// Compiles the program.
-	private void compile(OGLGraphics g, String streamName)
+	/**
+	 * Sets the source code and starts compiling the program, 
+	 * without waiting for the result.
+	 * @param g the OGLGraphics instance to use.
+	 * @param sourceCode the shader source code.
+	 */
+	final void startCompile(OGLGraphics g, String sourceCode)
+	{
+		GL2 gl = g.getGL();
+		gl.glShaderSource(getGLId(), 1, new String[]{sourceCode}, (int[])null, 0);
+		gl.glCompileShader(getGLId());
+	}
+
+	/**
+	 * Checks if compiling has finished, without blocking.
+	 * If the device cannot report this, this always returns true.
+	 * @param g the OGLGraphics instance to use.
+	 * @return true if finished, false if not.
+	 */
+	final boolean isCompileComplete(OGLGraphics g)
+	{
+		if (!g.supportsParallelShaderCompile())
+			return true;
+		g.getGL().glGetShaderiv(getGLId(), GL2.GL_COMPLETION_STATUS_ARB, glStateNum, 0);
+		return glStateNum[0] != 0;
+	}
+
+	/**
+	 * Waits for compiling to finish, reads the log, and checks the result.
+	 * @param g the OGLGraphics instance to use.
+	 * @param streamName the name of this stream.
+	 * @throws GraphicsException if compiling failed.
+	 */
+	final void finishCompile(OGLGraphics g, String streamName)
 	{
 		GL2 gl = g.getGL();
 		int[] compCheck = new int[1];
-        gl.glCompileShader(getGLId());
         log = readLog(g);
         gl.glGetObjectParameterivARB(getGLId(), GL2.GL_OBJECT_COMPILE_STATUS_ARB, compCheck, 0);
         if (compCheck[0] == 0)
@@ -112,37 +131,10 @@ public abstract class OGLShaderProgram extends OGLObject
 		return log;
 	}
 
-	/**
-	 * Destroys undeleted programs abandoned from destroyed Java objects.
-	 */
-	static void destroyUndeleted(OGLGraphics g)
-	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			for (int i = 0; i < UNDELETED_LENGTH; i++)
-				g.getGL().glDeleteShader(UNDELETED_IDS[i]);
-			UNDELETED_LENGTH = 0;
-		}
-	}
-
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
-	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
-	}
-	
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-			finalizeAddId(getGLId());
-		super.finalize();
+		return OGLResourceRegistry.Type.SHADER_PROGRAM;
 	}
 
 }
@@ -67,6 +67,16 @@ public class OGLShaderProgramFragment extends OGLShaderProgram
 		construct(g, streamName, sourceCode);
 	}
 
+	/**
+	 * Creates a new fragment shader program without any source code.
+	 * The source is compiled later via {@link #startCompile(OGLGraphics, String)}.
+	 * @param g the OGLGraphics instance to use.
+	 */
+	OGLShaderProgramFragment(OGLGraphics g)
+	{
+		super(g, ShaderProgramType.FRAGMENT);
+	}
+
 	@Override
 	protected int allocate(OGLGraphics g)
 	{
@@ -67,6 +67,16 @@ public class OGLShaderProgramGeometry extends OGLShaderProgram
 		construct(g, streamName, sourceCode);
 	}
 
+	/**
+	 * Creates a new geometry shader program without any source code.
+	 * The source is compiled later via {@link #startCompile(OGLGraphics, String)}.
+	 * @param g the OGLGraphics instance to use.
+	 */
+	OGLShaderProgramGeometry(OGLGraphics g)
+	{
+		super(g, ShaderProgramType.GEOMETRY);
+	}
+
 	@Override
 	protected int allocate(OGLGraphics g)
 	{
@@ -63,6 +63,16 @@ public class OGLShaderProgramVertex extends OGLShaderProgram
 		construct(g, streamName, sourceCode);
 	}
 
+	/**
+	 * Creates a new vertex shader program without any source code.
+	 * The source is compiled later via {@link #startCompile(OGLGraphics, String)}.
+	 * @param g the OGLGraphics instance to use.
+	 */
+	OGLShaderProgramVertex(OGLGraphics g)
+	{
+		super(g, ShaderProgramType.VERTEX);
+	}
+
 	@Override
 	protected int allocate(OGLGraphics g)
 	{
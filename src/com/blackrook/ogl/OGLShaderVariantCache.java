@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A cache of shader variants: programs built from the same sources with different sets of defines.
+ * Each distinct combination of sources and define set is preprocessed, compiled, and linked once,
+ * and the resulting {@link OGLShader} is shared by all later requests for it.
+ * <p>
+ * Shaders belong to one OpenGL context, so one of these should be kept per {@link OGLGraphics}.
+ * Variants are keyed by the unprocessed sources, so if an included file changes,
+ * {@link #clear(OGLGraphics)} must be called to rebuild shaders that use it.
+ * <p>
+ * This is not thread-safe: like the shaders it builds, it must be used on the render thread of one context.
+ * @author Matthew Tropiano
+ */
+public class OGLShaderVariantCache
+{
+	/** The preprocessor to use. */
+	private OGLShaderPreprocessor preprocessor;
+	/** The binary cache to use, if any. */
+	private OGLShaderBinaryCache binaryCache;
+	/** Shaders by variant key. */
+	private HashMap<String, OGLShader> variants;
+
+	/**
+	 * Creates a new variant cache.
+	 * @param preprocessor the preprocessor to use for includes and defines.
+	 */
+	public OGLShaderVariantCache(OGLShaderPreprocessor preprocessor)
+	{
+		this(preprocessor, null);
+	}
+
+	/**
+	 * Creates a new variant cache that also stores linked binaries on disk,
+	 * so that variants built in earlier runs do not need to be compiled.
+	 * @param preprocessor the preprocessor to use for includes and defines.
+	 * @param binaryCache the binary cache to use. Can be null.
+	 */
+	public OGLShaderVariantCache(OGLShaderPreprocessor preprocessor, OGLShaderBinaryCache binaryCache)
+	{
+		this.preprocessor = preprocessor;
+		this.binaryCache = binaryCache;
+		this.variants = new HashMap<String, OGLShader>();
+	}
+
+	/**
+	 * Gets a shader variant, building it if it has not been built yet.
+	 * Each source can be null and is just left absent in the complete program.
+	 * @param g the OGLGraphics instance to use.
+	 * @param streamName the name of the originating stream (can appear in exceptions).
+	 * @param vertexSource the vertex program source, or null for none.
+	 * @param geometrySource the geometry program source, or null for none.
+	 * @param fragmentSource the fragment program source, or null for none.
+	 * @param defines the defines to add, each either "NAME" or "NAME=VALUE". Order and duplicates do not matter.
+	 * @return the linked shader.
+	 * @throws IOException if an included file could not be read.
+	 * @throws GraphicsException if an include could not be found, or compilation/linking failed.
+	 */
+	public OGLShader getShader(OGLGraphics g, String streamName, String vertexSource, String geometrySource, String fragmentSource, String ... defines) throws IOException
+	{
+		String[] canonical = OGLShaderPreprocessor.getCanonicalDefines(defines);
+		String key = getKey(vertexSource, geometrySource, fragmentSource, canonical);
+
+		OGLShader out = variants.get(key);
+		if (out != null)
+			return out;
+
+		String vertex = vertexSource != null ? preprocessor.process(streamName + " (vertex)", vertexSource, canonical) : null;
+		String geometry = geometrySource != null ? preprocessor.process(streamName + " (geometry)", geometrySource, canonical) : null;
+		String fragment = fragmentSource != null ? preprocessor.process(streamName + " (fragment)", fragmentSource, canonical) : null;
+
+		if (binaryCache != null)
+			out = binaryCache.createShader(g, streamName, vertex, geometry, fragment);
+		else
+		{
+			OGLShaderProgram[] programs = {
+				vertex != null ? new OGLShaderProgramVertex(g, streamName + " (vertex)", vertex) : null,
+				geometry != null ? new OGLShaderProgramGeometry(g, streamName + " (geometry)", geometry) : null,
+				fragment != null ? new OGLShaderProgramFragment(g, streamName + " (fragment)", fragment) : null
+			};
+			out = new OGLShader(g, programs);
+			// programs are not needed once linked.
+			for (OGLShaderProgram p : programs)
+				if (p != null)
+					p.destroy(g);
+		}
+
+		variants.put(key, out);
+		return out;
+	}
+
+	// Builds a variant key.
+	private static String getKey(String vertexSource, String geometrySource, String fragmentSource, String[] canonicalDefines)
+	{
+		StringBuilder sb = new StringBuilder();
+		append(sb, vertexSource);
+		append(sb, geometrySource);
+		append(sb, fragmentSource);
+		for (String d : canonicalDefines)
+			append(sb, d);
+		return sb.toString();
+	}
+
+	// Appends a length-prefixed string, so that no two different inputs make the same key.
+	private static void append(StringBuilder sb, String s)
+	{
+		if (s == null)
+			sb.append("-1:");
+		else
+			sb.append(s.length()).append(':').append(s);
+	}
+
+	/**
+	 * Returns the number of variants built.
+	 */
+	public int size()
+	{
+		return variants.size();
+	}
+
+	/**
+	 * Destroys all built variants and empties this cache.
+	 * @param g the OGLGraphics instance to use.
+	 */
+	public void clear(OGLGraphics g)
+	{
+		Iterator<OGLShader> it = variants.valueIterator();
+		while (it.hasNext())
+			it.next().destroy(g);
+		variants.clear();
+	}
+
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * Steps simulation state for an {@link OGLUpdateLoop}.
+ * All methods are called on the update thread.
+ * @param <T> the state type.
+ * @author Matthew Tropiano
+ */
+public interface OGLStateUpdater<T>
+{
+	/**
+	 * Creates a new, empty state object.
+	 * The loop creates all of the state objects it needs up front, and reuses them.
+	 */
+	public T createState();
+
+	/**
+	 * Copies one state into another.
+	 * @param source the state to copy.
+	 * @param target the state to copy into.
+	 */
+	public void copyState(T source, T target);
+
+	/**
+	 * Advances a state by one fixed step.
+	 * @param state the state to advance, in place.
+	 * @param tick the index of the step, starting at 0.
+	 * @param stepSeconds the length of the step in seconds. This is the same for every call.
+	 */
+	public void update(T state, long tick, double stepSeconds);
+
+}
@@ -10,11 +10,21 @@
  *******************************************************************************/
 package com.blackrook.ogl;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLEventListener;
 
-import com.blackrook.commons.list.List;
+import com.blackrook.ogl.exception.GraphicsException;
 import com.blackrook.ogl.input.OGLInputConstants;
+import com.blackrook.ogl.input.OGLInputQueue;
+import com.blackrook.ogl.input.OGLInputState;
+import com.blackrook.ogl.input.OGLInputSubscriber;
 
 /**
  * The system that draws stuff.
@@ -27,7 +37,7 @@ public final class OGLSystem
 	/** OpenGL graphics context. */
 	private OGLGraphics glGraphics;
 	/** System listener list. */
-	private List<OGLCanvasNode> canvasNodeList;
+	private OGLNodeList canvasNodeList;
 	/** GLMouse X */
 	private int glMouseX;
 	/** GLMouse Y */
@@ -43,6 +53,30 @@ public final class OGLSystem
 	private long renderTimeNanos;
 	private int polygonCount;
 	/* ======================================= */
+
+	/** Number of recent frame times kept. */
+	private static final int FRAME_TIME_HISTORY = 256;
+	/** Recent frame times, in nanoseconds. */
+	private long[] frameTimeHistory;
+	/** Total frames displayed. */
+	private long frameCount;
+	/** Registered MBean name, if any. */
+	private ObjectName mbeanName;
+	
+	/** Is per-node GPU timing enabled? */
+	private boolean gpuTimingEnabled;
+	/** Per-node GPU timer, if GPU timing is enabled and supported. */
+	private OGLNodeTimer gpuTimer;
+	/** Frame profiler, if any. */
+	private OGLProfiler profiler;
+	/** Queued input, sent to nodes at the start of each frame. */
+	private OGLInputQueue inputQueue;
+	/** Routes input to nodes. */
+	private OGLInputRouter inputRouter;
+	/** Input state snapshot, taken each frame. */
+	private OGLInputState inputState;
+	/** GL tasks, run at the start of each frame. */
+	private OGLTaskQueue taskQueue;
 	
 	/**
 	 * Creates a new OGLSystem.
@@ -53,7 +87,17 @@ public final class OGLSystem
 		glMouseY = 0;
 		glWidth = 0;
 		glHeight = 0;
-		canvasNodeList = new List<OGLCanvasNode>(4);
+		canvasNodeList = new OGLNodeList();
+		gpuTimingEnabled = false;
+		gpuTimer = null;
+		profiler = null;
+		inputQueue = new OGLInputQueue();
+		inputRouter = new OGLInputRouter(canvasNodeList);
+		inputState = new OGLInputState();
+		taskQueue = new OGLTaskQueue();
+		frameTimeHistory = new long[FRAME_TIME_HISTORY];
+		frameCount = 0L;
+		mbeanName = null;
 	}
 	
 	/**
@@ -67,27 +111,56 @@ public final class OGLSystem
 		long rendertime = 0L;
 		int polys = 0;
 	
+		inputQueue.drain(this);
+		inputState.update();
 		glGraphics.beginFrame();
+		taskQueue.run(glGraphics);
+		gpuTimer = OGLNodeTimer.update(glGraphics, gpuTimer, gpuTimingEnabled);
+		OGLProfiler profiler = this.profiler;
+		if (profiler != null)
+			profiler.beginFrame(glGraphics);
 		
-	    for (int i = 0; i < canvasNodeList.size(); i++)
+	    // nodes added or removed during the frame show up next frame.
+	    for (OGLCanvasNode node : canvasNodeList.getNodes())
 	    {
-	    	OGLCanvasNode node = canvasNodeList.getByIndex(i);
-	    	if (node != null && node.isEnabled())
+	    	if (node.isEnabled())
 	    	{
 	    		glGraphics.clearError();
-	    		node.display(glGraphics);
+	    		if (profiler != null)
+	    			profiler.push(glGraphics, node);
+	    		if (gpuTimer != null)
+	    		{
+	    			OGLTimerQueryRing ring = gpuTimer.start(glGraphics, node);
+	    			node.display(glGraphics);
+	    			ring.end(glGraphics);
+	    		}
+	    		else
+	    			node.display(glGraphics);
+	    		if (profiler != null)
+	    			profiler.pop(glGraphics);
 	    		glGraphics.getError();
 	    		rendertime += node.getRenderTimeNanos();
 	    		polys += node.getPolygonsRendered();
 	    	}
 	    }
 	    
-	    frameRenderTimeNanos = System.nanoTime() - lastFrameNanos;
-	    lastFrameNanos = System.nanoTime();
+	    long now = System.nanoTime();
+	    frameRenderTimeNanos = now - lastFrameNanos;
+	    if (lastFrameNanos != 0L)
+	    {
+	    	synchronized (frameTimeHistory)
+	    	{
+	    		frameTimeHistory[(int)(frameCount % FRAME_TIME_HISTORY)] = frameRenderTimeNanos;
+	    		frameCount++;
+	    	}
+	    }
+	    lastFrameNanos = now;
 	
 	    renderTimeNanos = rendertime;
 	    polygonCount = polys;
 	    
+	    if (profiler != null)
+	    	profiler.endFrame(glGraphics);
 	    glGraphics.endFrame();
 	}
 
@@ -100,25 +173,117 @@ public final class OGLSystem
 	{
 		glWidth = width;
 		glHeight = height;
-	    for (OGLCanvasNode sl : canvasNodeList)
+	    for (OGLCanvasNode sl : canvasNodeList.getNodes())
 	    	sl.onCanvasResize(width, height);
 	}
 
 	/**
 	 * Adds a Canvas Node to this Canvas.
+	 * Can be called from any thread: the node is displayed starting with the next frame.
 	 */
 	public void addNode(OGLCanvasNode node)
 	{
-		canvasNodeList.add(node);
 		node.onCanvasResize(glWidth, glHeight);
+		canvasNodeList.add(node);
+		inputRouter.attach(node);
 	}
 
 	/**
 	 * Removes a Canvas Node from this Canvas.
+	 * Can be called from any thread: the node is no longer displayed starting with the next frame.
 	 */
 	public boolean removeNode(OGLCanvasNode node)
 	{
-		return canvasNodeList.remove(node);
+		if (!canvasNodeList.remove(node))
+			return false;
+		OGLNodeTimer timer = gpuTimer;
+		if (timer != null)
+			timer.remove(node);
+		inputRouter.release(node);
+		return true;
+	}
+
+	/**
+	 * Sets if the GPU time of each attached node is measured.
+	 * This uses timer queries, and only has an effect if {@link OGLGraphics#supportsTimerQueries()} is true.
+	 * Queries are created or freed on the next frame.
+	 * @param enabled true to enable, false to disable.
+	 * @see #getNodeGPUTimeNanos(OGLCanvasNode)
+	 */
+	public void setGPUTimingEnabled(boolean enabled)
+	{
+		this.gpuTimingEnabled = enabled;
+	}
+
+	/**
+	 * Gets if the GPU time of each attached node is measured.
+	 * @see #setGPUTimingEnabled(boolean)
+	 */
+	public boolean isGPUTimingEnabled()
+	{
+		return gpuTimingEnabled;
+	}
+
+	/**
+	 * Returns the GPU time it took to render an attached node, in nanoseconds.
+	 * Unlike {@link OGLCanvasNode#getRenderTimeNanos()}, this is the time the GPU spent
+	 * executing the node's commands, not the time spent issuing them. 
+	 * The result is from a frame a few frames ago, since GPU results are read back without waiting.
+	 * @param node the node.
+	 * @return the time in nanoseconds, or -1 if GPU timing is not enabled, not supported, or no result is available yet.
+	 * @see #setGPUTimingEnabled(boolean)
+	 */
+	public long getNodeGPUTimeNanos(OGLCanvasNode node)
+	{
+		return gpuTimer != null ? gpuTimer.getGPUTimeNanos(node) : -1L;
+	}
+
+	/**
+	 * Sets the frame profiler to record frames with.
+	 * Each frame is recorded with a scope around each attached node's display.
+	 * @param profiler the profiler to use, or null for none.
+	 */
+	public void setProfiler(OGLProfiler profiler)
+	{
+		this.profiler = profiler;
+	}
+
+	/**
+	 * Gets the frame profiler that records frames, or null if none.
+	 * Nodes can use this to add their own scopes.
+	 */
+	public OGLProfiler getProfiler()
+	{
+		return profiler;
+	}
+
+	/**
+	 * Returns the queue that input adapters post events to.
+	 * Queued events are sent to this system's nodes on the rendering thread at the start of each frame.
+	 * The <code>send*</code> methods can still be called directly to send an event immediately.
+	 */
+	public OGLInputQueue getInputQueue()
+	{
+		return inputQueue;
+	}
+
+	/**
+	 * Returns the queue of GL tasks that this runs at the start of each frame.
+	 * Any thread can submit tasks to it, such as texture uploads from a loader thread.
+	 */
+	public OGLTaskQueue getTaskQueue()
+	{
+		return taskQueue;
+	}
+
+	/**
+	 * Returns the input state snapshot, for nodes that poll input rather than handle input events.
+	 * It is updated at the start of each frame, after queued input is sent,
+	 * and holds all input sent through this system.
+	 */
+	public OGLInputState getInputState()
+	{
+		return inputState;
 	}
 
 	/**
@@ -164,6 +329,83 @@ public final class OGLSystem
 		return n > 0.0 ? (float)(1000 / n) : 0f;
 	}
 
+	/**
+	 * Returns a percentile of the recent frame times, in nanoseconds.
+	 * The last {@value #FRAME_TIME_HISTORY} frames are considered.
+	 * Safe to call from any thread.
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the frame time, or 0 if no frames were timed yet.
+	 */
+	public long getFrameTimePercentileNanos(double percentile)
+	{
+		long[] times;
+		synchronized (frameTimeHistory)
+		{
+			times = Arrays.copyOf(frameTimeHistory, (int)Math.min(frameCount, FRAME_TIME_HISTORY));
+		}
+		if (times.length == 0)
+			return 0L;
+		Arrays.sort(times);
+		int index = (int)Math.ceil(Math.max(0.0, Math.min(100.0, percentile)) / 100.0 * times.length) - 1;
+		return times[Math.max(0, index)];
+	}
+
+	/**
+	 * Returns the number of frames displayed, not counting the first.
+	 */
+	public long getFrameCount()
+	{
+		synchronized (frameTimeHistory)
+		{
+			return frameCount;
+		}
+	}
+
+	/**
+	 * Returns the graphics context of this system, 
+	 * or null if nothing has been displayed yet.
+	 */
+	public OGLGraphics getGraphics()
+	{
+		return glGraphics;
+	}
+
+	/**
+	 * Registers a JMX MBean for monitoring this system with the platform MBean server,
+	 * under <code>com.blackrook.ogl:type=OGLSystem,name=<i>name</i></code>.
+	 * Replaces any MBean this system registered before.
+	 * @param name the name to register under.
+	 * @throws GraphicsException if the MBean could not be registered.
+	 * @see OGLSystemMonitorMBean
+	 */
+	public synchronized void registerMBean(String name)
+	{
+		unregisterMBean();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName("com.blackrook.ogl:type=OGLSystem,name=" + ObjectName.quote(name));
+			server.registerMBean(new OGLSystemMonitor(this), objectName);
+			mbeanName = objectName;
+		} catch (JMException e) {
+			throw new GraphicsException("Could not register MBean \""+name+"\": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters this system's JMX MBean, if registered.
+	 */
+	public synchronized void unregisterMBean()
+	{
+		if (mbeanName == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+		} catch (JMException e) {
+			// already gone.
+		}
+		mbeanName = null;
+	}
+
 	public int getMouseX()
 	{
 		return glMouseX;
@@ -190,6 +432,53 @@ public final class OGLSystem
 		return glHeight;
 	}
 
+	/**
+	 * Sets the node that gets key events before any other node.
+	 * If it does not handle an event, the event is sent to the other nodes as usual.
+	 * It can be any node, including one nested in another.
+	 * @param node the node, or null for none.
+	 */
+	public void setFocusNode(OGLCanvasNode node)
+	{
+		inputRouter.setFocusNode(node);
+	}
+
+	/**
+	 * Returns the node that gets key events before any other node, or null for none.
+	 */
+	public OGLCanvasNode getFocusNode()
+	{
+		return inputRouter.getFocusNode();
+	}
+
+	/**
+	 * Sets the node that gets all mouse button, wheel, and movement events, instead of any other node,
+	 * such as a node being dragged. It can be any node, including one nested in another.
+	 * @param node the node, or null to release the capture.
+	 */
+	public void setPointerCapture(OGLCanvasNode node)
+	{
+		inputRouter.setPointerCapture(node);
+	}
+
+	/**
+	 * Returns the node that gets all mouse button, wheel, and movement events, or null for none.
+	 */
+	public OGLCanvasNode getPointerCapture()
+	{
+		return inputRouter.getPointerCapture();
+	}
+
+	/**
+	 * Rebuilds the input routing on the next event.
+	 * Call this if the input event mask of an attached node changes.
+	 * @see OGLInputSubscriber
+	 */
+	public void invalidateInputRouting()
+	{
+		inputRouter.invalidate();
+	}
+
 	/**
 	 * Broadcasts mouse movement to the canvas nodes.
 	 */
@@ -197,13 +486,8 @@ public final class OGLSystem
 	{
 		glMouseX = positionX;
 		glMouseY = positionY;
-		
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			listener.glMouseMove(changeX, positionX, changeY, positionY);
-		}
-	
+		inputState.recordMouseMove(changeX, positionX, changeY, positionY);
+		inputRouter.mouseMove(changeX, positionX, changeY, positionY);
 	}
 
 	/**
@@ -211,13 +495,7 @@ public final class OGLSystem
 	 */
 	public void sendMouseEntered()
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled())
-				 listener.glMouseEnter();
-		}
+		inputRouter.mouseEnter();
 	}
 
 	/**
@@ -225,13 +503,7 @@ public final class OGLSystem
 	 */
 	public void sendMouseExited()
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled())
-				 listener.glMouseExit();
-		}
+		inputRouter.mouseExit();
 	}
 
 	/**
@@ -241,14 +513,8 @@ public final class OGLSystem
 	 */
 	public boolean sendMousePress(int mouseButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glMousePress(mouseButton))
-				return true;
-		}
-		return false;
+		inputState.recordMousePress(mouseButton);
+		return inputRouter.mousePress(mouseButton);
 	}
 
 	/**
@@ -258,14 +524,8 @@ public final class OGLSystem
 	 */
 	public boolean sendMouseRelease(int mouseButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glMouseRelease(mouseButton))
-				return true;
-		}
-		return false;
+		inputState.recordMouseRelease(mouseButton);
+		return inputRouter.mouseRelease(mouseButton);
 	}
 
 	/**
@@ -275,14 +535,8 @@ public final class OGLSystem
 	 */
 	public boolean sendMouseWheel(int units)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glMouseWheel(units))
-				return true;
-		}
-		return false;
+		inputState.recordMouseWheel(units);
+		return inputRouter.mouseWheel(units);
 	}
 
 	/**
@@ -292,14 +546,8 @@ public final class OGLSystem
 	 */
 	public boolean sendKeyPress(int keyCode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glKeyPress(keyCode))
-				return true;
-		}
-		return false;
+		inputState.recordKeyPress(keyCode);
+		return inputRouter.keyPress(keyCode);
 	}
 
 	/**
@@ -309,14 +557,8 @@ public final class OGLSystem
 	 */
 	public boolean sendKeyRelease(int keyCode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glKeyRelease(keyCode))
-				return true;
-		}
-		return false;
+		inputState.recordKeyRelease(keyCode);
+		return inputRouter.keyRelease(keyCode);
 	}
 
 	/**
@@ -326,14 +568,7 @@ public final class OGLSystem
 	 */
 	public boolean sendKeyTyped(int keyCode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glKeyTyped(keyCode))
-				return true;
-		}
-		return false;
+		return inputRouter.keyTyped(keyCode);
 	}
 
 	/**
@@ -344,14 +579,8 @@ public final class OGLSystem
 	 */
 	public boolean sendGamepadPress(int gamepadId, int gamepadButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glGamepadPress(gamepadId, gamepadButton))
-				return true;
-		}
-		return false;
+		inputState.recordGamepadPress(gamepadId, gamepadButton);
+		return inputRouter.gamepadPress(gamepadId, gamepadButton);
 	}
 	
 	/**
@@ -362,14 +591,8 @@ public final class OGLSystem
 	 */
 	public boolean sendGamepadRelease(int gamepadId, int gamepadButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glGamepadRelease(gamepadId, gamepadButton))
-				return true;
-		}
-		return false;
+		inputState.recordGamepadRelease(gamepadId, gamepadButton);
+		return inputRouter.gamepadRelease(gamepadId, gamepadButton);
 	}
 	
 	/**
@@ -381,14 +604,8 @@ public final class OGLSystem
 	 */
 	public boolean sendGamepadAxis(int gamepadId, int gamepadAxisId, float value)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glGamepadAxisChange(gamepadId, gamepadAxisId, value))
-				return true;
-		}
-		return false;
+		inputState.recordGamepadAxis(gamepadId, gamepadAxisId, value);
+		return inputRouter.gamepadAxis(gamepadId, gamepadAxisId, value);
 	}
 	
 	/**
@@ -400,14 +617,7 @@ public final class OGLSystem
 	 */
 	public boolean sendGamepadAxisTap(int gamepadId, int gamepadAxisId, boolean positive)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode listener = canvasNodeList.getByIndex(i);
-			if (listener != null && listener.isEnabled() && listener.glGamepadAxisTap(gamepadId, gamepadAxisId, positive))
-				return true;
-		}
-		return false;
+		return inputRouter.gamepadAxisTap(gamepadId, gamepadAxisId, positive);
 	}
 	
 }
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * The JMX MBean that monitors an {@link OGLSystem}.
+ * Context-dependent attributes are 0 until the system displays its first frame.
+ * @author Matthew Tropiano
+ */
+final class OGLSystemMonitor implements OGLSystemMonitorMBean
+{
+	/** Nanoseconds per millisecond. */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/** The system monitored. */
+	private OGLSystem system;
+
+	/**
+	 * Creates a new monitor.
+	 * @param system the system to monitor.
+	 */
+	OGLSystemMonitor(OGLSystem system)
+	{
+		this.system = system;
+	}
+
+	@Override
+	public float getFPS()
+	{
+		return system.getFPS();
+	}
+
+	@Override
+	public long getFrameCount()
+	{
+		return system.getFrameCount();
+	}
+
+	@Override
+	public double getFrameTimeMillis()
+	{
+		return system.getFrameRenderTimeNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getFrameTimeP50Millis()
+	{
+		return system.getFrameTimePercentileNanos(50.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getFrameTimeP95Millis()
+	{
+		return system.getFrameTimePercentileNanos(95.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getFrameTimeP99Millis()
+	{
+		return system.getFrameTimePercentileNanos(99.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getFrameTimeMaxMillis()
+	{
+		return system.getFrameTimePercentileNanos(100.0) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public double getRenderTimeMillis()
+	{
+		return system.getRenderTimeNanos() / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public int getPolygonsRendered()
+	{
+		return system.getPolygonsRendered();
+	}
+
+	@Override
+	public int getTextureCount()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getTextureCount() : 0;
+	}
+
+	@Override
+	public long getTextureBytes()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getTextureBytes() : 0L;
+	}
+
+	@Override
+	public int getBufferCount()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getBufferCount() : 0;
+	}
+
+	@Override
+	public long getBufferBytes()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getBufferBytes() : 0L;
+	}
+
+	@Override
+	public int getUndeletedObjectCount()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getUndeletedObjectCount() : 0;
+	}
+
+	@Override
+	public long getErrorCount()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getErrorCount() : 0L;
+	}
+
+	@Override
+	public int getPendingShaderCount()
+	{
+		OGLGraphics g = system.getGraphics();
+		return g != null ? g.getPendingShaderCount() : 0;
+	}
+
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * JMX management interface for monitoring an {@link OGLSystem}.
+ * Registered with {@link OGLSystem#registerMBean(String)}.
+ * All attributes are read from values the system keeps anyway, so reading them is cheap
+ * and does not touch the rendering thread.
+ * @author Matthew Tropiano
+ */
+public interface OGLSystemMonitorMBean
+{
+	/** Returns the current frames per second. */
+	public float getFPS();
+
+	/** Returns the number of frames displayed. */
+	public long getFrameCount();
+
+	/** Returns the last frame time in milliseconds. */
+	public double getFrameTimeMillis();
+
+	/** Returns the median of recent frame times in milliseconds. */
+	public double getFrameTimeP50Millis();
+
+	/** Returns the 95th percentile of recent frame times in milliseconds. */
+	public double getFrameTimeP95Millis();
+
+	/** Returns the 99th percentile of recent frame times in milliseconds. */
+	public double getFrameTimeP99Millis();
+
+	/** Returns the longest recent frame time in milliseconds. */
+	public double getFrameTimeMaxMillis();
+
+	/** Returns the time spent displaying nodes in the last frame, in milliseconds. */
+	public double getRenderTimeMillis();
+
+	/** Returns the number of polygons rendered in the last frame. */
+	public int getPolygonsRendered();
+
+	/** Returns the number of allocated textures. */
+	public int getTextureCount();
+
+	/** Returns the estimated bytes of all texture data. */
+	public long getTextureBytes();
+
+	/** Returns the number of allocated buffers. */
+	public int getBufferCount();
+
+	/** Returns the bytes of all buffer data. */
+	public long getBufferBytes();
+
+	/** Returns the number of abandoned objects waiting to be deleted. */
+	public int getUndeletedObjectCount();
+
+	/** Returns the number of OpenGL errors detected. */
+	public long getErrorCount();
+
+	/** Returns the number of shaders still compiling in the background. */
+	public int getPendingShaderCount();
+
+}
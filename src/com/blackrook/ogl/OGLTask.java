@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * A piece of one-time GL work, submitted to an {@link OGLTaskQueue} from any thread
+ * and run on the render thread.
+ * @param <V> the result type.
+ * @author Matthew Tropiano
+ */
+public interface OGLTask<V>
+{
+	/**
+	 * Does the work. Called once, on the render thread, at the start of a frame.
+	 * @param g the graphics context to use.
+	 * @return the result, given to whoever waits on the task's future.
+	 * @throws Exception if the work fails. It is given to whoever waits on the task's future.
+	 */
+	public V run(OGLGraphics g) throws Exception;
+
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A queue of one-time GL tasks, submitted from any thread and run on the render thread.
+ * <p>
+ * {@link OGLSystem} runs queued tasks at the start of each frame, in the order they were submitted,
+ * until the frame's time budget is used up. The rest wait for the next frame, so a large batch
+ * of uploads is spread over several frames instead of stalling one. At least one task is run
+ * per frame, even if it alone takes longer than the budget.
+ * <p>
+ * Each task gets a {@link FutureTask} that can be waited on for its result or exception,
+ * or cancelled before it runs. Waiting on one from the render thread will never finish.
+ * @author Matthew Tropiano
+ */
+public class OGLTaskQueue
+{
+	/** Default time budget per frame: 2 milliseconds. */
+	public static final long DEFAULT_BUDGET_NANOS = 2000000L;
+
+	/** Queued tasks. */
+	private ConcurrentLinkedQueue<FutureTask<?>> queue;
+	/** Number of queued tasks. */
+	private AtomicInteger pending;
+	/** Time budget per frame. */
+	private volatile long budgetNanos;
+	/** Graphics context of the tasks being run. Only touched by the render thread. */
+	private OGLGraphics graphics;
+
+	/** Tasks run. */
+	private volatile long runCount;
+	/** Frames that left tasks queued. */
+	private volatile long deferredFrameCount;
+	/** Time spent running tasks in the last frame. */
+	private volatile long lastRunNanos;
+
+	/**
+	 * Creates a new task queue with the default time budget.
+	 */
+	public OGLTaskQueue()
+	{
+		queue = new ConcurrentLinkedQueue<FutureTask<?>>();
+		pending = new AtomicInteger(0);
+		budgetNanos = DEFAULT_BUDGET_NANOS;
+		graphics = null;
+		runCount = 0L;
+		deferredFrameCount = 0L;
+		lastRunNanos = 0L;
+	}
+
+	/**
+	 * Queues a task to run on the render thread at the start of a coming frame.
+	 * Can be called from any thread.
+	 * @param task the task.
+	 * @return a future for the task's result.
+	 */
+	public <V> FutureTask<V> submit(final OGLTask<V> task)
+	{
+		FutureTask<V> out = new FutureTask<V>(new Callable<V>()
+		{
+			@Override
+			public V call() throws Exception
+			{
+				return task.run(graphics);
+			}
+		});
+		queue.add(out);
+		pending.incrementAndGet();
+		return out;
+	}
+
+	/**
+	 * Runs queued tasks until the time budget is used up or the queue is empty.
+	 * Must be called on the render thread.
+	 * @param g the graphics context to give the tasks.
+	 * @return the number of tasks run (including cancelled ones, which do nothing).
+	 */
+	public int run(OGLGraphics g)
+	{
+		if (pending.get() == 0)
+		{
+			lastRunNanos = 0L;
+			return 0;
+		}
+
+		graphics = g;
+		long start = System.nanoTime();
+		long budget = budgetNanos;
+		int out = 0;
+		long elapsed = 0L;
+		FutureTask<?> task;
+		try {
+			// always run one, so that a task longer than the budget does not block the queue.
+			while ((out == 0 || elapsed < budget) && (task = queue.poll()) != null)
+			{
+				pending.decrementAndGet();
+				task.run();
+				out++;
+				elapsed = System.nanoTime() - start;
+			}
+		} finally {
+			graphics = null;
+		}
+
+		runCount += out;
+		lastRunNanos = elapsed;
+		if (pending.get() > 0)
+			deferredFrameCount++;
+		return out;
+	}
+
+	/**
+	 * Sets the time budget for running tasks per frame.
+	 * Default is {@link #DEFAULT_BUDGET_NANOS}.
+	 * @param nanos the budget in nanoseconds.
+	 */
+	public void setBudgetNanos(long nanos)
+	{
+		budgetNanos = Math.max(0L, nanos);
+	}
+
+	/**
+	 * Returns the time budget for running tasks per frame, in nanoseconds.
+	 */
+	public long getBudgetNanos()
+	{
+		return budgetNanos;
+	}
+
+	/**
+	 * Returns the number of tasks waiting to run.
+	 */
+	public int getPendingCount()
+	{
+		return pending.get();
+	}
+
+	/**
+	 * Returns the number of tasks run.
+	 */
+	public long getRunCount()
+	{
+		return runCount;
+	}
+
+	/**
+	 * Returns the number of frames that ran out of budget with tasks still queued.
+	 */
+	public long getDeferredFrameCount()
+	{
+		return deferredFrameCount;
+	}
+
+	/**
+	 * Returns the time spent running tasks in the last frame, in nanoseconds.
+	 */
+	public long getLastRunNanos()
+	{
+		return lastRunNanos;
+	}
+
+	/**
+	 * Cancels all queued tasks.
+	 * @return the number of tasks cancelled.
+	 */
+	public int cancelAll()
+	{
+		int out = 0;
+		FutureTask<?> task;
+		while ((task = queue.poll()) != null)
+		{
+			pending.decrementAndGet();
+			if (task.cancel(false))
+				out++;
+		}
+		return out;
+	}
+
+}
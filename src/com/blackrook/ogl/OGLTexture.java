@@ -23,16 +23,15 @@ import com.blackrook.ogl.exception.GraphicsException;
  */
 public class OGLTexture extends OGLObject
 {
-	/** List of OpenGL object ids that were not deleted properly. */
-	protected static int[] UNDELETED_IDS;
-	/** Amount of OpenGL object ids that were not deleted properly. */
-	protected static int UNDELETED_LENGTH;
-	
-	static
-	{
-		UNDELETED_IDS = new int[INIT_UNALLOC_SIZE];
-		UNDELETED_LENGTH = 0;
-	}
+	/** Maximum mipmap levels tracked per face. */
+	private static final int MAX_LEVELS = 32;
+	/** Number of faces tracked (6 for cube maps). */
+	private static final int MAX_FACES = 6;
+
+	/** Estimated bytes per face and level, allocated on first data upload. */
+	private long[] levelBytes;
+	/** Estimated total bytes. */
+	private long estimatedBytes;
 
 	/**
 	 * Creates a new blank texture object.
@@ -62,41 +61,43 @@ public class OGLTexture extends OGLObject
 		g.clearError();
 		g.getGL().glDeleteTextures(1, glStateNum, 0);
 		g.getError();
+		levelBytes = null;
+		estimatedBytes = 0L;
 		return true;
 	}
-	
+
 	/**
-	 * Destroys undeleted texture objects abandoned from destroyed Java objects.
+	 * Sets the estimated size of one face and mipmap level of this texture's data.
+	 * @param face the face index (0 for non-cube textures).
+	 * @param level the mipmap level.
+	 * @param bytes the estimated size in bytes.
 	 */
-	static void destroyUndeleted(OGLGraphics g)
+	void setLevelBytes(int face, int level, long bytes)
 	{
-		if (UNDELETED_LENGTH > 0)
-		{
-			g.getGL().glDeleteTextures(UNDELETED_LENGTH, UNDELETED_IDS, 0);
-			UNDELETED_LENGTH = 0;
-		}
+		if (level < 0 || level >= MAX_LEVELS)
+			return;
+		if (levelBytes == null)
+			levelBytes = new long[MAX_FACES * MAX_LEVELS];
+		int index = face * MAX_LEVELS + level;
+		long delta = bytes - levelBytes[index];
+		levelBytes[index] = bytes;
+		estimatedBytes += delta;
+		setRegistryBytes(estimatedBytes);
 	}
 
-	// adds the OpenGL Id to the UNDELETED_IDS list.
-	private static void finalizeAddId(int id)
+	/**
+	 * Returns the estimated amount of memory used by this texture's data in bytes,
+	 * from the formats and dimensions of the data sent to it.
+	 */
+	public long getEstimatedBytes()
 	{
-		if (UNDELETED_LENGTH == UNDELETED_IDS.length)
-		{
-			int[] newArray = new int[UNDELETED_IDS.length * 2];
-			System.arraycopy(UNDELETED_IDS, 0, newArray, 0, UNDELETED_LENGTH);
-			UNDELETED_IDS = newArray;
-		}
-		UNDELETED_IDS[UNDELETED_LENGTH++] = id;
+		return estimatedBytes;
 	}
-
+	
 	@Override
-	public void finalize() throws Throwable
+	OGLResourceRegistry.Type getResourceType()
 	{
-		if (isAllocated())
-		{
-			finalizeAddId(getGLId());
-		}
-		super.finalize();
+		return OGLResourceRegistry.Type.TEXTURE;
 	}
 
 }
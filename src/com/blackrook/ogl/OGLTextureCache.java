@@ -0,0 +1,438 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+
+import com.blackrook.ogl.enums.TextureFormat;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A persistent, content-addressed cache of converted texture data on disk.
+ * <p>
+ * Entries are keyed by a hash of the source image's bytes plus the options used
+ * to convert it, so a changed source or changed options never hits a stale entry.
+ * Each entry is a KTX file holding the upload-ready levels, their format, and their dimensions,
+ * and is memory-mapped when read back (see {@link OGLTextureFile}), so a hit skips
+ * image decoding, mipmap generation, and compression entirely.
+ * <p>
+ * Every entry carries a CRC32 of its level data in its KTX metadata, which is checked on read.
+ * Entries that fail the check or cannot be parsed are deleted and treated as misses.
+ * <p>
+ * The total size of the cache directory is bounded: when a new entry would exceed the bound,
+ * the least-recently-used entries are deleted first. Usage order is kept across runs via the
+ * entry files' modification times.
+ * @author Matthew Tropiano
+ */
+public class OGLTextureCache
+{
+	/** Cache file extension. */
+	private static final String EXTENSION = ".ktx";
+	/** Temporary file extension, for entries being written. */
+	private static final String TEMP_EXTENSION = ".tmp";
+	/** KTX metadata key for the level data checksum. */
+	private static final String KEY_CRC32 = "BlackRook.crc32";
+	/** Version tag mixed into every key. Change if the conversion process changes. */
+	private static final String VERSION = "1";
+	/** Hex digits. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** Cache directory. */
+	private File directory;
+	/** Maximum total size of all entries in bytes. */
+	private long maxBytes;
+	/** Current total size of all entries in bytes. */
+	private long totalBytes;
+	/** Entry sizes by key, in least-recently-used order. */
+	private LinkedHashMap<String, Long> entries;
+
+	/** Number of cache hits. */
+	private long hits;
+	/** Number of cache misses. */
+	private long misses;
+
+	/**
+	 * Creates a texture cache in a directory, picking up any entries already in it.
+	 * @param directory the cache directory. Created if it does not exist.
+	 * @param maxBytes the maximum total size of all cache entries in bytes.
+	 * @throws GraphicsException if the directory could not be created.
+	 */
+	public OGLTextureCache(File directory, long maxBytes)
+	{
+		if (!directory.exists() && !directory.mkdirs())
+			throw new GraphicsException("Could not create texture cache directory \""+directory.getPath()+"\".");
+		if (!directory.isDirectory())
+			throw new GraphicsException("\""+directory.getPath()+"\" is not a directory.");
+
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.totalBytes = 0L;
+		this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		this.hits = 0L;
+		this.misses = 0L;
+		scan();
+	}
+
+	// Scans the directory for existing entries, oldest first, and deletes temporary files left by failed writes.
+	private void scan()
+	{
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+
+		final long[] times = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++)
+		{
+			times[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return times[a] < times[b] ? -1 : (times[a] > times[b] ? 1 : 0);
+			}
+		});
+
+		for (Integer i : order)
+		{
+			File f = files[i];
+			String name = f.getName();
+			if (!f.isFile())
+				continue;
+			if (name.endsWith(TEMP_EXTENSION))
+			{
+				f.delete();
+				continue;
+			}
+			if (!name.endsWith(EXTENSION))
+				continue;
+			entries.put(name.substring(0, name.length() - EXTENSION.length()), f.length());
+			totalBytes += f.length();
+		}
+	}
+
+	/**
+	 * Creates a cache key from a source file's contents and the conversion options.
+	 * @param source the source file.
+	 * @param options a string describing all options that affect the converted output.
+	 * @return the key, as a hex string.
+	 * @throws IOException if the file could not be read.
+	 */
+	public static String getKey(File source, String options) throws IOException
+	{
+		InputStream in = new FileInputStream(source);
+		try {
+			return getKey(in, options);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates a cache key from source data and the conversion options.
+	 * The stream is read fully, but not closed.
+	 * @param in the input stream of source data.
+	 * @param options a string describing all options that affect the converted output.
+	 * @return the key, as a hex string.
+	 * @throws IOException if the stream could not be read.
+	 */
+	public static String getKey(InputStream in, String options) throws IOException
+	{
+		MessageDigest digest = getDigest();
+		byte[] buffer = new byte[8192];
+		int n = 0;
+		while ((n = in.read(buffer)) > 0)
+			digest.update(buffer, 0, n);
+		digest.update((byte)0);
+		digest.update((VERSION + ":" + options).getBytes("UTF-8"));
+
+		byte[] hash = digest.digest();
+		char[] out = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++)
+		{
+			out[i * 2] = HEX[(hash[i] >> 4) & 0x0f];
+			out[i * 2 + 1] = HEX[hash[i] & 0x0f];
+		}
+		return new String(out);
+	}
+
+	// Gets the digest used for keys.
+	private static MessageDigest getDigest()
+	{
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new GraphicsException("SHA-1 digest not available: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Gets a cached texture, if present and intact.
+	 * @param key the entry key.
+	 * @return the mapped texture file, or null if not in the cache.
+	 */
+	public synchronized OGLTextureFile get(String key)
+	{
+		Long size = entries.get(key);
+		if (size == null)
+		{
+			misses++;
+			return null;
+		}
+
+		File file = getFile(key);
+		OGLTextureFile out = null;
+		try {
+			out = OGLTextureFile.readKTX(file);
+		} catch (IOException e) {
+			out = null;
+		} catch (GraphicsException e) {
+			out = null;
+		}
+
+		if (out == null || !String.valueOf(getChecksum(out)).equals(out.getKeyValue(KEY_CRC32)))
+		{
+			remove(key);
+			misses++;
+			return null;
+		}
+
+		file.setLastModified(System.currentTimeMillis());
+		hits++;
+		return out;
+	}
+
+	/**
+	 * Puts a texture into the cache, evicting least-recently-used entries if needed.
+	 * If the entry alone is larger than the cache bound, it is not stored.
+	 * @param key the entry key.
+	 * @param texture the texture data to store.
+	 * @throws IOException if the entry could not be written.
+	 */
+	public synchronized void put(String key, OGLTextureFile texture) throws IOException
+	{
+		texture.setKeyValue(KEY_CRC32, String.valueOf(getChecksum(texture)));
+
+		// write to a temporary file first so that a partial write is never seen as an entry.
+		File temp = new File(directory, key + TEMP_EXTENSION);
+		boolean written = false;
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+			try {
+				texture.writeKTX(out);
+			} finally {
+				out.close();
+			}
+			written = true;
+		} finally {
+			if (!written)
+				temp.delete();
+		}
+
+		long size = temp.length();
+		if (size > maxBytes)
+		{
+			temp.delete();
+			return;
+		}
+
+		if (entries.containsKey(key))
+			remove(key);
+		trim(maxBytes - size);
+
+		File file = getFile(key);
+		if (!temp.renameTo(file))
+		{
+			temp.delete();
+			throw new IOException("Could not move texture cache entry into place: \""+file.getPath()+"\"");
+		}
+		entries.put(key, size);
+		totalBytes += size;
+	}
+
+	/**
+	 * Gets a texture from the cache, or reads and converts an image file and caches
+	 * the result if it is not present.
+	 * <p>
+	 * Uncompressed formats are stored as BGRA. Compressed formats are compressed with
+	 * {@link OGLTextureCompressor}.
+	 * @param source the source image file.
+	 * @param format the texture format to convert to.
+	 * @param mipmaps if true, generate a full mipmap chain.
+	 * @return the cached texture.
+	 * @throws IOException if the source could not be read or the entry could not be written.
+	 * @throws GraphicsException if the source is not a readable image.
+	 */
+	public OGLTextureFile get(File source, TextureFormat format, boolean mipmaps) throws IOException
+	{
+		String key = getKey(source, format.name() + (mipmaps ? ":mipmaps" : ""));
+		OGLTextureFile out = get(key);
+		if (out != null)
+			return out;
+
+		BufferedImage image = ImageIO.read(source);
+		if (image == null)
+			throw new GraphicsException("\""+source.getPath()+"\" is not a readable image.");
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int levelCount = 1;
+		if (mipmaps)
+			while ((width >> levelCount) > 0 || (height >> levelCount) > 0)
+				levelCount++;
+
+		ByteBuffer[] levels = new ByteBuffer[levelCount];
+		BufferedImage level = image;
+		for (int i = 0; i < levelCount; i++)
+		{
+			if (i > 0)
+				level = OGLGraphicUtils.performResizeBilinear(level, Math.max(1, width >> i), Math.max(1, height >> i));
+			if (format.isCompressed())
+				levels[i] = OGLGraphicUtils.getCompressedByteData(level, format);
+			else
+				levels[i] = (ByteBuffer)OGLGraphicUtils.getByteData(level);
+		}
+
+		out = new OGLTextureFile(format, width, height, levels);
+		put(key, out);
+		return out;
+	}
+
+	/**
+	 * Removes an entry from the cache.
+	 * @param key the entry key.
+	 * @return true if the entry existed, false if not.
+	 */
+	public synchronized boolean remove(String key)
+	{
+		Long size = entries.remove(key);
+		if (size == null)
+			return false;
+		getFile(key).delete();
+		totalBytes -= size;
+		return true;
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear()
+	{
+		trim(0L);
+	}
+
+	// Evicts least-recently-used entries until the total size is at or below a limit.
+	private void trim(long limit)
+	{
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while (totalBytes > limit && it.hasNext())
+		{
+			Map.Entry<String, Long> entry = it.next();
+			getFile(entry.getKey()).delete();
+			totalBytes -= entry.getValue();
+			it.remove();
+		}
+	}
+
+	// Returns the file for a key.
+	private File getFile(String key)
+	{
+		return new File(directory, key + EXTENSION);
+	}
+
+	// Returns the checksum of a texture's level data.
+	private static long getChecksum(OGLTextureFile texture)
+	{
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		for (int i = 0; i < texture.getLevelCount(); i++)
+		{
+			ByteBuffer level = texture.getLevelData(i).duplicate();
+			while (level.hasRemaining())
+			{
+				int len = Math.min(chunk.length, level.remaining());
+				level.get(chunk, 0, len);
+				crc.update(chunk, 0, len);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns this cache's directory.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Returns the maximum total size of all entries in bytes.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the current total size of all entries in bytes.
+	 */
+	public synchronized long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * Returns the number of entries in the cache.
+	 */
+	public synchronized int getEntryCount()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of cache hits since this object was created.
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of cache misses since this object was created.
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackrook.commons.Common;
+import com.blackrook.ogl.enums.TextureFormat;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A CPU-side S3TC (DXT1/DXT3/DXT5) block encoder for BGRA texture data.
+ * <p>
+ * Input data is expected to be in the same layout that {@link OGLGraphicUtils#getByteData(java.awt.image.BufferedImage)}
+ * produces, and output data can be sent straight to OpenGL via
+ * {@link OGLGraphics#setCompressedTextureData2D(java.nio.Buffer, TextureFormat, int, int, int)}.
+ * Images are split into rows of 4x4 blocks, and rows are handed out to worker threads.
+ * @author Matthew Tropiano
+ */
+public final class OGLTextureCompressor
+{
+	/** Minimum amount of block rows per worker before another worker is worth starting. */
+	private static final int MIN_ROWS_PER_THREAD = 8;
+
+	private OGLTextureCompressor() {}
+
+	/**
+	 * Returns the size in bytes of a compressed image.
+	 * @param format the compressed texture format.
+	 * @param width the image width in texels.
+	 * @param height the image height in texels.
+	 * @return the amount of bytes needed to hold the compressed data.
+	 * @throws GraphicsException if the format is not an S3TC format.
+	 */
+	public static int getCompressedSize(TextureFormat format, int width, int height)
+	{
+		return ((width + 3) / 4) * ((height + 3) / 4) * getBlockSize(format);
+	}
+
+	/**
+	 * Returns the size in bytes of a single 4x4 block for a compressed format.
+	 * @param format the compressed texture format.
+	 * @throws GraphicsException if the format is not an S3TC format.
+	 */
+	public static int getBlockSize(TextureFormat format)
+	{
+		switch (format)
+		{
+			case COMPRESSED_RGB_DXT1:
+			case COMPRESSED_RGBA_DXT1:
+				return 8;
+			case COMPRESSED_RGBA_DXT3:
+			case COMPRESSED_RGBA_DXT5:
+				return 16;
+			default:
+				throw new GraphicsException("Format "+format+" is not an S3TC compressed format.");
+		}
+	}
+
+	/**
+	 * Compresses BGRA image data using as many threads as there are available processors.
+	 * @param imageData the BGRA image data (4 bytes per texel, read from position 0).
+	 * @param format the target compressed format.
+	 * @param width the image width in texels.
+	 * @param height the image height in texels.
+	 * @return a new direct {@link ByteBuffer} of compressed data.
+	 * @throws GraphicsException if the format is not an S3TC format or the buffer is too small.
+	 */
+	public static ByteBuffer compress(ByteBuffer imageData, TextureFormat format, int width, int height)
+	{
+		return compress(imageData, format, width, height, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Compresses BGRA image data.
+	 * @param imageData the BGRA image data (4 bytes per texel, read from position 0).
+	 * @param format the target compressed format.
+	 * @param width the image width in texels.
+	 * @param height the image height in texels.
+	 * @param threads the maximum amount of threads to use. Values less than 2 compress on the calling thread.
+	 * @return a new direct {@link ByteBuffer} of compressed data.
+	 * @throws GraphicsException if the format is not an S3TC format or the buffer is too small.
+	 */
+	public static ByteBuffer compress(ByteBuffer imageData, TextureFormat format, int width, int height, int threads)
+	{
+		ByteBuffer out = Common.allocDirectByteBuffer(getCompressedSize(format, width, height));
+		compress(imageData, format, width, height, threads, out);
+		return out;
+	}
+
+	/**
+	 * Compresses BGRA image data into an existing buffer.
+	 * The output buffer's position and limit are not changed.
+	 * @param imageData the BGRA image data (4 bytes per texel, read from position 0).
+	 * @param format the target compressed format.
+	 * @param width the image width in texels.
+	 * @param height the image height in texels.
+	 * @param threads the maximum amount of threads to use. Values less than 2 compress on the calling thread.
+	 * @param out the output buffer (written from position 0).
+	 * @throws GraphicsException if the format is not an S3TC format or a buffer is too small.
+	 */
+	public static void compress(ByteBuffer imageData, TextureFormat format, int width, int height, int threads, ByteBuffer out)
+	{
+		if (width < 1 || height < 1)
+			throw new GraphicsException("Image size cannot be less than 1 in any dimension.");
+		if (imageData.capacity() < width * height * 4)
+			throw new GraphicsException("Image data is smaller than "+width+"x"+height+" BGRA texels.");
+		if (out.capacity() < getCompressedSize(format, width, height))
+			throw new GraphicsException("Output buffer is too small for compressed data.");
+
+		int blockRows = (height + 3) / 4;
+		int workers = Math.max(1, Math.min(threads, blockRows / MIN_ROWS_PER_THREAD));
+
+		AtomicInteger nextRow = new AtomicInteger(0);
+		if (workers == 1)
+		{
+			new BlockRowEncoder(imageData, format, width, height, nextRow, out).run();
+			return;
+		}
+
+		Thread[] threadList = new Thread[workers - 1];
+		BlockRowEncoder[] encoders = new BlockRowEncoder[workers];
+		for (int i = 0; i < workers; i++)
+			encoders[i] = new BlockRowEncoder(imageData, format, width, height, nextRow, out);
+		for (int i = 0; i < threadList.length; i++)
+		{
+			threadList[i] = new Thread(encoders[i + 1], "OGLTextureCompressor-" + i);
+			threadList[i].setDaemon(true);
+			threadList[i].start();
+		}
+
+		// calling thread does work too.
+		encoders[0].run();
+
+		for (int i = 0; i < threadList.length; i++)
+		{
+			try {
+				threadList[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GraphicsException("Texture compression was interrupted.");
+			}
+		}
+
+		for (BlockRowEncoder encoder : encoders)
+			if (encoder.error != null)
+				throw new GraphicsException("Texture compression failed: " + encoder.error.getMessage());
+	}
+
+	/**
+	 * Encodes rows of blocks, taking the next unencoded row from a shared counter.
+	 */
+	private static class BlockRowEncoder implements Runnable
+	{
+		private ByteBuffer source;
+		private ByteBuffer target;
+		private TextureFormat format;
+		private int width;
+		private int height;
+		private AtomicInteger nextRow;
+		private RuntimeException error;
+
+		/** Block texels, BGRA packed as ARGB ints. */
+		private int[] texels;
+		/** Working palette. */
+		private int[] palette;
+
+		BlockRowEncoder(ByteBuffer source, TextureFormat format, int width, int height, AtomicInteger nextRow, ByteBuffer target)
+		{
+			// duplicates have independent positions, so no contention.
+			this.source = source.duplicate();
+			this.source.order(ByteOrder.LITTLE_ENDIAN);
+			this.target = target.duplicate();
+			this.target.order(ByteOrder.LITTLE_ENDIAN);
+			this.format = format;
+			this.width = width;
+			this.height = height;
+			this.nextRow = nextRow;
+			this.texels = new int[16];
+			this.palette = new int[4];
+		}
+
+		@Override
+		public void run()
+		{
+			try {
+				int blockSize = getBlockSize(format);
+				int blocksWide = (width + 3) / 4;
+				int blockRows = (height + 3) / 4;
+				int row;
+				while ((row = nextRow.getAndIncrement()) < blockRows)
+				{
+					int offset = row * blocksWide * blockSize;
+					for (int bx = 0; bx < blocksWide; bx++)
+					{
+						readBlock(bx * 4, row * 4);
+						offset = writeBlock(offset);
+					}
+				}
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+
+		// Reads a 4x4 block of texels. Edges are clamped.
+		private void readBlock(int x, int y)
+		{
+			for (int j = 0; j < 4; j++)
+			{
+				int ty = Math.min(y + j, height - 1);
+				for (int i = 0; i < 4; i++)
+				{
+					int tx = Math.min(x + i, width - 1);
+					// little-endian read of B,G,R,A is ARGB.
+					texels[j * 4 + i] = source.getInt((ty * width + tx) * 4);
+				}
+			}
+		}
+
+		// Writes the current block, returns new offset.
+		private int writeBlock(int offset)
+		{
+			switch (format)
+			{
+				case COMPRESSED_RGB_DXT1:
+					return writeColorBlock(offset, false, false);
+				case COMPRESSED_RGBA_DXT1:
+					return writeColorBlock(offset, true, false);
+				case COMPRESSED_RGBA_DXT3:
+					return writeColorBlock(writeExplicitAlphaBlock(offset), false, true);
+				case COMPRESSED_RGBA_DXT5:
+					return writeColorBlock(writeInterpolatedAlphaBlock(offset), false, true);
+				default:
+					throw new GraphicsException("Format "+format+" is not an S3TC compressed format.");
+			}
+		}
+
+		// Writes DXT3 alpha: 4 bits per texel.
+		private int writeExplicitAlphaBlock(int offset)
+		{
+			long bits = 0L;
+			for (int i = 0; i < 16; i++)
+			{
+				int a = (texels[i] >>> 24);
+				bits |= ((long)((a * 15 + 127) / 255)) << (i * 4);
+			}
+			target.putLong(offset, bits);
+			return offset + 8;
+		}
+
+		// Writes DXT5 alpha: two endpoints and 3-bit indices.
+		private int writeInterpolatedAlphaBlock(int offset)
+		{
+			int min = 255;
+			int max = 0;
+			for (int i = 0; i < 16; i++)
+			{
+				int a = (texels[i] >>> 24);
+				min = Math.min(min, a);
+				max = Math.max(max, a);
+			}
+
+			long bits = 0L;
+			if (max > min)
+			{
+				for (int i = 0; i < 16; i++)
+				{
+					int a = (texels[i] >>> 24);
+					// position along the range, 0 (max) to 7 (min).
+					int step = ((max - a) * 7 + (max - min) / 2) / (max - min);
+					int index;
+					if (step == 0)
+						index = 0;
+					else if (step == 7)
+						index = 1;
+					else
+						index = step + 1;
+					bits |= ((long)index) << (i * 3);
+				}
+			}
+
+			target.put(offset, (byte)max);
+			target.put(offset + 1, (byte)min);
+			for (int i = 0; i < 6; i++)
+				target.put(offset + 2 + i, (byte)(bits >>> (i * 8)));
+			return offset + 8;
+		}
+
+		/**
+		 * Writes a color block.
+		 * @param offset the target offset.
+		 * @param oneBitAlpha if true, texels with alpha less than 128 are encoded as transparent (DXT1 only).
+		 * @param alwaysFourColor if true, the endpoint order never selects three-color mode (DXT3/5).
+		 * @return the next offset.
+		 */
+		private int writeColorBlock(int offset, boolean oneBitAlpha, boolean alwaysFourColor)
+		{
+			int minR = 255, minG = 255, minB = 255;
+			int maxR = 0, maxG = 0, maxB = 0;
+			boolean transparent = false;
+			boolean anyOpaque = false;
+			for (int i = 0; i < 16; i++)
+			{
+				int argb = texels[i];
+				if (oneBitAlpha && (argb >>> 24) < 128)
+				{
+					transparent = true;
+					continue;
+				}
+				anyOpaque = true;
+				int r = (argb >> 16) & 0x0ff;
+				int g = (argb >> 8) & 0x0ff;
+				int b = argb & 0x0ff;
+				minR = Math.min(minR, r); maxR = Math.max(maxR, r);
+				minG = Math.min(minG, g); maxG = Math.max(maxG, g);
+				minB = Math.min(minB, b); maxB = Math.max(maxB, b);
+			}
+
+			if (!anyOpaque)
+			{
+				// all transparent: three-color mode, every index is 3.
+				target.putShort(offset, (short)0);
+				target.putShort(offset + 2, (short)0);
+				target.putInt(offset + 4, 0xffffffff);
+				return offset + 8;
+			}
+
+			// inset the bounding box a little to reduce error at the extremes.
+			int insetR = (maxR - minR) >> 4;
+			int insetG = (maxG - minG) >> 4;
+			int insetB = (maxB - minB) >> 4;
+
+			int c0 = to565(maxR - insetR, maxG - insetG, maxB - insetB);
+			int c1 = to565(minR + insetR, minG + insetG, minB + insetB);
+
+			boolean threeColor = transparent;
+			if (threeColor)
+			{
+				if (c0 > c1)
+				{
+					int t = c0; c0 = c1; c1 = t;
+				}
+			}
+			else if (c0 < c1)
+			{
+				int t = c0; c0 = c1; c1 = t;
+			}
+			else if (c0 == c1 && !alwaysFourColor)
+			{
+				// equal endpoints: index 0 everywhere is exact enough.
+				target.putShort(offset, (short)c0);
+				target.putShort(offset + 2, (short)c1);
+				target.putInt(offset + 4, 0);
+				return offset + 8;
+			}
+
+			palette[0] = from565(c0);
+			palette[1] = from565(c1);
+			if (threeColor)
+			{
+				palette[2] = blend(palette[0], palette[1], 1, 1);
+				palette[3] = 0;
+			}
+			else
+			{
+				palette[2] = blend(palette[0], palette[1], 2, 1);
+				palette[3] = blend(palette[0], palette[1], 1, 2);
+			}
+
+			int indices = 0;
+			int paletteCount = threeColor ? 3 : 4;
+			for (int i = 0; i < 16; i++)
+			{
+				int argb = texels[i];
+				int index;
+				if (threeColor && (argb >>> 24) < 128)
+					index = 3;
+				else
+					index = nearest(argb, paletteCount);
+				indices |= index << (i * 2);
+			}
+
+			target.putShort(offset, (short)c0);
+			target.putShort(offset + 2, (short)c1);
+			target.putInt(offset + 4, indices);
+			return offset + 8;
+		}
+
+		// Finds the nearest palette color.
+		private int nearest(int argb, int paletteCount)
+		{
+			int r = (argb >> 16) & 0x0ff;
+			int g = (argb >> 8) & 0x0ff;
+			int b = argb & 0x0ff;
+			int best = 0;
+			int bestDist = Integer.MAX_VALUE;
+			for (int p = 0; p < paletteCount; p++)
+			{
+				int dr = r - ((palette[p] >> 16) & 0x0ff);
+				int dg = g - ((palette[p] >> 8) & 0x0ff);
+				int db = b - (palette[p] & 0x0ff);
+				int dist = dr * dr + dg * dg + db * db;
+				if (dist < bestDist)
+				{
+					bestDist = dist;
+					best = p;
+				}
+			}
+			return best;
+		}
+
+	}
+
+	// Quantizes an 8-bit color to 565.
+	private static int to565(int r, int g, int b)
+	{
+		return (((r * 31 + 127) / 255) << 11) | (((g * 63 + 127) / 255) << 5) | ((b * 31 + 127) / 255);
+	}
+
+	// Expands a 565 color to 888.
+	private static int from565(int c)
+	{
+		int r = (c >> 11) & 0x1f;
+		int g = (c >> 5) & 0x3f;
+		int b = c & 0x1f;
+		return (((r << 3) | (r >> 2)) << 16) | (((g << 2) | (g >> 4)) << 8) | ((b << 3) | (b >> 2));
+	}
+
+	// Weighted blend of two 888 colors.
+	private static int blend(int c0, int c1, int w0, int w1)
+	{
+		int w = w0 + w1;
+		int r = (((c0 >> 16) & 0x0ff) * w0 + ((c1 >> 16) & 0x0ff) * w1) / w;
+		int g = (((c0 >> 8) & 0x0ff) * w0 + ((c1 >> 8) & 0x0ff) * w1) / w;
+		int b = ((c0 & 0x0ff) * w0 + (c1 & 0x0ff) * w1) / w;
+		return (r << 16) | (g << 8) | b;
+	}
+
+}
@@ -0,0 +1,518 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import com.jogamp.opengl.GL2;
+
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.ogl.enums.TextureFormat;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A two-dimensional texture read from a DDS or KTX file, with all of its mipmap levels.
+ * <p>
+ * The file is memory-mapped, and each level's data is a slice of the mapped buffer,
+ * so no texel data is copied onto the heap. The levels can be sent to OpenGL
+ * via {@link OGLGraphics#setTextureData2D(OGLTextureFile)}.
+ * <p>
+ * Texture files can also be built from data already in memory and written out as KTX,
+ * along with KTX key/value metadata.
+ * <p>
+ * Supported contents are single-image 2D textures (no cube maps, arrays, or volumes) that are either
+ * S3TC-compressed (DXT1/DXT3/DXT5) or uncompressed 32-bit BGRA.
+ * @author Matthew Tropiano
+ */
+public class OGLTextureFile
+{
+	/** DDS magic number ("DDS "). */
+	private static final int DDS_MAGIC = 0x20534444;
+	/** DDS header size, including the magic number. */
+	private static final int DDS_HEADER_SIZE = 128;
+	/** DDS header flag: mipmap count is valid. */
+	private static final int DDSD_MIPMAPCOUNT = 0x00020000;
+	/** DDS pixel format flag: has alpha channel. */
+	private static final int DDPF_ALPHAPIXELS = 0x00000001;
+	/** DDS pixel format flag: FourCC code is valid. */
+	private static final int DDPF_FOURCC = 0x00000004;
+	/** DDS pixel format flag: uncompressed RGB data. */
+	private static final int DDPF_RGB = 0x00000040;
+	/** DDS caps2 flag: cube map. */
+	private static final int DDSCAPS2_CUBEMAP = 0x00000200;
+	/** DDS caps2 flag: volume texture. */
+	private static final int DDSCAPS2_VOLUME = 0x00200000;
+	/** FourCC "DXT1". */
+	private static final int FOURCC_DXT1 = 0x31545844;
+	/** FourCC "DXT3". */
+	private static final int FOURCC_DXT3 = 0x33545844;
+	/** FourCC "DXT5". */
+	private static final int FOURCC_DXT5 = 0x35545844;
+
+	/** KTX identifier. */
+	private static final byte[] KTX_IDENTIFIER = {
+		(byte)0xAB, 0x4B, 0x54, 0x58, 0x20, 0x31, 0x31, (byte)0xBB, 0x0D, 0x0A, 0x1A, 0x0A
+	};
+	/** KTX header size, including the identifier. */
+	private static final int KTX_HEADER_SIZE = 64;
+	/** KTX endianness marker, as written by the file's creator. */
+	private static final int KTX_ENDIAN_REF = 0x04030201;
+	/** Charset for KTX key/value data. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Texture format of all levels. */
+	private TextureFormat format;
+	/** Width of level 0 in texels. */
+	private int width;
+	/** Height of level 0 in texels. */
+	private int height;
+	/** Level data. */
+	private ByteBuffer[] levels;
+	/** Key/value metadata. */
+	private HashMap<String, String> keyValues;
+
+	/**
+	 * Creates a new texture file object from data in memory.
+	 * @param format the texture format of the data. If not compressed, the data must be BGRA.
+	 * @param width the width of level 0.
+	 * @param height the height of level 0.
+	 * @param levels the level data, largest level first.
+	 * @throws GraphicsException if no levels are provided, or a level's data is smaller than its expected size.
+	 */
+	public OGLTextureFile(TextureFormat format, int width, int height, ByteBuffer ... levels)
+	{
+		if (levels.length == 0)
+			throw new GraphicsException("At least one level must be provided.");
+		for (int i = 0; i < levels.length; i++)
+		{
+			if (levels[i].remaining() < getLevelSize(format, Math.max(1, width >> i), Math.max(1, height >> i)))
+				throw new GraphicsException("Level "+i+" data is smaller than its expected size.");
+		}
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		this.levels = levels;
+		this.keyValues = new HashMap<String, String>(2);
+	}
+
+	/**
+	 * Reads a DDS or KTX file, deciding which by its header.
+	 * @param file the file to read.
+	 * @return a new texture file.
+	 * @throws FileNotFoundException if the file does not exist.
+	 * @throws IOException if the file could not be read or mapped.
+	 * @throws GraphicsException if the file is not a DDS or KTX file, or contains unsupported data.
+	 */
+	public static OGLTextureFile read(File file) throws IOException
+	{
+		ByteBuffer buffer = map(file);
+		if (isKTX(buffer))
+			return readKTX(file.getPath(), buffer);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() >= 4 && buffer.getInt(0) == DDS_MAGIC)
+			return readDDS(file.getPath(), buffer);
+		throw new GraphicsException("\""+file.getPath()+"\" is not a DDS or KTX file.");
+	}
+
+	/**
+	 * Reads a DDS file.
+	 * @param file the file to read.
+	 * @return a new texture file.
+	 * @throws FileNotFoundException if the file does not exist.
+	 * @throws IOException if the file could not be read or mapped.
+	 * @throws GraphicsException if the file is not a DDS file, or contains unsupported data.
+	 */
+	public static OGLTextureFile readDDS(File file) throws IOException
+	{
+		return readDDS(file.getPath(), map(file));
+	}
+
+	/**
+	 * Reads a KTX file.
+	 * @param file the file to read.
+	 * @return a new texture file.
+	 * @throws FileNotFoundException if the file does not exist.
+	 * @throws IOException if the file could not be read or mapped.
+	 * @throws GraphicsException if the file is not a KTX file, or contains unsupported data.
+	 */
+	public static OGLTextureFile readKTX(File file) throws IOException
+	{
+		return readKTX(file.getPath(), map(file));
+	}
+
+	// Maps a file read-only into memory.
+	private static ByteBuffer map(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// the mapping stays valid after the channel is closed.
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			raf.close();
+		}
+	}
+
+	// Checks for the KTX identifier.
+	private static boolean isKTX(ByteBuffer buffer)
+	{
+		if (buffer.capacity() < KTX_IDENTIFIER.length)
+			return false;
+		for (int i = 0; i < KTX_IDENTIFIER.length; i++)
+			if (buffer.get(i) != KTX_IDENTIFIER[i])
+				return false;
+		return true;
+	}
+
+	// Parses a mapped DDS file.
+	private static OGLTextureFile readDDS(String name, ByteBuffer buffer)
+	{
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < DDS_HEADER_SIZE || buffer.getInt(0) != DDS_MAGIC)
+			throw new GraphicsException("\""+name+"\" is not a DDS file.");
+
+		int flags = buffer.getInt(8);
+		int height = buffer.getInt(12);
+		int width = buffer.getInt(16);
+		int mipmapCount = (flags & DDSD_MIPMAPCOUNT) != 0 ? Math.max(1, buffer.getInt(28)) : 1;
+		int pixelFlags = buffer.getInt(80);
+		int fourCC = buffer.getInt(84);
+		int caps2 = buffer.getInt(112);
+
+		if ((caps2 & (DDSCAPS2_CUBEMAP | DDSCAPS2_VOLUME)) != 0)
+			throw new GraphicsException("\""+name+"\": cube map and volume DDS textures are not supported.");
+
+		TextureFormat format;
+		if ((pixelFlags & DDPF_FOURCC) != 0)
+		{
+			switch (fourCC)
+			{
+				case FOURCC_DXT1:
+					format = (pixelFlags & DDPF_ALPHAPIXELS) != 0 ? TextureFormat.COMPRESSED_RGBA_DXT1 : TextureFormat.COMPRESSED_RGB_DXT1;
+					break;
+				case FOURCC_DXT3:
+					format = TextureFormat.COMPRESSED_RGBA_DXT3;
+					break;
+				case FOURCC_DXT5:
+					format = TextureFormat.COMPRESSED_RGBA_DXT5;
+					break;
+				default:
+					throw new GraphicsException("\""+name+"\": unsupported DDS compression type 0x"+Integer.toHexString(fourCC)+".");
+			}
+		}
+		else if ((pixelFlags & DDPF_RGB) != 0
+			&& buffer.getInt(88) == 32
+			&& buffer.getInt(92) == 0x00ff0000
+			&& buffer.getInt(96) == 0x0000ff00
+			&& buffer.getInt(100) == 0x000000ff)
+		{
+			format = TextureFormat.RGBA;
+		}
+		else
+			throw new GraphicsException("\""+name+"\": only DXT1/3/5 or 32-bit BGRA DDS textures are supported.");
+
+		ByteBuffer[] levels = new ByteBuffer[mipmapCount];
+		int offset = DDS_HEADER_SIZE;
+		for (int i = 0; i < mipmapCount; i++)
+		{
+			int size = getLevelSize(format, Math.max(1, width >> i), Math.max(1, height >> i));
+			levels[i] = slice(name, buffer, offset, size);
+			offset += size;
+		}
+
+		return new OGLTextureFile(format, width, height, levels);
+	}
+
+	// Parses a mapped KTX file.
+	private static OGLTextureFile readKTX(String name, ByteBuffer buffer)
+	{
+		if (buffer.capacity() < KTX_HEADER_SIZE || !isKTX(buffer))
+			throw new GraphicsException("\""+name+"\" is not a KTX file.");
+
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.getInt(12) != KTX_ENDIAN_REF)
+			buffer.order(ByteOrder.BIG_ENDIAN);
+
+		int glType = buffer.getInt(16);
+		int glFormat = buffer.getInt(24);
+		int glInternalFormat = buffer.getInt(28);
+		int width = buffer.getInt(36);
+		int height = buffer.getInt(40);
+		int depth = buffer.getInt(44);
+		int arrayElements = buffer.getInt(48);
+		int faces = buffer.getInt(52);
+		int mipmapCount = Math.max(1, buffer.getInt(56));
+		int keyValueBytes = buffer.getInt(60);
+
+		if (height == 0 || depth != 0 || arrayElements != 0 || faces != 1)
+			throw new GraphicsException("\""+name+"\": only single-image 2D KTX textures are supported.");
+
+		TextureFormat format = null;
+		if (glType == 0 && glFormat == 0)
+		{
+			for (TextureFormat tf : TextureFormat.values())
+				if (tf.isCompressed() && tf.glid == glInternalFormat)
+					format = tf;
+		}
+		else if (glType == GL2.GL_UNSIGNED_BYTE && glFormat == GL2.GL_BGRA)
+		{
+			format = TextureFormat.RGBA;
+		}
+
+		if (format == null)
+			throw new GraphicsException("\""+name+"\": only S3TC-compressed or BGRA KTX textures are supported.");
+
+		HashMap<String, String> keyValues = new HashMap<String, String>(2);
+		int kvOffset = KTX_HEADER_SIZE;
+		int kvEnd = KTX_HEADER_SIZE + keyValueBytes;
+		if (kvEnd > buffer.capacity())
+			throw new GraphicsException("\""+name+"\": file is truncated.");
+		while (kvOffset + 4 <= kvEnd)
+		{
+			int kvSize = buffer.getInt(kvOffset);
+			kvOffset += 4;
+			if (kvSize < 0 || kvOffset + kvSize > kvEnd)
+				throw new GraphicsException("\""+name+"\": bad key/value data.");
+			byte[] kv = new byte[kvSize];
+			for (int i = 0; i < kvSize; i++)
+				kv[i] = buffer.get(kvOffset + i);
+			int split = 0;
+			while (split < kvSize && kv[split] != 0)
+				split++;
+			if (split < kvSize)
+			{
+				// value may or may not be null-terminated.
+				int valueEnd = kvSize;
+				if (valueEnd > split + 1 && kv[valueEnd - 1] == 0)
+					valueEnd--;
+				keyValues.put(new String(kv, 0, split, UTF8), new String(kv, split + 1, valueEnd - split - 1, UTF8));
+			}
+			kvOffset += (kvSize + 3) & ~3;
+		}
+
+		ByteBuffer[] levels = new ByteBuffer[mipmapCount];
+		int offset = kvEnd;
+		for (int i = 0; i < mipmapCount; i++)
+		{
+			if (offset + 4 > buffer.capacity())
+				throw new GraphicsException("\""+name+"\": file is truncated.");
+			int size = buffer.getInt(offset);
+			offset += 4;
+			levels[i] = slice(name, buffer, offset, size);
+			// mip padding.
+			offset += (size + 3) & ~3;
+		}
+
+		OGLTextureFile out = new OGLTextureFile(format, width, height, levels);
+		out.keyValues = keyValues;
+		return out;
+	}
+
+	// Returns the expected size of a level.
+	private static int getLevelSize(TextureFormat format, int width, int height)
+	{
+		if (format.isCompressed())
+			return OGLTextureCompressor.getCompressedSize(format, width, height);
+		else
+			return width * height * 4;
+	}
+
+	// Returns a view of a region of the mapped file.
+	private static ByteBuffer slice(String name, ByteBuffer buffer, int offset, int size)
+	{
+		if (size < 0 || offset < 0)
+			throw new GraphicsException("\""+name+"\": bad image size.");
+		// long, so that a corrupt size cannot overflow past the check.
+		if ((long)offset + size > buffer.capacity())
+			throw new GraphicsException("\""+name+"\": file is truncated.");
+		ByteBuffer out = buffer.duplicate();
+		out.position(offset);
+		out.limit(offset + size);
+		return out.slice();
+	}
+
+	/**
+	 * Returns the texture format of this texture's data.
+	 * If this is not compressed, the data is BGRA.
+	 */
+	public TextureFormat getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * Returns the width of the largest level in texels.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Returns the height of the largest level in texels.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Returns the amount of mipmap levels in this texture.
+	 */
+	public int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	/**
+	 * Returns the width of a mipmap level in texels.
+	 * @param level the mipmap level.
+	 */
+	public int getLevelWidth(int level)
+	{
+		return Math.max(1, width >> level);
+	}
+
+	/**
+	 * Returns the height of a mipmap level in texels.
+	 * @param level the mipmap level.
+	 */
+	public int getLevelHeight(int level)
+	{
+		return Math.max(1, height >> level);
+	}
+
+	/**
+	 * Returns the data for a mipmap level.
+	 * This is a direct view into the mapped file - do not change its contents.
+	 * @param level the mipmap level.
+	 */
+	public ByteBuffer getLevelData(int level)
+	{
+		return levels[level];
+	}
+
+	/**
+	 * Returns a key/value metadata value.
+	 * Only KTX files carry metadata.
+	 * @param key the key.
+	 * @return the corresponding value, or null if no value.
+	 */
+	public String getKeyValue(String key)
+	{
+		return keyValues.get(key);
+	}
+
+	/**
+	 * Sets a key/value metadata value, written out by {@link #writeKTX(OutputStream)}.
+	 * @param key the key.
+	 * @param value the value.
+	 */
+	public void setKeyValue(String key, String value)
+	{
+		keyValues.put(key, value);
+	}
+
+	/**
+	 * Writes this texture out as a KTX file, including its key/value metadata.
+	 * The level buffers' positions are not changed.
+	 * @param out the output stream to write to.
+	 * @throws IOException if the stream could not be written to.
+	 */
+	public void writeKTX(OutputStream out) throws IOException
+	{
+		ByteBuffer kvData = getKeyValueData();
+
+		ByteBuffer header = ByteBuffer.allocate(KTX_HEADER_SIZE);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		header.put(KTX_IDENTIFIER);
+		header.putInt(KTX_ENDIAN_REF);
+		header.putInt(format.isCompressed() ? 0 : GL2.GL_UNSIGNED_BYTE);
+		header.putInt(1);
+		header.putInt(format.isCompressed() ? 0 : GL2.GL_BGRA);
+		header.putInt(format.glid);
+		header.putInt(format == TextureFormat.COMPRESSED_RGB_DXT1 ? GL2.GL_RGB : GL2.GL_RGBA);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(0);
+		header.putInt(0);
+		header.putInt(1);
+		header.putInt(levels.length);
+		header.putInt(kvData.capacity());
+		out.write(header.array());
+		out.write(kvData.array());
+
+		byte[] chunk = new byte[8192];
+		byte[] sizeBytes = new byte[4];
+		for (int i = 0; i < levels.length; i++)
+		{
+			ByteBuffer level = levels[i].duplicate();
+			int size = level.remaining();
+			ByteBuffer.wrap(sizeBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(size);
+			out.write(sizeBytes);
+			while (level.hasRemaining())
+			{
+				int len = Math.min(chunk.length, level.remaining());
+				level.get(chunk, 0, len);
+				out.write(chunk, 0, len);
+			}
+			for (int p = size; (p & 3) != 0; p++)
+				out.write(0);
+		}
+	}
+
+	// Builds the KTX key/value block.
+	private ByteBuffer getKeyValueData()
+	{
+		int size = 0;
+		byte[][] pairs = new byte[keyValues.size()][];
+		int n = 0;
+		Iterator<String> it = keyValues.keyIterator();
+		while (it.hasNext())
+		{
+			String key = it.next();
+			byte[] k = key.getBytes(UTF8);
+			byte[] v = keyValues.get(key).getBytes(UTF8);
+			byte[] pair = new byte[k.length + v.length + 2];
+			System.arraycopy(k, 0, pair, 0, k.length);
+			System.arraycopy(v, 0, pair, k.length + 1, v.length);
+			pairs[n++] = pair;
+			size += 4 + ((pair.length + 3) & ~3);
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(size);
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < n; i++)
+		{
+			out.putInt(pairs[i].length);
+			out.put(pairs[i]);
+			for (int p = pairs[i].length; (p & 3) != 0; p++)
+				out.put((byte)0);
+		}
+		return out;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "OGLTextureFile " + format + " " + width + "x" + height + ", " + levels.length + " level(s)";
+	}
+
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2014, 2015 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import com.jogamp.opengl.*;
+
+/**
+ * An encapsulation of a timer query object for OpenGL.
+ * A timer query either measures the GPU time taken by the commands between 
+ * {@link OGLGraphics#startTimerQuery(OGLTimerQuery)} and {@link OGLGraphics#endTimerQuery()} (<code>GL_TIME_ELAPSED</code>),
+ * or records the GPU clock when the commands before {@link OGLGraphics#setTimestamp(OGLTimerQuery)} finish (<code>GL_TIMESTAMP</code>).
+ * @author Matthew Tropiano
+ */
+public class OGLTimerQuery extends OGLObject
+{
+	/** Result holder. */
+	private long[] glResult;
+	
+	/**
+	 * Creates a new Timer Query object handle.
+	 * @param g the graphics context to use.
+	 */
+	OGLTimerQuery(OGLGraphics g)
+	{
+		super(g);
+		glResult = new long[1];
+	}
+
+	@Override
+	protected int allocate(OGLGraphics g)
+	{
+		glStateNum = new int[1];
+		g.clearError();
+		g.getGL().glGenQueries(1, glStateNum, 0);
+		g.getError();
+		return glStateNum[0];
+	}
+
+	@Override
+	protected boolean free(OGLGraphics g)
+	{
+		glStateNum[0] = getGLId();
+		g.clearError();
+		g.getGL().glDeleteQueries(1,glStateNum,0);
+		g.getError();
+		return true;
+	}
+	
+	/**
+	 * Returns true if this query's results are available, false otherwise.
+	 * This never blocks.
+	 * @param g the graphics context to use.
+	 */
+	public boolean isReady(OGLGraphics g)
+	{
+		g.getGL().glGetQueryObjectiv(getGLId(), GL2.GL_QUERY_RESULT_AVAILABLE, glStateNum, 0);
+		return glStateNum[0] == GL.GL_TRUE;
+	}
+
+	/**
+	 * Gets the result of this query in nanoseconds: either the elapsed time,
+	 * or the GPU timestamp, depending on how it was issued.
+	 * Blocks until the result is available, unless {@link OGLTimerQuery#isReady(OGLGraphics)} returns true.
+	 * @param g the graphics context to use.
+	 */
+	public long getNanos(OGLGraphics g)
+	{
+		g.getGL().glGetQueryObjectui64v(getGLId(), GL2.GL_QUERY_RESULT, glResult, 0);
+		return glResult[0];
+	}
+
+	@Override
+	OGLResourceRegistry.Type getResourceType()
+	{
+		return OGLResourceRegistry.Type.QUERY;
+	}
+
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2014, 2015 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+/**
+ * A ring of GPU timestamp query pairs for measuring the GPU time of a repeated section 
+ * of commands (for instance, one node's drawing each frame) without ever stalling.
+ * <p>
+ * Each call to {@link #start(OGLGraphics)} and {@link #end(OGLGraphics)} issues timestamps
+ * into the next slot in the ring. Results are read back only when the driver reports them 
+ * available, which is usually a few frames later, so {@link #getElapsedNanos()} lags behind 
+ * the current frame by about that many frames. If a slot comes around again before its result
+ * is available, the old result is dropped instead of waiting for it.
+ * <p>
+ * Timestamps nest, so rings can measure sections within sections.
+ * @author Matthew Tropiano
+ */
+public class OGLTimerQueryRing
+{
+	/** Default number of frames that results can lag behind. */
+	public static final int DEFAULT_LATENCY = 3;
+
+	/** Start timestamp queries. */
+	private OGLTimerQuery[] startQueries;
+	/** End timestamp queries. */
+	private OGLTimerQuery[] endQueries;
+	/** Frame that each slot was issued on. */
+	private long[] issuedFrame;
+	/** Is each slot waiting on a result? */
+	private boolean[] pending;
+	/** Next slot to issue into. */
+	private int next;
+
+	/** Last resolved elapsed time. */
+	private long elapsedNanos;
+	/** Frame of the last resolved elapsed time. */
+	private long resolvedFrame;
+	/** Number of results dropped for not being ready in time. */
+	private int droppedCount;
+
+	/**
+	 * Creates a new ring with the default latency.
+	 */
+	public OGLTimerQueryRing()
+	{
+		this(DEFAULT_LATENCY);
+	}
+
+	/**
+	 * Creates a new ring.
+	 * Queries are allocated on first use.
+	 * @param latency the number of frames that results can lag behind before being dropped.
+	 */
+	public OGLTimerQueryRing(int latency)
+	{
+		int slots = Math.max(1, latency) + 1;
+		this.startQueries = new OGLTimerQuery[slots];
+		this.endQueries = new OGLTimerQuery[slots];
+		this.issuedFrame = new long[slots];
+		this.pending = new boolean[slots];
+		this.next = 0;
+		this.elapsedNanos = -1L;
+		this.resolvedFrame = -1L;
+		this.droppedCount = 0;
+	}
+
+	/**
+	 * Reads back any results that have become available, then 
+	 * issues the starting timestamp for the next slot.
+	 * @param g the graphics context to use.
+	 */
+	public void start(OGLGraphics g)
+	{
+		poll(g);
+		if (startQueries[next] == null)
+		{
+			startQueries[next] = g.createTimerQuery();
+			endQueries[next] = g.createTimerQuery();
+		}
+		if (pending[next])
+		{
+			pending[next] = false;
+			droppedCount++;
+		}
+		g.setTimestamp(startQueries[next]);
+	}
+
+	/**
+	 * Issues the ending timestamp for the current slot and advances the ring.
+	 * @param g the graphics context to use.
+	 */
+	public void end(OGLGraphics g)
+	{
+		g.setTimestamp(endQueries[next]);
+		pending[next] = true;
+		issuedFrame[next] = g.currentFrame();
+		next = (next + 1) % pending.length;
+	}
+
+	/**
+	 * Reads back any results that have become available, oldest first.
+	 * This never blocks.
+	 * @param g the graphics context to use.
+	 */
+	public void poll(OGLGraphics g)
+	{
+		for (int i = 0; i < pending.length; i++)
+		{
+			int slot = (next + i) % pending.length;
+			if (!pending[slot])
+				continue;
+			// later slots will not be ready if this one isn't.
+			if (!endQueries[slot].isReady(g))
+				break;
+			elapsedNanos = endQueries[slot].getNanos(g) - startQueries[slot].getNanos(g);
+			resolvedFrame = issuedFrame[slot];
+			pending[slot] = false;
+		}
+	}
+
+	/**
+	 * Returns the most recently resolved GPU time in nanoseconds, or -1 if nothing has resolved yet.
+	 */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the frame (see {@link OGLGraphics#currentFrame()}) that the most recently resolved 
+	 * GPU time was measured on, or -1 if nothing has resolved yet.
+	 */
+	public long getResolvedFrame()
+	{
+		return resolvedFrame;
+	}
+
+	/**
+	 * Returns the number of results dropped for not being available before their slot was reused.
+	 * If this keeps going up, the ring needs more latency.
+	 */
+	public int getDroppedCount()
+	{
+		return droppedCount;
+	}
+
+	/**
+	 * Destroys all of this ring's queries.
+	 * The ring can still be used afterward - queries are reallocated on next use.
+	 * @param g the graphics context to use.
+	 */
+	public void destroy(OGLGraphics g)
+	{
+		for (int i = 0; i < pending.length; i++)
+		{
+			if (startQueries[i] != null)
+			{
+				startQueries[i].destroy(g);
+				endQueries[i].destroy(g);
+				startQueries[i] = null;
+				endQueries[i] = null;
+			}
+			pending[i] = false;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A lock-free triple buffer for handing objects from one writer thread to one reader thread.
+ * The writer fills its buffer and publishes it; the reader always gets the latest published buffer.
+ * Neither side ever waits for the other, and a buffer is never written while the reader holds it.
+ * <p>
+ * The writer owns one buffer, the reader owns one, and the third sits in the middle.
+ * Publishing swaps the writer's buffer with the middle one; reading swaps the reader's buffer
+ * with the middle one if it was published since the last read.
+ * <p>
+ * Buffers are reused: after a publish, the writer gets a buffer with stale contents.
+ * @param <T> the buffer type.
+ * @author Matthew Tropiano
+ */
+public class OGLTripleBuffer<T>
+{
+	/** Bit set on the middle index if it holds a buffer the reader has not seen. */
+	private static final int FRESH = 4;
+	/** Index mask. */
+	private static final int INDEX_MASK = 3;
+
+	/** The buffers. */
+	private Object[] buffers;
+	/** Index of the middle buffer, plus the fresh bit. */
+	private AtomicInteger middle;
+	/** Index of the writer's buffer. Only touched by the writer. */
+	private int writeIndex;
+	/** Index of the reader's buffer. Only touched by the reader. */
+	private int readIndex;
+	/** Has anything been published? */
+	private volatile boolean published;
+
+	/**
+	 * Creates a new triple buffer.
+	 * @param a the first buffer.
+	 * @param b the second buffer.
+	 * @param c the third buffer.
+	 */
+	public OGLTripleBuffer(T a, T b, T c)
+	{
+		this.buffers = new Object[]{a, b, c};
+		this.writeIndex = 0;
+		this.middle = new AtomicInteger(1);
+		this.readIndex = 2;
+		this.published = false;
+	}
+
+	/**
+	 * Returns the writer's current buffer. Only the writer thread may call this.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getWriteBuffer()
+	{
+		return (T)buffers[writeIndex];
+	}
+
+	/**
+	 * Publishes the writer's current buffer, and gives the writer a new one to fill.
+	 * Only the writer thread may call this.
+	 * @return the writer's new buffer.
+	 */
+	public T publish()
+	{
+		writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+		published = true;
+		return getWriteBuffer();
+	}
+
+	/**
+	 * Returns the latest published buffer. Only the reader thread may call this.
+	 * The buffer stays valid until the next call.
+	 * @return the latest buffer, or null if nothing has been published yet.
+	 */
+	@SuppressWarnings("unchecked")
+	public T read()
+	{
+		if (!published)
+			return null;
+		if ((middle.get() & FRESH) != 0)
+			readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+		return (T)buffers[readIndex];
+	}
+
+	/**
+	 * Returns if a buffer was published since the last {@link #read()}.
+	 */
+	public boolean isFresh()
+	{
+		return (middle.get() & FRESH) != 0;
+	}
+
+}
@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed-timestep update loop on its own thread, decoupled from rendering.
+ * <p>
+ * The update thread advances state with an {@link OGLStateUpdater} at a fixed rate,
+ * independent of the frame rate. After each batch of steps, it publishes a {@link Snapshot}
+ * of the last two states through an {@link OGLTripleBuffer}, so the render thread can
+ * read the latest complete snapshot at any time without either thread waiting on the other.
+ * <p>
+ * The render thread draws the snapshot blended between its previous and current states
+ * by {@link #getAlpha(Snapshot)}, which gives smooth motion at any frame rate
+ * at the cost of up to one step of latency.
+ * <p>
+ * If updates fall behind (say, after a long pause), at most {@link #getMaxStepsPerWake()} steps
+ * are run at once and the rest are dropped, so that the loop cannot fall further and further behind.
+ * @param <T> the state type.
+ * @author Matthew Tropiano
+ */
+public class OGLUpdateLoop<T>
+{
+	/** Default maximum number of steps run back-to-back. */
+	public static final int DEFAULT_MAX_STEPS_PER_WAKE = 5;
+
+	/** The updater. */
+	private OGLStateUpdater<T> updater;
+	/** Step length in nanoseconds. */
+	private long stepNanos;
+	/** Step length in seconds. */
+	private double stepSeconds;
+	/** Maximum steps run back-to-back. */
+	private volatile int maxStepsPerWake;
+
+	/** Snapshots. */
+	private OGLTripleBuffer<Snapshot<T>> snapshots;
+	/** State being advanced. Only touched by the update thread. */
+	private T current;
+	/** State before the last step. Only touched by the update thread. */
+	private T previous;
+
+	/** Update thread, or null if not running. */
+	private volatile Thread thread;
+	/** Is the thread supposed to keep running? */
+	private volatile boolean running;
+	/** Steps run. */
+	private volatile long tick;
+	/** Steps dropped. */
+	private volatile long droppedSteps;
+
+	/**
+	 * Creates a new update loop. The starting state is a fresh one from {@link OGLStateUpdater#createState()}.
+	 * @param updater the state updater.
+	 * @param updatesPerSecond the number of steps per second.
+	 * @throws IllegalArgumentException if updatesPerSecond is not positive.
+	 */
+	public OGLUpdateLoop(OGLStateUpdater<T> updater, double updatesPerSecond)
+	{
+		if (updatesPerSecond <= 0.0)
+			throw new IllegalArgumentException("Update rate must be positive.");
+		this.updater = updater;
+		this.stepNanos = Math.max(1L, Math.round(1000000000.0 / updatesPerSecond));
+		this.stepSeconds = stepNanos / 1000000000.0;
+		this.maxStepsPerWake = DEFAULT_MAX_STEPS_PER_WAKE;
+		this.snapshots = new OGLTripleBuffer<Snapshot<T>>(
+			new Snapshot<T>(updater.createState(), updater.createState()),
+			new Snapshot<T>(updater.createState(), updater.createState()),
+			new Snapshot<T>(updater.createState(), updater.createState())
+		);
+		this.current = updater.createState();
+		this.previous = updater.createState();
+		this.thread = null;
+		this.running = false;
+		this.tick = 0L;
+		this.droppedSteps = 0L;
+	}
+
+	/**
+	 * Returns the state that the update thread advances.
+	 * It may only be changed before the loop is first started.
+	 */
+	public T getInitialState()
+	{
+		return current;
+	}
+
+	/**
+	 * Starts the update thread. Does nothing if already running.
+	 */
+	public synchronized void start()
+	{
+		if (thread != null)
+			return;
+		running = true;
+		thread = new Thread("OGLUpdateLoop")
+		{
+			@Override
+			public void run()
+			{
+				try {
+					loop();
+				} finally {
+					running = false;
+					// if the loop died, let start() make a new thread. Not locked: stop() joins while holding the lock.
+					if (thread == this)
+						thread = null;
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the update thread and waits for the step in progress, if any, to finish.
+	 * Does nothing if not running.
+	 */
+	public synchronized void stop()
+	{
+		Thread t = thread;
+		if (t == null)
+			return;
+		running = false;
+		LockSupport.unpark(t);
+		boolean interrupted = false;
+		while (t.isAlive())
+		{
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		thread = null;
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Returns if the update thread is running.
+	 */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+	// The update loop.
+	private void loop()
+	{
+		long next = System.nanoTime();
+		if (tick == 0L)
+		{
+			updater.copyState(current, previous);
+			publish(next);
+		}
+
+		while (running)
+		{
+			long remaining;
+			while (running && (remaining = next - System.nanoTime()) > 0L)
+				LockSupport.parkNanos(remaining);
+			if (!running)
+				break;
+
+			long now = System.nanoTime();
+			int steps = 0;
+			int max = maxStepsPerWake;
+			while (next <= now && steps < max)
+			{
+				updater.copyState(current, previous);
+				updater.update(current, tick, stepSeconds);
+				tick++;
+				next += stepNanos;
+				steps++;
+			}
+			if (next <= now)
+			{
+				long dropped = (now - next) / stepNanos + 1;
+				droppedSteps += dropped;
+				next += dropped * stepNanos;
+			}
+			// the current state is the one due at the last step's end.
+			publish(next - stepNanos);
+		}
+	}
+
+	// Publishes a snapshot of the last two states.
+	private void publish(long timeNanos)
+	{
+		Snapshot<T> snapshot = snapshots.getWriteBuffer();
+		updater.copyState(previous, snapshot.previous);
+		updater.copyState(current, snapshot.current);
+		snapshot.tick = tick;
+		snapshot.timeNanos = timeNanos;
+		snapshot.stepNanos = stepNanos;
+		snapshots.publish();
+	}
+
+	/**
+	 * Returns the latest complete snapshot. Only one thread (the render thread) may call this.
+	 * The snapshot stays valid until the next call.
+	 * @return the latest snapshot, or null if the loop has not been started yet.
+	 */
+	public Snapshot<T> getSnapshot()
+	{
+		return snapshots.read();
+	}
+
+	/**
+	 * Returns how far to blend from a snapshot's previous state to its current state for the current time:
+	 * 0 is the previous state, 1 is the current state.
+	 * @param snapshot the snapshot.
+	 * @return the blend amount, from 0 to 1.
+	 */
+	public double getAlpha(Snapshot<T> snapshot)
+	{
+		return snapshot.getAlpha(System.nanoTime());
+	}
+
+	/**
+	 * Returns the step length in seconds.
+	 */
+	public double getStepSeconds()
+	{
+		return stepSeconds;
+	}
+
+	/**
+	 * Returns the number of steps run.
+	 */
+	public long getTick()
+	{
+		return tick;
+	}
+
+	/**
+	 * Returns the number of steps dropped because updates fell behind.
+	 */
+	public long getDroppedSteps()
+	{
+		return droppedSteps;
+	}
+
+	/**
+	 * Sets the maximum number of steps run back-to-back before the rest are dropped.
+	 * Default is {@value #DEFAULT_MAX_STEPS_PER_WAKE}.
+	 */
+	public void setMaxStepsPerWake(int steps)
+	{
+		maxStepsPerWake = Math.max(1, steps);
+	}
+
+	/**
+	 * Returns the maximum number of steps run back-to-back before the rest are dropped.
+	 */
+	public int getMaxStepsPerWake()
+	{
+		return maxStepsPerWake;
+	}
+
+	/**
+	 * The two latest states published by an update loop.
+	 * @param <T> the state type.
+	 */
+	public static class Snapshot<T>
+	{
+		/** State before the last step. */
+		private T previous;
+		/** State after the last step. */
+		private T current;
+		/** Steps run when this was published. */
+		private long tick;
+		/** Time the current state was due. */
+		private long timeNanos;
+		/** Step length. */
+		private long stepNanos;
+
+		private Snapshot(T previous, T current)
+		{
+			this.previous = previous;
+			this.current = current;
+		}
+
+		/**
+		 * Returns the state before the last step. Must not be changed.
+		 */
+		public T getPrevious()
+		{
+			return previous;
+		}
+
+		/**
+		 * Returns the state after the last step. Must not be changed.
+		 */
+		public T getCurrent()
+		{
+			return current;
+		}
+
+		/**
+		 * Returns the number of steps run when this was published.
+		 */
+		public long getTick()
+		{
+			return tick;
+		}
+
+		/**
+		 * Returns the {@link System#nanoTime()} at which the current state was due.
+		 */
+		public long getTimeNanos()
+		{
+			return timeNanos;
+		}
+
+		/**
+		 * Returns how far to blend from the previous state to the current state at a point in time:
+		 * 0 is the previous state, 1 is the current state.
+		 * @param nanoTime the time, from {@link System#nanoTime()}.
+		 * @return the blend amount, from 0 to 1.
+		 */
+		public double getAlpha(long nanoTime)
+		{
+			if (tick == 0L)
+				return 1.0;
+			double alpha = (double)(nanoTime - timeNanos) / stepNanos;
+			return alpha < 0.0 ? 0.0 : (alpha > 1.0 ? 1.0 : alpha);
+		}
+	}
+
+}
@@ -16,8 +16,8 @@ import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLEventListener;
 
 import com.blackrook.commons.Common;
-import com.blackrook.commons.Ticker;
 import com.blackrook.ogl.OGLDisplay;
+import com.blackrook.ogl.OGLFrameScheduler;
 import com.blackrook.ogl.OGLProfile;
 import com.blackrook.ogl.OGLSystem;
 import com.blackrook.ogl.input.NEWTInputAdapter;
@@ -59,8 +59,8 @@ public class OGLNEWTWindow implements OGLDisplay, GLEventListener
 	private OGLSystem system;
 	/** Should the JVM quit if the window is closed? */
 	private boolean quitOnClose;
-	/** Redraw ticker. */
-	private RedrawTicker redrawTicker;
+	/** Redraw scheduler. */
+	private OGLFrameScheduler frameScheduler;
 
 	/**
 	 * Creates a new OGLNEWTWindow using default dimensions (640x480).
@@ -341,13 +341,10 @@ public class OGLNEWTWindow implements OGLDisplay, GLEventListener
 	 */
 	public void startAutoRedraw(int fps)
 	{
-		if (redrawTicker == null)
-		{
-			redrawTicker = new RedrawTicker(fps);
-			redrawTicker.start();
-		}
-		else
-			redrawTicker.setUpdatesPerSecond(fps);
+		if (frameScheduler == null)
+			frameScheduler = new OGLFrameScheduler(this);
+		frameScheduler.setTargetRate(fps);
+		frameScheduler.start();
 	}
 
 	/**
@@ -355,22 +352,16 @@ public class OGLNEWTWindow implements OGLDisplay, GLEventListener
 	 */
 	public void stopAutoRedraw()
 	{
-		redrawTicker.stop();
-		redrawTicker = null;
+		if (frameScheduler != null)
+			frameScheduler.stop();
 	}
 
-	/** Local redraw ticker. */
-	private class RedrawTicker extends Ticker
+	/**
+	 * Returns the scheduler used for auto-redraw, or null if auto-redraw was never started.
+	 * Its late-frame policy and spin threshold can be changed, and its pacing statistics read.
+	 */
+	public OGLFrameScheduler getFrameScheduler()
 	{
-		public RedrawTicker(int updatesPerSecond)
-		{
-			super("OGLNEWTWindow RedrawTicker", updatesPerSecond);
-		}
-	
-		@Override
-		public void doTick(long tick)
-		{
-			display();
-		}
+		return frameScheduler;
 	}
 }
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.display;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLEventListener;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+
+import com.blackrook.commons.Common;
+import com.blackrook.ogl.OGLDisplay;
+import com.blackrook.ogl.OGLFrameScheduler;
+import com.blackrook.ogl.OGLProfile;
+import com.blackrook.ogl.OGLSystem;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A display with no window, for rendering on machines with no screen, such as headless servers.
+ * Frames are rendered on demand into an offscreen surface (an FBO, or a pbuffer where FBOs
+ * are unavailable) on the thread that calls {@link #display()}, and read back into a reused
+ * direct buffer after each frame, so that no memory is allocated per frame.
+ * <p>
+ * Works with any OpenGL implementation that JOGL can create an offscreen drawable on,
+ * including Mesa's software renderers.
+ * @author Matthew Tropiano
+ */
+public class OGLOffscreenDisplay implements OGLDisplay, GLEventListener
+{
+	/** The offscreen drawable. */
+	private GLOffscreenAutoDrawable drawable;
+	/** OpenGL System. */
+	private OGLSystem system;
+	/** Redraw scheduler. */
+	private OGLFrameScheduler frameScheduler;
+
+	/** Are frames read back after rendering? */
+	private boolean readbackEnabled;
+	/** Pixel data of the last frame read back. */
+	private ByteBuffer pixelData;
+	/** Width of the last frame read back. */
+	private int pixelWidth;
+	/** Height of the last frame read back. */
+	private int pixelHeight;
+	/** Number of frames read back. */
+	private long readbackCount;
+
+	/**
+	 * Creates a new offscreen display using default capabilities.
+	 * @param width the width of the surface in pixels.
+	 * @param height the height of the surface in pixels.
+	 * @throws GraphicsException if the offscreen surface could not be created.
+	 */
+	public OGLOffscreenDisplay(int width, int height)
+	{
+		this(new OGLProfile(), width, height);
+	}
+
+	/**
+	 * Creates a new offscreen display.
+	 * The capabilities are copied, and set to be offscreen, single buffered, and FBO-backed
+	 * (JOGL falls back to a pbuffer if FBOs are unavailable).
+	 * @param caps OGLProfile of the surface.
+	 * @param width the width of the surface in pixels.
+	 * @param height the height of the surface in pixels.
+	 * @throws GraphicsException if the offscreen surface could not be created.
+	 */
+	public OGLOffscreenDisplay(OGLProfile caps, int width, int height)
+	{
+		GLCapabilities offscreenCaps = (GLCapabilities)caps.cloneMutable();
+		offscreenCaps.setOnscreen(false);
+		offscreenCaps.setFBO(true);
+		offscreenCaps.setPBuffer(true);
+		// no swap needed: the frame is read back from the buffer it was drawn to.
+		offscreenCaps.setDoubleBuffered(false);
+
+		system = new OGLSystem();
+		readbackEnabled = true;
+		pixelData = null;
+		pixelWidth = 0;
+		pixelHeight = 0;
+		readbackCount = 0L;
+
+		try {
+			GLDrawableFactory factory = GLDrawableFactory.getFactory(offscreenCaps.getGLProfile());
+			drawable = factory.createOffscreenAutoDrawable(null, offscreenCaps, null, width, height);
+		} catch (RuntimeException e) {
+			throw new GraphicsException("Could not create offscreen surface: " + e.getMessage());
+		}
+		if (drawable == null)
+			throw new GraphicsException("Could not create offscreen surface.");
+
+		drawable.addGLEventListener(this);
+	}
+
+	@Override
+	public OGLSystem getSystem()
+	{
+		return system;
+	}
+
+	/**
+	 * Renders a frame, on the calling thread, and reads it back if readback is enabled.
+	 */
+	@Override
+	public synchronized void display()
+	{
+		drawable.display();
+	}
+
+	/**
+	 * Renders a frame and returns its pixel data.
+	 * Readback is done even if it is disabled.
+	 * @return the pixel data of the frame. See {@link #getPixelData()}.
+	 */
+	public synchronized ByteBuffer renderFrame()
+	{
+		boolean prev = readbackEnabled;
+		readbackEnabled = true;
+		try {
+			drawable.display();
+		} finally {
+			readbackEnabled = prev;
+		}
+		return getPixelData();
+	}
+
+	/**
+	 * Renders a frame and returns it as an image.
+	 * Readback is done even if it is disabled.
+	 * @return a new image of the frame.
+	 */
+	public synchronized BufferedImage renderImage()
+	{
+		renderFrame();
+		return getImage();
+	}
+
+	@Override
+	public void init(GLAutoDrawable drawable)
+	{
+	}
+
+	@Override
+	public void display(GLAutoDrawable drawable)
+	{
+		system.display(drawable);
+		if (readbackEnabled)
+			readback(drawable);
+	}
+
+	@Override
+	public void dispose(GLAutoDrawable drawable)
+	{
+	}
+
+	@Override
+	public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height)
+	{
+		system.reshape(width, height);
+	}
+
+	// Reads the rendered frame into the pixel buffer.
+	private void readback(GLAutoDrawable drawable)
+	{
+		int width = drawable.getSurfaceWidth();
+		int height = drawable.getSurfaceHeight();
+		int bytes = width * height * 4;
+		if (pixelData == null || pixelData.capacity() < bytes)
+		{
+			pixelData = Common.allocDirectByteBuffer(bytes);
+			pixelData.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		GL gl = drawable.getGL();
+		// a node may have left its own frame buffer bound.
+		if (gl.hasBasicFBOSupport())
+			gl.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, gl.getDefaultReadFramebuffer());
+		gl.glPixelStorei(GL.GL_PACK_ALIGNMENT, 4);
+		pixelData.clear();
+		gl.glReadPixels(0, 0, width, height, GL2.GL_BGRA, GL.GL_UNSIGNED_BYTE, pixelData);
+		pixelData.limit(bytes);
+		pixelWidth = width;
+		pixelHeight = height;
+		readbackCount++;
+	}
+
+	/**
+	 * Returns the pixel data of the last frame read back, or null if no frame has been read back.
+	 * The data is BGRA bytes per pixel (ARGB integers in little-endian order), with the bottom row first,
+	 * like {@link com.blackrook.ogl.OGLGraphics#readFrameBuffer(java.nio.Buffer, int, int, int, int)}.
+	 * <p>
+	 * The buffer is reused, and is overwritten by the next frame read back.
+	 */
+	public synchronized ByteBuffer getPixelData()
+	{
+		if (pixelData == null)
+			return null;
+		ByteBuffer out = pixelData.duplicate();
+		out.order(ByteOrder.LITTLE_ENDIAN);
+		out.rewind();
+		return out;
+	}
+
+	/**
+	 * Returns the last frame read back as a new image, or null if no frame has been read back.
+	 */
+	public synchronized BufferedImage getImage()
+	{
+		if (pixelData == null)
+			return null;
+
+		IntBuffer ib = getPixelData().asIntBuffer();
+		int[] data = new int[pixelWidth * pixelHeight];
+		// flip: GL rows start at the bottom.
+		for (int y = 0; y < pixelHeight; y++)
+		{
+			ib.position((pixelHeight - 1 - y) * pixelWidth);
+			ib.get(data, y * pixelWidth, pixelWidth);
+		}
+		BufferedImage out = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB);
+		out.setRGB(0, 0, pixelWidth, pixelHeight, data, 0, pixelWidth);
+		return out;
+	}
+
+	/**
+	 * Sets if each frame is read back after it is rendered by {@link #display()}.
+	 * Turning this off skips the readback cost for frames whose pixels are not needed.
+	 * Default is true.
+	 */
+	public synchronized void setReadbackEnabled(boolean enabled)
+	{
+		readbackEnabled = enabled;
+	}
+
+	/**
+	 * Returns if each frame is read back after it is rendered by {@link #display()}.
+	 */
+	public boolean isReadbackEnabled()
+	{
+		return readbackEnabled;
+	}
+
+	/**
+	 * Returns the number of frames read back.
+	 */
+	public synchronized long getReadbackCount()
+	{
+		return readbackCount;
+	}
+
+	/**
+	 * Resizes the offscreen surface.
+	 * @param width the new width in pixels.
+	 * @param height the new height in pixels.
+	 */
+	public synchronized void setSize(int width, int height)
+	{
+		drawable.setSurfaceSize(width, height);
+	}
+
+	/**
+	 * Returns the width of the offscreen surface in pixels.
+	 */
+	public int getWidth()
+	{
+		return drawable.getSurfaceWidth();
+	}
+
+	/**
+	 * Returns the height of the offscreen surface in pixels.
+	 */
+	public int getHeight()
+	{
+		return drawable.getSurfaceHeight();
+	}
+
+	/**
+	 * Returns the underlying JOGL drawable.
+	 */
+	public GLOffscreenAutoDrawable getDrawable()
+	{
+		return drawable;
+	}
+
+	/**
+	 * Destroys the offscreen surface and its context.
+	 */
+	@Override
+	public void destroy()
+	{
+		// not under the lock: the render thread may be waiting on it.
+		stopAutoRedraw();
+		synchronized (this)
+		{
+			drawable.destroy();
+		}
+	}
+
+	/**
+	 * Always returns 0, as this has no place on screen.
+	 */
+	@Override
+	public int getCanvasAbsoluteX()
+	{
+		return 0;
+	}
+
+	/**
+	 * Always returns 0, as this has no place on screen.
+	 */
+	@Override
+	public int getCanvasAbsoluteY()
+	{
+		return 0;
+	}
+
+	/**
+	 * Always returns false.
+	 */
+	@Override
+	public boolean isFullscreen()
+	{
+		return false;
+	}
+
+	/**
+	 * Returns the estimated frames per second in this display
+	 * based on the time to render the visible nodes.
+	 */
+	@Override
+	public float getFPS()
+	{
+		double n = (system.getFrameRenderTimeNanos() / 1000000d);
+		return n > 0.0 ? (float)(1000 / n) : 0f;
+	}
+
+	/**
+	 * Starts an auto-redraw thread that attempts to render at a steady
+	 * framerate by calling {@link #display()} at a specific rate. If already running,
+	 * changes the framerate.
+	 * If set to 0, this calls {@link #display()} as many times as it can.
+	 * @param fps the target rate in frames per second, or 0 for full bore.
+	 * @see #stopAutoRedraw()
+	 */
+	@Override
+	public void startAutoRedraw(int fps)
+	{
+		if (frameScheduler == null)
+			frameScheduler = new OGLFrameScheduler(this);
+		frameScheduler.setTargetRate(fps);
+		frameScheduler.start();
+	}
+
+	/**
+	 * Stops any auto-redraw started by {@link #startAutoRedraw(int)}.
+	 */
+	@Override
+	public void stopAutoRedraw()
+	{
+		if (frameScheduler != null)
+			frameScheduler.stop();
+	}
+
+	/**
+	 * Returns the scheduler used for auto-redraw, or null if auto-redraw was never started.
+	 * Its late-frame policy and spin threshold can be changed, and its pacing statistics read.
+	 */
+	public OGLFrameScheduler getFrameScheduler()
+	{
+		return frameScheduler;
+	}
+}
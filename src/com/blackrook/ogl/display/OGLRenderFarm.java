@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.display;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLRunnable;
+
+import com.blackrook.commons.Common;
+import com.blackrook.commons.hash.HashMap;
+import com.blackrook.ogl.OGLCanvasNode;
+import com.blackrook.ogl.OGLGraphics;
+import com.blackrook.ogl.OGLObject;
+import com.blackrook.ogl.OGLProfile;
+import com.blackrook.ogl.OGLSystem;
+import com.blackrook.ogl.OGLTask;
+import com.blackrook.ogl.exception.GraphicsException;
+
+/**
+ * A pool of offscreen contexts that render jobs in parallel.
+ * Each worker is a thread that owns one {@link OGLOffscreenDisplay}, and with it, its own
+ * {@link OGLSystem} and {@link OGLGraphics}. Jobs are taken from one shared queue
+ * by whichever worker is free, so a slow job does not hold up the others.
+ * <p>
+ * A job's node tree is attached to the worker's system for exactly one frame.
+ * GPU objects belong to one context, so nodes that want to keep textures, buffers,
+ * or shaders across jobs should put them in the worker's {@link ContextCache}, fetched with
+ * {@link #getContextCache()} while rendering, rather than in the node itself.
+ * The cache is destroyed with its context on {@link #shutdown()}.
+ * @author Matthew Tropiano
+ */
+public class OGLRenderFarm
+{
+	/** Types of job output. */
+	public static enum Output
+	{
+		/** A copy of the pixel data, as returned by {@link OGLOffscreenDisplay#getPixelData()}. */
+		PIXELS,
+		/** A {@link BufferedImage}. */
+		IMAGE;
+	}
+
+	/** Queue item that tells a worker to stop. */
+	private static final FutureTask<Result> STOP = new FutureTask<Result>(new Callable<Result>()
+	{
+		@Override
+		public Result call() throws Exception
+		{
+			return null;
+		}
+	});
+
+	/** The workers. */
+	private Worker[] workers;
+	/** Pending jobs. */
+	private LinkedBlockingQueue<FutureTask<Result>> queue;
+	/** Has shutdown been requested? */
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates a new render farm with one worker per available processor and default capabilities.
+	 * @param width the starting width of each worker's surface in pixels.
+	 * @param height the starting height of each worker's surface in pixels.
+	 * @throws GraphicsException if an offscreen surface could not be created.
+	 */
+	public OGLRenderFarm(int width, int height)
+	{
+		this(Runtime.getRuntime().availableProcessors(), new OGLProfile(), width, height);
+	}
+
+	/**
+	 * Creates a new render farm.
+	 * @param workerCount the number of workers (and contexts).
+	 * @param caps OGLProfile of each worker's surface.
+	 * @param width the starting width of each worker's surface in pixels.
+	 * @param height the starting height of each worker's surface in pixels.
+	 * @throws IllegalArgumentException if workerCount is less than 1.
+	 * @throws GraphicsException if an offscreen surface could not be created.
+	 */
+	public OGLRenderFarm(int workerCount, OGLProfile caps, int width, int height)
+	{
+		if (workerCount < 1)
+			throw new IllegalArgumentException("Worker count must be at least 1.");
+
+		queue = new LinkedBlockingQueue<FutureTask<Result>>();
+		shutdown = false;
+		workers = new Worker[workerCount];
+		try {
+			for (int i = 0; i < workerCount; i++)
+				workers[i] = new Worker(i, new OGLOffscreenDisplay(caps, width, height));
+		} catch (GraphicsException e) {
+			for (Worker w : workers)
+				if (w != null)
+					w.display.destroy();
+			throw e;
+		}
+		for (Worker w : workers)
+			w.start();
+	}
+
+	/**
+	 * Returns the context cache of the farm worker running on the current thread,
+	 * or null if the current thread is not a farm worker.
+	 * Nodes call this during {@link OGLCanvasNode#display(OGLGraphics)} to find their cached objects.
+	 */
+	public static ContextCache getContextCache()
+	{
+		Thread t = Thread.currentThread();
+		return t instanceof Worker ? ((Worker)t).cache : null;
+	}
+
+	/**
+	 * Submits a job for rendering.
+	 * @param job the job to render.
+	 * @return a future for the result of the job.
+	 * @throws GraphicsException if this farm was shut down.
+	 */
+	public Future<Result> submit(final Job job)
+	{
+		FutureTask<Result> out = new FutureTask<Result>(new Callable<Result>()
+		{
+			@Override
+			public Result call() throws Exception
+			{
+				return ((Worker)Thread.currentThread()).render(job);
+			}
+		});
+		// no job may be queued after the stop markers.
+		synchronized (queue)
+		{
+			if (shutdown)
+				throw new GraphicsException("Render farm was shut down.");
+			queue.add(out);
+		}
+		return out;
+	}
+
+	/**
+	 * Returns the number of jobs waiting for a worker.
+	 */
+	public int getQueueSize()
+	{
+		return queue.size();
+	}
+
+	/**
+	 * Returns the number of workers.
+	 */
+	public int getWorkerCount()
+	{
+		return workers.length;
+	}
+
+	/**
+	 * Returns the number of jobs a worker has finished, including ones that failed.
+	 * @param index the worker index.
+	 */
+	public long getWorkerJobCount(int index)
+	{
+		return workers[index].jobCount;
+	}
+
+	/**
+	 * Returns the total time a worker has spent rendering jobs, in nanoseconds.
+	 * @param index the worker index.
+	 */
+	public long getWorkerBusyNanos(int index)
+	{
+		return workers[index].busyNanos;
+	}
+
+	/**
+	 * Returns a worker's throughput in jobs per second, over the time it has been running.
+	 * @param index the worker index.
+	 */
+	public double getWorkerThroughput(int index)
+	{
+		Worker w = workers[index];
+		long elapsed = (w.stopNanos != 0L ? w.stopNanos : System.nanoTime()) - w.startNanos;
+		return elapsed > 0L ? w.jobCount / (elapsed / 1000000000.0) : 0.0;
+	}
+
+	/**
+	 * Returns a worker's utilization: the fraction of the time it has been running that it spent rendering.
+	 * @param index the worker index.
+	 */
+	public double getWorkerUtilization(int index)
+	{
+		Worker w = workers[index];
+		long elapsed = (w.stopNanos != 0L ? w.stopNanos : System.nanoTime()) - w.startNanos;
+		return elapsed > 0L ? Math.min(1.0, (double)w.busyNanos / elapsed) : 0.0;
+	}
+
+	/**
+	 * Returns the throughput of all workers combined, in jobs per second.
+	 */
+	public double getThroughput()
+	{
+		double out = 0.0;
+		for (int i = 0; i < workers.length; i++)
+			out += getWorkerThroughput(i);
+		return out;
+	}
+
+	/**
+	 * Stops accepting jobs. Workers finish the jobs already submitted,
+	 * then destroy their caches and contexts and stop.
+	 */
+	public void shutdown()
+	{
+		synchronized (queue)
+		{
+			if (shutdown)
+				return;
+			shutdown = true;
+			for (int i = 0; i < workers.length; i++)
+				queue.add(STOP);
+		}
+	}
+
+	/**
+	 * Waits for all workers to stop after {@link #shutdown()}.
+	 * @param timeout the maximum time to wait.
+	 * @param unit the unit of the timeout.
+	 * @return true if all workers stopped, false if the timeout elapsed first.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting.
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long end = System.nanoTime() + unit.toNanos(timeout);
+		for (Worker w : workers)
+		{
+			long millis = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+			if (millis <= 0L)
+				return !w.isAlive();
+			w.join(millis);
+			if (w.isAlive())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A render job: a node tree to draw for one frame, and what to produce from it.
+	 */
+	public static class Job
+	{
+		/** Root node. */
+		private OGLCanvasNode node;
+		/** Output width. */
+		private int width;
+		/** Output height. */
+		private int height;
+		/** Output type. */
+		private Output output;
+
+		/**
+		 * Creates a new job.
+		 * @param node the root node to render. It is attached to a worker's system for one frame.
+		 * @param width the output width in pixels.
+		 * @param height the output height in pixels.
+		 * @param output the type of output to produce.
+		 */
+		public Job(OGLCanvasNode node, int width, int height, Output output)
+		{
+			if (width < 1 || height < 1)
+				throw new IllegalArgumentException("Output dimensions must be at least 1.");
+			this.node = node;
+			this.width = width;
+			this.height = height;
+			this.output = output;
+		}
+
+		/**
+		 * Returns the root node.
+		 */
+		public OGLCanvasNode getNode()
+		{
+			return node;
+		}
+
+		/**
+		 * Returns the output width in pixels.
+		 */
+		public int getWidth()
+		{
+			return width;
+		}
+
+		/**
+		 * Returns the output height in pixels.
+		 */
+		public int getHeight()
+		{
+			return height;
+		}
+
+		/**
+		 * Returns the type of output to produce.
+		 */
+		public Output getOutput()
+		{
+			return output;
+		}
+	}
+
+	/**
+	 * The result of a render job.
+	 */
+	public static class Result
+	{
+		/** Output width. */
+		private int width;
+		/** Output height. */
+		private int height;
+		/** Pixel data, if requested. */
+		private ByteBuffer pixelData;
+		/** Image, if requested. */
+		private BufferedImage image;
+		/** Index of the worker that rendered this. */
+		private int workerIndex;
+		/** Time taken to render and read back, in nanoseconds. */
+		private long renderNanos;
+
+		private Result() {}
+
+		/**
+		 * Returns the output width in pixels.
+		 */
+		public int getWidth()
+		{
+			return width;
+		}
+
+		/**
+		 * Returns the output height in pixels.
+		 */
+		public int getHeight()
+		{
+			return height;
+		}
+
+		/**
+		 * Returns the pixel data, or null if the job did not ask for {@link Output#PIXELS}.
+		 * The buffer is owned by this result.
+		 */
+		public ByteBuffer getPixelData()
+		{
+			return pixelData;
+		}
+
+		/**
+		 * Returns the image, or null if the job did not ask for {@link Output#IMAGE}.
+		 */
+		public BufferedImage getImage()
+		{
+			return image;
+		}
+
+		/**
+		 * Returns the index of the worker that rendered this.
+		 */
+		public int getWorkerIndex()
+		{
+			return workerIndex;
+		}
+
+		/**
+		 * Returns the time taken to render and read back the frame, in nanoseconds.
+		 */
+		public long getRenderNanos()
+		{
+			return renderNanos;
+		}
+	}
+
+	/**
+	 * GPU objects kept by one worker's context between jobs.
+	 * Only the worker that owns a cache may touch it, during a render.
+	 */
+	public static class ContextCache
+	{
+		/** Graphics context of the owning worker. */
+		private OGLGraphics graphics;
+		/** Objects by key. */
+		private HashMap<String, OGLObject> objects;
+
+		private ContextCache()
+		{
+			this.graphics = null;
+			this.objects = new HashMap<String, OGLObject>();
+		}
+
+		/**
+		 * Returns the graphics context that this cache's objects belong to.
+		 * It is set before the nodes of the worker's first job are displayed,
+		 * so it is never null while rendering.
+		 */
+		public OGLGraphics getGraphics()
+		{
+			return graphics;
+		}
+
+		/**
+		 * Gets a cached object.
+		 * @param key the object key.
+		 * @return the object, or null if no object is cached under that key.
+		 */
+		public OGLObject get(String key)
+		{
+			return objects.get(key);
+		}
+
+		/**
+		 * Caches an object, replacing (but not destroying) any object already under the same key.
+		 * @param key the object key.
+		 * @param object the object to cache. It must belong to this cache's context.
+		 */
+		public void put(String key, OGLObject object)
+		{
+			objects.put(key, object);
+		}
+
+		/**
+		 * Removes and destroys a cached object.
+		 * @param key the object key.
+		 * @return true if an object was removed, false if not.
+		 */
+		public boolean destroy(String key)
+		{
+			OGLObject object = objects.removeUsingKey(key);
+			if (object == null)
+				return false;
+			object.destroy(graphics);
+			return true;
+		}
+
+		/**
+		 * Returns the number of cached objects.
+		 */
+		public int size()
+		{
+			return objects.size();
+		}
+
+		// Destroys all cached objects.
+		private void destroyAll()
+		{
+			Iterator<OGLObject> it = objects.valueIterator();
+			while (it.hasNext())
+				it.next().destroy(graphics);
+			objects.clear();
+		}
+	}
+
+	/**
+	 * A worker thread that owns one context.
+	 */
+	private class Worker extends Thread
+	{
+		/** Worker index. */
+		private int index;
+		/** The display. */
+		private OGLOffscreenDisplay display;
+		/** Per-context object cache. */
+		private ContextCache cache;
+		/** Jobs finished. */
+		private volatile long jobCount;
+		/** Time spent rendering. */
+		private volatile long busyNanos;
+		/** Time started. */
+		private volatile long startNanos;
+		/** Time stopped, or 0 if running. */
+		private volatile long stopNanos;
+
+		private Worker(int index, OGLOffscreenDisplay display)
+		{
+			super("OGLRenderFarm Worker " + index);
+			setDaemon(true);
+			this.index = index;
+			this.display = display;
+			this.cache = new ContextCache();
+			this.jobCount = 0L;
+			this.busyNanos = 0L;
+			this.startNanos = System.nanoTime();
+			this.stopNanos = 0L;
+			// readback is requested per job.
+			display.setReadbackEnabled(false);
+		}
+
+		@Override
+		public void run()
+		{
+			startNanos = System.nanoTime();
+			try {
+				while (true)
+				{
+					FutureTask<Result> task;
+					try {
+						task = queue.take();
+					} catch (InterruptedException e) {
+						continue;
+					}
+					if (task == STOP)
+						break;
+					task.run();
+				}
+			} finally {
+				destroyContext();
+				stopNanos = System.nanoTime();
+			}
+		}
+
+		// Renders one job.
+		private Result render(Job job)
+		{
+			long start = System.nanoTime();
+			OGLSystem system = display.getSystem();
+			Result out = new Result();
+			try {
+				if (display.getWidth() != job.width || display.getHeight() != job.height)
+					display.setSize(job.width, job.height);
+				// the context is made on the first frame: catch it before the job's nodes run.
+				if (cache.graphics == null)
+				{
+					system.getTaskQueue().submit(new OGLTask<Void>()
+					{
+						@Override
+						public Void run(OGLGraphics g)
+						{
+							cache.graphics = g;
+							return null;
+						}
+					});
+				}
+				system.addNode(job.node);
+				ByteBuffer pixels;
+				try {
+					pixels = display.renderFrame();
+				} finally {
+					system.removeNode(job.node);
+				}
+
+				out.width = job.width;
+				out.height = job.height;
+				out.workerIndex = index;
+				switch (job.output)
+				{
+					case PIXELS:
+					{
+						out.pixelData = Common.allocDirectByteBuffer(pixels.remaining());
+						out.pixelData.order(ByteOrder.LITTLE_ENDIAN);
+						out.pixelData.put(pixels);
+						out.pixelData.rewind();
+						break;
+					}
+					case IMAGE:
+						out.image = display.getImage();
+						break;
+				}
+			} finally {
+				long nanos = System.nanoTime() - start;
+				out.renderNanos = nanos;
+				busyNanos += nanos;
+				jobCount++;
+			}
+			return out;
+		}
+
+		// Destroys the cache, then the context; the cache needs the context current.
+		private void destroyContext()
+		{
+			try {
+				if (cache.graphics != null && cache.size() > 0)
+				{
+					display.getDrawable().invoke(true, new GLRunnable()
+					{
+						@Override
+						public boolean run(GLAutoDrawable drawable)
+						{
+							cache.destroyAll();
+							return true;
+						}
+					});
+				}
+			} finally {
+				display.destroy();
+			}
+		}
+	}
+
+}
@@ -25,8 +25,8 @@ import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.awt.GLCanvas;
 import javax.swing.JFrame;
 
-import com.blackrook.commons.Ticker;
 import com.blackrook.ogl.OGLDisplay;
+import com.blackrook.ogl.OGLFrameScheduler;
 import com.blackrook.ogl.OGLProfile;
 import com.blackrook.ogl.OGLSystem;
 import com.blackrook.ogl.input.SwingInputAdapter;
@@ -76,8 +76,8 @@ public class OGLSwingWindow extends JFrame implements OGLDisplay, GLEventListene
 	/** Should the JVM quit if the window is closed? */
 	private boolean quitOnClose;
 
-	/** Redraw ticker. */
-	private RedrawTicker redrawTicker;
+	/** Redraw scheduler. */
+	private OGLFrameScheduler frameScheduler;
 	
 	/**
 	 * Creates a new OGLSwingWindow using default dimensions (640x480).
@@ -393,13 +393,10 @@ public class OGLSwingWindow extends JFrame implements OGLDisplay, GLEventListene
 	 */
 	public void startAutoRedraw(int fps)
 	{
-		if (redrawTicker == null)
-		{
-			redrawTicker = new RedrawTicker(fps);
-			redrawTicker.start();
-		}
-		else
-			redrawTicker.setUpdatesPerSecond(fps);
+		if (frameScheduler == null)
+			frameScheduler = new OGLFrameScheduler(this);
+		frameScheduler.setTargetRate(fps);
+		frameScheduler.start();
 	}
 	
 	/**
@@ -407,23 +404,17 @@ public class OGLSwingWindow extends JFrame implements OGLDisplay, GLEventListene
 	 */
 	public void stopAutoRedraw()
 	{
-		redrawTicker.stop();
-		redrawTicker = null;
+		if (frameScheduler != null)
+			frameScheduler.stop();
 	}
 
-	/** Local redraw ticker. */
-	private class RedrawTicker extends Ticker
+	/**
+	 * Returns the scheduler used for auto-redraw, or null if auto-redraw was never started.
+	 * Its late-frame policy and spin threshold can be changed, and its pacing statistics read.
+	 */
+	public OGLFrameScheduler getFrameScheduler()
 	{
-		public RedrawTicker(int updatesPerSecond)
-		{
-			super("OGLSwingWindow RedrawTicker", updatesPerSecond);
-		}
-
-		@Override
-		public void doTick(long tick)
-		{
-			display();
-		}
+		return frameScheduler;
 	}
 	
 }
@@ -18,11 +18,13 @@ import com.jogamp.opengl.GL2;
  */
 public enum RenderbufferFormat
 {
-	RGB(GL2.GL_RGB),
-	RGBA(GL2.GL_RGBA),
-	DEPTH(GL2.GL_DEPTH_COMPONENT),
-	STENCIL(GL2.GL_STENCIL_INDEX);
+	RGB(GL2.GL_RGB, 3),
+	RGBA(GL2.GL_RGBA, 4),
+	DEPTH(GL2.GL_DEPTH_COMPONENT, 4),
+	STENCIL(GL2.GL_STENCIL_INDEX, 1);
 	
 	public final int glid;
-	private RenderbufferFormat(int id) {glid = id;}
+	/** Estimated bytes per pixel. */
+	public final float sizeFactor;
+	private RenderbufferFormat(int id, float factor) {glid = id; sizeFactor = factor;}
 }
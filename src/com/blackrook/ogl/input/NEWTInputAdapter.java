@@ -24,8 +24,8 @@ import com.jogamp.newt.event.MouseListener;
  */
 public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputConstants
 {
-	/** Reference to target system. */
-	private OGLSystem system;
+	/** Queue of the target system. */
+	private OGLInputQueue queue;
 	/** Previous mouse coordinates, X. */
 	private int prevMouseX;
 	/** Previous mouse coordinates, Y. */
@@ -36,7 +36,7 @@ public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputCon
 	 */
 	public NEWTInputAdapter(OGLSystem system)
 	{
-		this.system = system;
+		this.queue = system.getInputQueue();
 		prevMouseX = -1;
 		prevMouseY = -1;
 	}
@@ -55,19 +55,19 @@ public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputCon
 		prevMouseX = x;
 		prevMouseY = y;
 		
-		system.sendMouseMovement(dx, x, dy, y);
+		queue.postMouseMovement(dx, x, dy, y);
 	}
 	
 	@Override
 	public void mouseEntered(MouseEvent e)
 	{
-		system.sendMouseEntered();
+		queue.postMouseEntered();
 	}
 
 	@Override
 	public void mouseExited(MouseEvent e)
 	{
-		system.sendMouseExited();
+		queue.postMouseExited();
 	}
 
 	@Override
@@ -94,13 +94,13 @@ public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputCon
 		switch (b)
 		{
 			case MouseEvent.BUTTON1:
-				system.sendMousePress(MOUSE_LEFT);
+				queue.postMousePress(MOUSE_LEFT);
 				break;
 			case MouseEvent.BUTTON2:
-				system.sendMousePress(MOUSE_CENTER);
+				queue.postMousePress(MOUSE_CENTER);
 				break;
 			case MouseEvent.BUTTON3:
-				system.sendMousePress(MOUSE_RIGHT);
+				queue.postMousePress(MOUSE_RIGHT);
 				break;
 		}
 	}
@@ -112,34 +112,34 @@ public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputCon
 		switch (b)
 		{
 			case MouseEvent.BUTTON1:
-				system.sendMouseRelease(MOUSE_LEFT);
+				queue.postMouseRelease(MOUSE_LEFT);
 				break;
 			case MouseEvent.BUTTON2:
-				system.sendMouseRelease(MOUSE_CENTER);
+				queue.postMouseRelease(MOUSE_CENTER);
 				break;
 			case MouseEvent.BUTTON3:
-				system.sendMouseRelease(MOUSE_RIGHT);
+				queue.postMouseRelease(MOUSE_RIGHT);
 				break;
 			case MouseEvent.BUTTON4:
-				system.sendMouseRelease(MOUSE_BACK);
+				queue.postMouseRelease(MOUSE_BACK);
 				break;
 			case MouseEvent.BUTTON5:
-				system.sendMouseRelease(MOUSE_FORWARD);
+				queue.postMouseRelease(MOUSE_FORWARD);
 				break;
 			case MouseEvent.BUTTON6:
-				system.sendMouseRelease(MOUSE_BUTTON6);
+				queue.postMouseRelease(MOUSE_BUTTON6);
 				break;
 			case MouseEvent.BUTTON7:
-				system.sendMouseRelease(MOUSE_BUTTON7);
+				queue.postMouseRelease(MOUSE_BUTTON7);
 				break;
 			case MouseEvent.BUTTON8:
-				system.sendMouseRelease(MOUSE_BUTTON8);
+				queue.postMouseRelease(MOUSE_BUTTON8);
 				break;
 			case MouseEvent.BUTTON9:
-				system.sendMouseRelease(MOUSE_BUTTON9);
+				queue.postMouseRelease(MOUSE_BUTTON9);
 				break;
 			default:
-				system.sendMouseRelease(MOUSE_UNDEFINED);
+				queue.postMouseRelease(MOUSE_UNDEFINED);
 				break;
 		}
 	}
@@ -147,21 +147,24 @@ public class NEWTInputAdapter implements MouseListener, KeyListener, OGLInputCon
 	@Override
 	public void mouseWheelMoved(MouseEvent event)
 	{
-		system.sendMouseWheel((int)event.getRotation()[1]);
+		queue.postMouseWheel((int)event.getRotation()[1]);
 	}
 
 	@Override
 	public void keyPressed(KeyEvent event)
 	{
 		// The input constants are equivalent to KEY_*, so, don't convert.
-		system.sendKeyPress(event.getKeyCode());
+		queue.postKeyPress(event.getKeyCode());
 	}
 
 	@Override
 	public void keyReleased(KeyEvent event)
 	{
+		// NEWT sends key repeats as release-press pairs: drop the release, so the key stays down.
+		if (event.isAutoRepeat())
+			return;
 		// The input constants are equivalent to KEY_*, so, don't convert.
-		system.sendKeyRelease(event.getKeyCode());
+		queue.postKeyRelease(event.getKeyCode());
 	}
 
 }
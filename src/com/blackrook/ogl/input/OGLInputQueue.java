@@ -0,0 +1,411 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.blackrook.ogl.OGLSystem;
+
+/**
+ * A lock-free queue of input events, from any number of input threads to one render thread.
+ * <p>
+ * Input adapters post events from their event threads; {@link OGLSystem} drains them at the
+ * start of each frame and sends them to its nodes, so that nodes only ever see input on
+ * the render thread, between frames.
+ * <p>
+ * Events are stored as primitives in a preallocated ring, so posting and draining do not allocate.
+ * Each slot has a sequence number that producers and the consumer use to hand it off
+ * without locks. If the ring is full, new events are dropped and counted.
+ * <p>
+ * When draining, runs of consecutive mouse movements are merged into one movement
+ * (changes are summed, the last position is kept), and runs of consecutive wheel movements
+ * are merged into one with the summed units.
+ * @author Matthew Tropiano
+ */
+public class OGLInputQueue
+{
+	/** Default capacity in events. */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/** Integers per event: type and four arguments. */
+	private static final int EVENT_WIDTH = 5;
+
+	/* ========= Event types ======= */
+	private static final int EVENT_MOUSE_MOVE = 1;
+	private static final int EVENT_MOUSE_ENTER = 2;
+	private static final int EVENT_MOUSE_EXIT = 3;
+	private static final int EVENT_MOUSE_PRESS = 4;
+	private static final int EVENT_MOUSE_RELEASE = 5;
+	private static final int EVENT_MOUSE_WHEEL = 6;
+	private static final int EVENT_KEY_PRESS = 7;
+	private static final int EVENT_KEY_RELEASE = 8;
+	private static final int EVENT_KEY_TYPED = 9;
+	private static final int EVENT_GAMEPAD_PRESS = 10;
+	private static final int EVENT_GAMEPAD_RELEASE = 11;
+	private static final int EVENT_GAMEPAD_AXIS = 12;
+	private static final int EVENT_GAMEPAD_AXIS_TAP = 13;
+	/* ============================= */
+
+	/** Capacity in events. */
+	private int capacity;
+	/** Index mask. */
+	private int mask;
+	/** Event data. */
+	private int[] data;
+	/** Slot sequence numbers. A slot is free to write at position p if its sequence is p, and readable if p + 1. */
+	private AtomicLongArray sequences;
+	/** Next position to write. */
+	private AtomicLong tail;
+	/** Next position to read. Only touched by the consumer. */
+	private long head;
+	/** Events dropped because the ring was full. */
+	private AtomicLong droppedCount;
+	/** Events merged into others. Only written by the consumer. */
+	private volatile long coalescedCount;
+
+	/** Event being read. Only touched by the consumer. */
+	private int[] event;
+
+	/**
+	 * Creates a new input queue with the default capacity.
+	 */
+	public OGLInputQueue()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a new input queue.
+	 * @param capacity the capacity in events. Rounded up to a power of two.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public OGLInputQueue(int capacity)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1.");
+		int c = 1;
+		while (c < capacity)
+			c <<= 1;
+		this.capacity = c;
+		this.mask = c - 1;
+		this.data = new int[c * EVENT_WIDTH];
+		this.sequences = new AtomicLongArray(c);
+		for (int i = 0; i < c; i++)
+			sequences.set(i, i);
+		this.tail = new AtomicLong(0L);
+		this.head = 0L;
+		this.droppedCount = new AtomicLong(0L);
+		this.coalescedCount = 0L;
+		this.event = new int[EVENT_WIDTH];
+	}
+
+	// Posts an event. Returns false if the ring was full.
+	private boolean post(int type, int a, int b, int c, int d)
+	{
+		long pos;
+		int slot;
+		while (true)
+		{
+			pos = tail.get();
+			slot = (int)(pos & mask);
+			long seq = sequences.get(slot);
+			if (seq == pos)
+			{
+				if (tail.compareAndSet(pos, pos + 1))
+					break;
+			}
+			else if (seq < pos)
+			{
+				// the consumer has not freed this slot yet: full.
+				droppedCount.incrementAndGet();
+				return false;
+			}
+		}
+		int i = slot * EVENT_WIDTH;
+		data[i] = type;
+		data[i + 1] = a;
+		data[i + 2] = b;
+		data[i + 3] = c;
+		data[i + 4] = d;
+		sequences.set(slot, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Posts a mouse movement.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMouseMovement(int, int, int, int)
+	 */
+	public boolean postMouseMovement(int changeX, int positionX, int changeY, int positionY)
+	{
+		return post(EVENT_MOUSE_MOVE, changeX, positionX, changeY, positionY);
+	}
+
+	/**
+	 * Posts the mouse entering the canvas.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMouseEntered()
+	 */
+	public boolean postMouseEntered()
+	{
+		return post(EVENT_MOUSE_ENTER, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Posts the mouse exiting the canvas.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMouseExited()
+	 */
+	public boolean postMouseExited()
+	{
+		return post(EVENT_MOUSE_EXIT, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a mouse button press.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMousePress(int)
+	 */
+	public boolean postMousePress(int mouseButton)
+	{
+		return post(EVENT_MOUSE_PRESS, mouseButton, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a mouse button release.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMouseRelease(int)
+	 */
+	public boolean postMouseRelease(int mouseButton)
+	{
+		return post(EVENT_MOUSE_RELEASE, mouseButton, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a mouse wheel movement.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendMouseWheel(int)
+	 */
+	public boolean postMouseWheel(int units)
+	{
+		return post(EVENT_MOUSE_WHEEL, units, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a key press.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendKeyPress(int)
+	 */
+	public boolean postKeyPress(int keyCode)
+	{
+		return post(EVENT_KEY_PRESS, keyCode, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a key release.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendKeyRelease(int)
+	 */
+	public boolean postKeyRelease(int keyCode)
+	{
+		return post(EVENT_KEY_RELEASE, keyCode, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a typed key.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendKeyTyped(int)
+	 */
+	public boolean postKeyTyped(int keyCode)
+	{
+		return post(EVENT_KEY_TYPED, keyCode, 0, 0, 0);
+	}
+
+	/**
+	 * Posts a gamepad button press.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendGamepadPress(int, int)
+	 */
+	public boolean postGamepadPress(int gamepadId, int gamepadButton)
+	{
+		return post(EVENT_GAMEPAD_PRESS, gamepadId, gamepadButton, 0, 0);
+	}
+
+	/**
+	 * Posts a gamepad button release.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendGamepadRelease(int, int)
+	 */
+	public boolean postGamepadRelease(int gamepadId, int gamepadButton)
+	{
+		return post(EVENT_GAMEPAD_RELEASE, gamepadId, gamepadButton, 0, 0);
+	}
+
+	/**
+	 * Posts a gamepad axis change.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendGamepadAxis(int, int, float)
+	 */
+	public boolean postGamepadAxis(int gamepadId, int gamepadAxisId, float value)
+	{
+		return post(EVENT_GAMEPAD_AXIS, gamepadId, gamepadAxisId, Float.floatToRawIntBits(value), 0);
+	}
+
+	/**
+	 * Posts a gamepad axis tap.
+	 * @return true if posted, false if the queue was full.
+	 * @see OGLSystem#sendGamepadAxisTap(int, int, boolean)
+	 */
+	public boolean postGamepadAxisTap(int gamepadId, int gamepadAxisId, boolean positive)
+	{
+		return post(EVENT_GAMEPAD_AXIS_TAP, gamepadId, gamepadAxisId, positive ? 1 : 0, 0);
+	}
+
+	// Returns the type of the next readable event, or 0 if none.
+	private int peekType()
+	{
+		int slot = (int)(head & mask);
+		if (sequences.get(slot) != head + 1)
+			return 0;
+		return data[slot * EVENT_WIDTH];
+	}
+
+	// Reads the next event into the event array and frees its slot. Returns false if none.
+	private boolean take(int[] out)
+	{
+		int slot = (int)(head & mask);
+		if (sequences.get(slot) != head + 1)
+			return false;
+		System.arraycopy(data, slot * EVENT_WIDTH, out, 0, EVENT_WIDTH);
+		sequences.set(slot, head + capacity);
+		head++;
+		return true;
+	}
+
+	/**
+	 * Sends all queued events to a system, in order. Only one thread may drain a queue.
+	 * At most one ring's worth of events is drained per call, so that input flooding in
+	 * during the drain cannot stall the caller.
+	 * @param system the system to send events to.
+	 * @return the number of events sent, after merging.
+	 */
+	public int drain(OGLSystem system)
+	{
+		int[] e = event;
+		int sent = 0;
+		long coalesced = 0L;
+		for (int n = 0; n < capacity && take(e); n++)
+		{
+			switch (e[0])
+			{
+				case EVENT_MOUSE_MOVE:
+				{
+					int dx = e[1], x = e[2], dy = e[3], y = e[4];
+					while (n < capacity - 1 && peekType() == EVENT_MOUSE_MOVE && take(e))
+					{
+						dx += e[1];
+						x = e[2];
+						dy += e[3];
+						y = e[4];
+						coalesced++;
+						n++;
+					}
+					system.sendMouseMovement(dx, x, dy, y);
+					break;
+				}
+				case EVENT_MOUSE_WHEEL:
+				{
+					int units = e[1];
+					while (n < capacity - 1 && peekType() == EVENT_MOUSE_WHEEL && take(e))
+					{
+						units += e[1];
+						coalesced++;
+						n++;
+					}
+					if (units != 0)
+						system.sendMouseWheel(units);
+					break;
+				}
+				case EVENT_MOUSE_ENTER:
+					system.sendMouseEntered();
+					break;
+				case EVENT_MOUSE_EXIT:
+					system.sendMouseExited();
+					break;
+				case EVENT_MOUSE_PRESS:
+					system.sendMousePress(e[1]);
+					break;
+				case EVENT_MOUSE_RELEASE:
+					system.sendMouseRelease(e[1]);
+					break;
+				case EVENT_KEY_PRESS:
+					system.sendKeyPress(e[1]);
+					break;
+				case EVENT_KEY_RELEASE:
+					system.sendKeyRelease(e[1]);
+					break;
+				case EVENT_KEY_TYPED:
+					system.sendKeyTyped(e[1]);
+					break;
+				case EVENT_GAMEPAD_PRESS:
+					system.sendGamepadPress(e[1], e[2]);
+					break;
+				case EVENT_GAMEPAD_RELEASE:
+					system.sendGamepadRelease(e[1], e[2]);
+					break;
+				case EVENT_GAMEPAD_AXIS:
+					system.sendGamepadAxis(e[1], e[2], Float.intBitsToFloat(e[3]));
+					break;
+				case EVENT_GAMEPAD_AXIS_TAP:
+					system.sendGamepadAxisTap(e[1], e[2], e[3] != 0);
+					break;
+			}
+			sent++;
+		}
+		if (coalesced > 0L)
+			coalescedCount += coalesced;
+		return sent;
+	}
+
+	/**
+	 * Returns the capacity of this queue in events.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the approximate number of queued events.
+	 */
+	public int size()
+	{
+		return (int)Math.max(0L, Math.min(capacity, tail.get() - head));
+	}
+
+	/**
+	 * Returns the number of events dropped because the queue was full.
+	 */
+	public long getDroppedCount()
+	{
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns the number of events merged into others while draining.
+	 */
+	public long getCoalescedCount()
+	{
+		return coalescedCount;
+	}
+
+}
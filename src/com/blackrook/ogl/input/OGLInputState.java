@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.input;
+
+import java.util.Arrays;
+
+import com.blackrook.ogl.OGLSystem;
+
+/**
+ * A snapshot of the input state, for nodes that would rather ask "is this key down?"
+ * than track state themselves from input events.
+ * <p>
+ * {@link OGLSystem} records every input event it sends into this, and takes a new snapshot
+ * once at the start of each frame, after queued input is sent. The snapshot does not change
+ * for the rest of the frame. It holds what is held down, what was pressed or released since
+ * the last snapshot, and how far the mouse and its wheel moved since the last snapshot.
+ * <p>
+ * A key pressed and released between two snapshots reads as pressed and released, but not down.
+ * Key repeats do not count as presses: a press of a key that is already down is not a new press,
+ * and {@link NEWTInputAdapter} and {@link SwingInputAdapter} drop the releases that some platforms
+ * send before each repeated press.
+ * <p>
+ * Nothing here allocates after construction. This is not thread-safe: events must be recorded,
+ * and the snapshot read, on the render thread (which is where {@link OGLInputQueue} sends them).
+ * @author Matthew Tropiano
+ */
+public class OGLInputState
+{
+	/** Number of key codes tracked (all key codes in {@link OGLInputConstants} are below this). */
+	public static final int KEY_COUNT = 65536;
+	/** Number of mouse buttons tracked. */
+	public static final int MOUSE_BUTTON_COUNT = 32;
+	/** Number of gamepads tracked. */
+	public static final int GAMEPAD_COUNT = 16;
+	/** Number of buttons tracked per gamepad. */
+	public static final int GAMEPAD_BUTTON_COUNT = 32;
+	/** Number of axes tracked per gamepad. */
+	public static final int GAMEPAD_AXIS_COUNT = 16;
+
+	/** State being recorded. */
+	private State live;
+	/** State of the current frame. */
+	private State current;
+	/** Number of snapshots taken. */
+	private long frame;
+
+	/**
+	 * Creates a new input state with nothing held down.
+	 */
+	public OGLInputState()
+	{
+		live = new State();
+		current = new State();
+		frame = 0L;
+	}
+
+	/**
+	 * Takes a new snapshot of the recorded state, and starts recording the next one.
+	 * Called by {@link OGLSystem} at the start of each frame.
+	 */
+	public void update()
+	{
+		State s = current;
+		current = live;
+		live = s;
+		live.carryFrom(current);
+		frame++;
+	}
+
+	/**
+	 * Records a key press.
+	 * @param keyCode the key code.
+	 */
+	public void recordKeyPress(int keyCode)
+	{
+		if (keyCode < 0 || keyCode >= KEY_COUNT)
+			return;
+		int word = keyCode >>> 6;
+		long bit = 1L << keyCode;
+		if ((live.keyDown[word] & bit) == 0L)
+		{
+			live.keyDown[word] |= bit;
+			live.keyPressed[word] |= bit;
+			live.markEdge(word);
+		}
+	}
+
+	/**
+	 * Records a key release.
+	 * @param keyCode the key code.
+	 */
+	public void recordKeyRelease(int keyCode)
+	{
+		if (keyCode < 0 || keyCode >= KEY_COUNT)
+			return;
+		int word = keyCode >>> 6;
+		long bit = 1L << keyCode;
+		if ((live.keyDown[word] & bit) != 0L)
+		{
+			live.keyDown[word] &= ~bit;
+			live.keyReleased[word] |= bit;
+			live.markEdge(word);
+		}
+	}
+
+	/**
+	 * Records a mouse button press.
+	 * @param mouseButton the mouse button.
+	 */
+	public void recordMousePress(int mouseButton)
+	{
+		if (mouseButton < 0 || mouseButton >= MOUSE_BUTTON_COUNT)
+			return;
+		int bit = 1 << mouseButton;
+		if ((live.mouseDown & bit) == 0)
+		{
+			live.mouseDown |= bit;
+			live.mousePressed |= bit;
+		}
+	}
+
+	/**
+	 * Records a mouse button release.
+	 * @param mouseButton the mouse button.
+	 */
+	public void recordMouseRelease(int mouseButton)
+	{
+		if (mouseButton < 0 || mouseButton >= MOUSE_BUTTON_COUNT)
+			return;
+		int bit = 1 << mouseButton;
+		if ((live.mouseDown & bit) != 0)
+		{
+			live.mouseDown &= ~bit;
+			live.mouseReleased |= bit;
+		}
+	}
+
+	/**
+	 * Records a mouse movement.
+	 * @param changeX the change in x.
+	 * @param positionX the new x position.
+	 * @param changeY the change in y.
+	 * @param positionY the new y position.
+	 */
+	public void recordMouseMove(int changeX, int positionX, int changeY, int positionY)
+	{
+		live.mouseX = positionX;
+		live.mouseY = positionY;
+		live.mouseDeltaX += changeX;
+		live.mouseDeltaY += changeY;
+	}
+
+	/**
+	 * Records a mouse wheel movement.
+	 * @param units the wheel units.
+	 */
+	public void recordMouseWheel(int units)
+	{
+		live.mouseWheel += units;
+	}
+
+	/**
+	 * Records a gamepad button press.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadButton the gamepad button.
+	 */
+	public void recordGamepadPress(int gamepadId, int gamepadButton)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT || gamepadButton < 0 || gamepadButton >= GAMEPAD_BUTTON_COUNT)
+			return;
+		int bit = 1 << gamepadButton;
+		if ((live.gamepadDown[gamepadId] & bit) == 0)
+		{
+			live.gamepadDown[gamepadId] |= bit;
+			live.gamepadPressed[gamepadId] |= bit;
+		}
+	}
+
+	/**
+	 * Records a gamepad button release.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadButton the gamepad button.
+	 */
+	public void recordGamepadRelease(int gamepadId, int gamepadButton)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT || gamepadButton < 0 || gamepadButton >= GAMEPAD_BUTTON_COUNT)
+			return;
+		int bit = 1 << gamepadButton;
+		if ((live.gamepadDown[gamepadId] & bit) != 0)
+		{
+			live.gamepadDown[gamepadId] &= ~bit;
+			live.gamepadReleased[gamepadId] |= bit;
+		}
+	}
+
+	/**
+	 * Records a gamepad axis change.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadAxisId the gamepad axis.
+	 * @param value the new axis value.
+	 */
+	public void recordGamepadAxis(int gamepadId, int gamepadAxisId, float value)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT || gamepadAxisId < 0 || gamepadAxisId >= GAMEPAD_AXIS_COUNT)
+			return;
+		live.gamepadAxes[gamepadId * GAMEPAD_AXIS_COUNT + gamepadAxisId] = value;
+	}
+
+	/**
+	 * Releases everything held down, as of the next snapshot, without recording releases.
+	 * Useful when the display loses focus and release events may never come.
+	 */
+	public void clear()
+	{
+		Arrays.fill(live.keyDown, 0L);
+		live.mouseDown = 0;
+		Arrays.fill(live.gamepadDown, 0);
+		Arrays.fill(live.gamepadAxes, 0f);
+	}
+
+	/**
+	 * Returns the number of snapshots taken (which is the number of frames started).
+	 */
+	public long getFrame()
+	{
+		return frame;
+	}
+
+	/**
+	 * Returns if a key is held down.
+	 * @param keyCode the key code (see {@link OGLInputConstants}).
+	 */
+	public boolean isKeyDown(int keyCode)
+	{
+		return testBit(current.keyDown, keyCode);
+	}
+
+	/**
+	 * Returns if a key was pressed since the last frame.
+	 * @param keyCode the key code (see {@link OGLInputConstants}).
+	 */
+	public boolean isKeyPressed(int keyCode)
+	{
+		return testBit(current.keyPressed, keyCode);
+	}
+
+	/**
+	 * Returns if a key was released since the last frame.
+	 * @param keyCode the key code (see {@link OGLInputConstants}).
+	 */
+	public boolean isKeyReleased(int keyCode)
+	{
+		return testBit(current.keyReleased, keyCode);
+	}
+
+	// Tests a bit in a key bitset.
+	private static boolean testBit(long[] bits, int keyCode)
+	{
+		if (keyCode < 0 || keyCode >= KEY_COUNT)
+			return false;
+		return (bits[keyCode >>> 6] & (1L << keyCode)) != 0L;
+	}
+
+	/**
+	 * Returns if a mouse button is held down.
+	 * @param mouseButton the mouse button (see {@link OGLInputConstants}).
+	 */
+	public boolean isMouseButtonDown(int mouseButton)
+	{
+		return testBit(current.mouseDown, mouseButton, MOUSE_BUTTON_COUNT);
+	}
+
+	/**
+	 * Returns if a mouse button was pressed since the last frame.
+	 * @param mouseButton the mouse button (see {@link OGLInputConstants}).
+	 */
+	public boolean isMouseButtonPressed(int mouseButton)
+	{
+		return testBit(current.mousePressed, mouseButton, MOUSE_BUTTON_COUNT);
+	}
+
+	/**
+	 * Returns if a mouse button was released since the last frame.
+	 * @param mouseButton the mouse button (see {@link OGLInputConstants}).
+	 */
+	public boolean isMouseButtonReleased(int mouseButton)
+	{
+		return testBit(current.mouseReleased, mouseButton, MOUSE_BUTTON_COUNT);
+	}
+
+	// Tests a bit in a button mask.
+	private static boolean testBit(int bits, int index, int count)
+	{
+		if (index < 0 || index >= count)
+			return false;
+		return (bits & (1 << index)) != 0;
+	}
+
+	/**
+	 * Returns the mouse x position.
+	 */
+	public int getMouseX()
+	{
+		return current.mouseX;
+	}
+
+	/**
+	 * Returns the mouse y position.
+	 */
+	public int getMouseY()
+	{
+		return current.mouseY;
+	}
+
+	/**
+	 * Returns how far the mouse moved in x since the last frame.
+	 */
+	public int getMouseDeltaX()
+	{
+		return current.mouseDeltaX;
+	}
+
+	/**
+	 * Returns how far the mouse moved in y since the last frame.
+	 */
+	public int getMouseDeltaY()
+	{
+		return current.mouseDeltaY;
+	}
+
+	/**
+	 * Returns how far the mouse wheel moved since the last frame, in wheel units.
+	 */
+	public int getMouseWheel()
+	{
+		return current.mouseWheel;
+	}
+
+	/**
+	 * Returns if a gamepad button is held down.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadButton the gamepad button (see {@link OGLInputConstants}).
+	 */
+	public boolean isGamepadButtonDown(int gamepadId, int gamepadButton)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT)
+			return false;
+		return testBit(current.gamepadDown[gamepadId], gamepadButton, GAMEPAD_BUTTON_COUNT);
+	}
+
+	/**
+	 * Returns if a gamepad button was pressed since the last frame.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadButton the gamepad button (see {@link OGLInputConstants}).
+	 */
+	public boolean isGamepadButtonPressed(int gamepadId, int gamepadButton)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT)
+			return false;
+		return testBit(current.gamepadPressed[gamepadId], gamepadButton, GAMEPAD_BUTTON_COUNT);
+	}
+
+	/**
+	 * Returns if a gamepad button was released since the last frame.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadButton the gamepad button (see {@link OGLInputConstants}).
+	 */
+	public boolean isGamepadButtonReleased(int gamepadId, int gamepadButton)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT)
+			return false;
+		return testBit(current.gamepadReleased[gamepadId], gamepadButton, GAMEPAD_BUTTON_COUNT);
+	}
+
+	/**
+	 * Returns the last value of a gamepad axis, or 0 if it has not moved.
+	 * @param gamepadId the id of the gamepad.
+	 * @param gamepadAxisId the gamepad axis (see {@link OGLInputConstants}).
+	 */
+	public float getGamepadAxis(int gamepadId, int gamepadAxisId)
+	{
+		if (gamepadId < 0 || gamepadId >= GAMEPAD_COUNT || gamepadAxisId < 0 || gamepadAxisId >= GAMEPAD_AXIS_COUNT)
+			return 0f;
+		return current.gamepadAxes[gamepadId * GAMEPAD_AXIS_COUNT + gamepadAxisId];
+	}
+
+	/**
+	 * One copy of the input state.
+	 */
+	private static class State
+	{
+		/** Keys held down. */
+		private long[] keyDown;
+		/** Keys pressed. */
+		private long[] keyPressed;
+		/** Keys released. */
+		private long[] keyReleased;
+		/** Lowest word with a pressed or released key, if any. */
+		private int edgeWordMin;
+		/** Highest word with a pressed or released key, if any. */
+		private int edgeWordMax;
+
+		/** Mouse buttons held down. */
+		private int mouseDown;
+		/** Mouse buttons pressed. */
+		private int mousePressed;
+		/** Mouse buttons released. */
+		private int mouseReleased;
+		/** Mouse x position. */
+		private int mouseX;
+		/** Mouse y position. */
+		private int mouseY;
+		/** Mouse x movement. */
+		private int mouseDeltaX;
+		/** Mouse y movement. */
+		private int mouseDeltaY;
+		/** Mouse wheel movement. */
+		private int mouseWheel;
+
+		/** Gamepad buttons held down, per gamepad. */
+		private int[] gamepadDown;
+		/** Gamepad buttons pressed, per gamepad. */
+		private int[] gamepadPressed;
+		/** Gamepad buttons released, per gamepad. */
+		private int[] gamepadReleased;
+		/** Gamepad axis values, by gamepad then axis. */
+		private float[] gamepadAxes;
+
+		private State()
+		{
+			keyDown = new long[KEY_COUNT >>> 6];
+			keyPressed = new long[KEY_COUNT >>> 6];
+			keyReleased = new long[KEY_COUNT >>> 6];
+			edgeWordMin = Integer.MAX_VALUE;
+			edgeWordMax = -1;
+			gamepadDown = new int[GAMEPAD_COUNT];
+			gamepadPressed = new int[GAMEPAD_COUNT];
+			gamepadReleased = new int[GAMEPAD_COUNT];
+			gamepadAxes = new float[GAMEPAD_COUNT * GAMEPAD_AXIS_COUNT];
+		}
+
+		// Widens the range of words with key edges.
+		private void markEdge(int word)
+		{
+			if (word < edgeWordMin)
+				edgeWordMin = word;
+			if (word > edgeWordMax)
+				edgeWordMax = word;
+		}
+
+		// Carries over what is held from another state, and clears the per-frame edges and movement.
+		private void carryFrom(State other)
+		{
+			System.arraycopy(other.keyDown, 0, keyDown, 0, keyDown.length);
+			if (edgeWordMax >= 0)
+			{
+				// only the touched words can be nonzero.
+				Arrays.fill(keyPressed, edgeWordMin, edgeWordMax + 1, 0L);
+				Arrays.fill(keyReleased, edgeWordMin, edgeWordMax + 1, 0L);
+				edgeWordMin = Integer.MAX_VALUE;
+				edgeWordMax = -1;
+			}
+
+			mouseDown = other.mouseDown;
+			mousePressed = 0;
+			mouseReleased = 0;
+			mouseX = other.mouseX;
+			mouseY = other.mouseY;
+			mouseDeltaX = 0;
+			mouseDeltaY = 0;
+			mouseWheel = 0;
+
+			System.arraycopy(other.gamepadDown, 0, gamepadDown, 0, GAMEPAD_COUNT);
+			Arrays.fill(gamepadPressed, 0);
+			Arrays.fill(gamepadReleased, 0);
+			System.arraycopy(other.gamepadAxes, 0, gamepadAxes, 0, gamepadAxes.length);
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2014 - 2016 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ *
+ * Contributors:
+ *     Matt Tropiano - initial API and implementation
+ *******************************************************************************/
+package com.blackrook.ogl.input;
+
+import com.blackrook.ogl.OGLCanvasNode;
+
+/**
+ * Implemented by {@link OGLCanvasNode}s that only want some kinds of input events.
+ * Nodes are only sent the event types in their mask, which saves calling them for
+ * events that they would ignore anyway. Nodes that do not implement this get every event.
+ * <p>
+ * The mask is read when the node is added to its parent. If it changes after that,
+ * the parent's input routing must be invalidated.
+ * @author Matthew Tropiano
+ */
+public interface OGLInputSubscriber
+{
+	/** Key presses. */
+	public static final int INPUT_KEY_PRESS = 1 << 0;
+	/** Key releases. */
+	public static final int INPUT_KEY_RELEASE = 1 << 1;
+	/** Typed keys. */
+	public static final int INPUT_KEY_TYPED = 1 << 2;
+	/** Mouse button presses. */
+	public static final int INPUT_MOUSE_PRESS = 1 << 3;
+	/** Mouse button releases. */
+	public static final int INPUT_MOUSE_RELEASE = 1 << 4;
+	/** Mouse wheel movement. */
+	public static final int INPUT_MOUSE_WHEEL = 1 << 5;
+	/** Mouse movement. */
+	public static final int INPUT_MOUSE_MOVE = 1 << 6;
+	/** Mouse entering and exiting the canvas. */
+	public static final int INPUT_MOUSE_ENTER_EXIT = 1 << 7;
+	/** Gamepad button presses. */
+	public static final int INPUT_GAMEPAD_PRESS = 1 << 8;
+	/** Gamepad button releases. */
+	public static final int INPUT_GAMEPAD_RELEASE = 1 << 9;
+	/** Gamepad axis changes. */
+	public static final int INPUT_GAMEPAD_AXIS = 1 << 10;
+	/** Gamepad axis taps. */
+	public static final int INPUT_GAMEPAD_AXIS_TAP = 1 << 11;
+
+	/** All key events. */
+	public static final int INPUT_KEYS = INPUT_KEY_PRESS | INPUT_KEY_RELEASE | INPUT_KEY_TYPED;
+	/** All mouse events. */
+	public static final int INPUT_MOUSE = INPUT_MOUSE_PRESS | INPUT_MOUSE_RELEASE | INPUT_MOUSE_WHEEL | INPUT_MOUSE_MOVE | INPUT_MOUSE_ENTER_EXIT;
+	/** All gamepad events. */
+	public static final int INPUT_GAMEPAD = INPUT_GAMEPAD_PRESS | INPUT_GAMEPAD_RELEASE | INPUT_GAMEPAD_AXIS | INPUT_GAMEPAD_AXIS_TAP;
+	/** All events. */
+	public static final int INPUT_ALL = INPUT_KEYS | INPUT_MOUSE | INPUT_GAMEPAD;
+	/** No events. */
+	public static final int INPUT_NONE = 0;
+
+	/**
+	 * Returns the input event types that this node wants, as a bitwise OR of <code>INPUT_*</code> constants.
+	 */
+	public int getInputEventMask();
+
+}
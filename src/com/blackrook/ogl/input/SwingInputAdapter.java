@@ -7,6 +7,8 @@
  ******************************************************************************/
 package com.blackrook.ogl.input;
 
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
@@ -25,8 +27,8 @@ import com.blackrook.ogl.OGLSystem;
  */
 public class SwingInputAdapter implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener, OGLInputConstants
 {
-	/** Reference to target system. */
-	private OGLSystem system;
+	/** Queue of the target system. */
+	private OGLInputQueue queue;
 	/** Previous mouse coordinates, X. */
 	private int prevMouseX;
 	/** Previous mouse coordinates, Y. */
@@ -37,7 +39,7 @@ public class SwingInputAdapter implements MouseListener, MouseMotionListener, Mo
 	 */
 	public SwingInputAdapter(OGLSystem system)
 	{
-		this.system = system;
+		this.queue = system.getInputQueue();
 		prevMouseX = -1;
 		prevMouseY = -1;
 	}
@@ -56,7 +58,7 @@ public class SwingInputAdapter implements MouseListener, MouseMotionListener, Mo
 		prevMouseX = x;
 		prevMouseY = y;
 		
-		system.sendMouseMovement(dx, x, dy, y);
+		queue.postMouseMovement(dx, x, dy, y);
 	}
 	
 	@Override
@@ -83,13 +85,13 @@ public class SwingInputAdapter implements MouseListener, MouseMotionListener, Mo
 		switch (b)
 		{
 			case MouseEvent.BUTTON1:
-				system.sendMousePress(MOUSE_LEFT);
+				queue.postMousePress(MOUSE_LEFT);
 				break;
 			case MouseEvent.BUTTON2:
-				system.sendMousePress(MOUSE_CENTER);
+				queue.postMousePress(MOUSE_CENTER);
 				break;
 			case MouseEvent.BUTTON3:
-				system.sendMousePress(MOUSE_RIGHT);
+				queue.postMousePress(MOUSE_RIGHT);
 				break;
 		}
 	}
@@ -101,16 +103,16 @@ public class SwingInputAdapter implements MouseListener, MouseMotionListener, Mo
 		switch (b)
 		{
 			case MouseEvent.BUTTON1:
-				system.sendMouseRelease(MOUSE_LEFT);
+				queue.postMouseRelease(MOUSE_LEFT);
 				break;
 			case MouseEvent.BUTTON2:
-				system.sendMouseRelease(MOUSE_CENTER);
+				queue.postMouseRelease(MOUSE_CENTER);
 				break;
 			case MouseEvent.BUTTON3:
-				system.sendMouseRelease(MOUSE_RIGHT);
+				queue.postMouseRelease(MOUSE_RIGHT);
 				break;
 			default:
-				system.sendMouseRelease(MOUSE_UNDEFINED);
+				queue.postMouseRelease(MOUSE_UNDEFINED);
 				break;
 		}
 	}
@@ -118,40 +120,57 @@ public class SwingInputAdapter implements MouseListener, MouseMotionListener, Mo
 	@Override
 	public void mouseWheelMoved(MouseWheelEvent event)
 	{
-		system.sendMouseWheel(event.getWheelRotation());
+		queue.postMouseWheel(event.getWheelRotation());
 	}
 
 	@Override
 	public void mouseEntered(MouseEvent e)
 	{
-		system.sendMouseEntered();
+		queue.postMouseEntered();
 	}
 
 	@Override
 	public void mouseExited(MouseEvent e)
 	{
-		system.sendMouseExited();
+		queue.postMouseExited();
+	}
+
+	// Some platforms (X11) send key repeats as release-press pairs with the same time, with the press already queued.
+	private static boolean isRepeatRelease(KeyEvent event)
+	{
+		AWTEvent next;
+		try {
+			next = Toolkit.getDefaultToolkit().getSystemEventQueue().peekEvent(KeyEvent.KEY_PRESSED);
+		} catch (SecurityException e) {
+			return false;
+		}
+		if (!(next instanceof KeyEvent))
+			return false;
+		KeyEvent press = (KeyEvent)next;
+		return press.getKeyCode() == event.getKeyCode() && press.getWhen() - event.getWhen() <= 1L;
 	}
 
 	@Override
 	public void keyPressed(KeyEvent event)
 	{
 		// The input constants are equivalent to KEY_*, so, don't convert.
-		system.sendKeyPress(event.getKeyCode());
+		queue.postKeyPress(event.getKeyCode());
 	}
 
 	@Override
 	public void keyReleased(KeyEvent event)
 	{
+		if (isRepeatRelease(event))
+			return;
 		// The input constants are equivalent to KEY_*, so, don't convert.
-		system.sendKeyRelease(event.getKeyCode());
+		queue.postKeyRelease(event.getKeyCode());
 	}
 
 	@Override
 	public void keyTyped(KeyEvent event)
 	{
 		// The input constants are equivalent to KEY_*, so, don't convert.
-		system.sendKeyTyped(event.getKeyCode());
+		queue.postKeyTyped(event.getKeyCode());
 	}
 
 }
@@ -7,19 +7,26 @@
  ******************************************************************************/
 package com.blackrook.ogl.node;
 
-import com.blackrook.commons.list.List;
 import com.blackrook.ogl.OGLCanvasNode;
 import com.blackrook.ogl.OGLGraphics;
+import com.blackrook.ogl.OGLInputRouter;
+import com.blackrook.ogl.OGLNodeList;
+import com.blackrook.ogl.OGLNodeTimer;
+import com.blackrook.ogl.OGLProfiler;
+import com.blackrook.ogl.OGLTimerQueryRing;
+import com.blackrook.ogl.input.OGLInputSubscriber;
 
 /**
  * An listener node that contains other {@link OGLCanvasNode}s.
  * Contains methods to invoke before they are displayed and after they are displayed.
  * @author Matthew Tropiano
  */
-public class OGLMultiNode implements OGLCanvasNode
+public class OGLMultiNode implements OGLCanvasNode, OGLInputRouter.Container
 {
 	/** Canvas listener list. */
-	private List<OGLCanvasNode> canvasNodeList;
+	private OGLNodeList canvasNodeList;
+	/** Routes input to the contained nodes. */
+	private OGLInputRouter inputRouter;
 
 	/** Is this layer (and its children) enabled? */
 	private boolean enabled;
@@ -31,37 +38,103 @@ public class OGLMultiNode implements OGLCanvasNode
 	/** Polygons Rendered */
 	protected int polygonsRendered;
 
+	/** Is per-node GPU timing enabled? */
+	private boolean gpuTimingEnabled;
+	/** Per-node GPU timer, if GPU timing is enabled and supported. */
+	private OGLNodeTimer gpuTimer;
+
 	/**
 	 * The default constructor.
 	 */
 	public OGLMultiNode()
 	{
-		canvasNodeList = new List<OGLCanvasNode>(4);
+		canvasNodeList = new OGLNodeList();
+		inputRouter = new OGLInputRouter(canvasNodeList);
 		enabled = true;
 		acceptsInput = true;
+		gpuTimingEnabled = false;
+		gpuTimer = null;
 	}
 
 	/**
 	 * Adds a CanvasNode to this system.
+	 * Can be called from any thread: the node is displayed starting with the next display.
 	 */
 	public void addCanvasNode(OGLCanvasNode l)
 	{
 		canvasNodeList.add(l);
+		inputRouter.attach(l);
 	}
 
 	/**
 	 * Removes a CanvasListener from this system.
+	 * Can be called from any thread: the node is no longer displayed starting with the next display.
 	 */
 	public boolean removeCanvasNode(OGLCanvasNode l)
 	{
-		return canvasNodeList.remove(l);
+		if (!canvasNodeList.remove(l))
+			return false;
+		OGLNodeTimer timer = gpuTimer;
+		if (timer != null)
+			timer.remove(l);
+		inputRouter.release(l);
+		return true;
+	}
+
+	@Override
+	public OGLInputRouter getInputRouter()
+	{
+		return inputRouter;
+	}
+
+	/**
+	 * Rebuilds the input routing on the next event.
+	 * Call this if the input event mask of a contained node changes.
+	 * @see OGLInputSubscriber
+	 */
+	public void invalidateInputRouting()
+	{
+		inputRouter.invalidate();
+	}
+
+	/**
+	 * Sets if the GPU time of each contained node is measured.
+	 * This uses timer queries, and only has an effect if {@link OGLGraphics#supportsTimerQueries()} is true.
+	 * Queries are created or freed on the next display.
+	 * @param enabled true to enable, false to disable.
+	 * @see #getNodeGPUTimeNanos(OGLCanvasNode)
+	 */
+	public void setGPUTimingEnabled(boolean enabled)
+	{
+		this.gpuTimingEnabled = enabled;
+	}
+
+	/**
+	 * Gets if the GPU time of each contained node is measured.
+	 * @see #setGPUTimingEnabled(boolean)
+	 */
+	public boolean isGPUTimingEnabled()
+	{
+		return gpuTimingEnabled;
+	}
+
+	/**
+	 * Returns the GPU time it took to render a contained node, in nanoseconds.
+	 * The result is from a frame a few frames ago, since GPU results are read back without waiting.
+	 * @param node the node.
+	 * @return the time in nanoseconds, or -1 if GPU timing is not enabled, not supported, or no result is available yet.
+	 * @see #setGPUTimingEnabled(boolean)
+	 */
+	public long getNodeGPUTimeNanos(OGLCanvasNode node)
+	{
+		return gpuTimer != null ? gpuTimer.getGPUTimeNanos(node) : -1L;
 	}
 
 	@Override
 	public void onCanvasResize(int new_width, int new_height)
 	{
 		preCanvasResize(new_width, new_height);
-		for (OGLCanvasNode sys : canvasNodeList)
+		for (OGLCanvasNode sys : canvasNodeList.getNodes())
 			sys.onCanvasResize(new_width, new_height);
 		postCanvasResize(new_width, new_height);
 	}
@@ -71,12 +144,25 @@ public class OGLMultiNode implements OGLCanvasNode
 	{
 		polygonsRendered = 0;
 		long nanos = System.nanoTime();
+		gpuTimer = OGLNodeTimer.update(g, gpuTimer, gpuTimingEnabled);
+		OGLProfiler profiler = g.getSystem().getProfiler();
 		preNodeDisplay(g);
-		for (OGLCanvasNode sys : canvasNodeList)
+		for (OGLCanvasNode sys : canvasNodeList.getNodes())
 		{
 			if (sys.isEnabled())
 			{
-				sys.display(g);
+				if (profiler != null)
+					profiler.push(g, sys);
+				if (gpuTimer != null)
+				{
+					OGLTimerQueryRing ring = gpuTimer.start(g, sys);
+					sys.display(g);
+					ring.end(g);
+				}
+				else
+					sys.display(g);
+				if (profiler != null)
+					profiler.pop(g);
 				polygonsRendered += sys.getPolygonsRendered();
 			}
 		}
@@ -123,152 +209,79 @@ public class OGLMultiNode implements OGLCanvasNode
 	@Override
 	public boolean glKeyPress(int keycode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glKeyPress(keycode))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.keyPress(keycode);
 	}
 
 	@Override
 	public boolean glKeyRelease(int keycode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glKeyRelease(keycode))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.keyRelease(keycode);
 	}
 
 	@Override
 	public boolean glKeyTyped(int keycode)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glKeyTyped(keycode))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.keyTyped(keycode);
 	}
 
 	@Override
 	public boolean glMousePress(int mousebutton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glMousePress(mousebutton))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.mousePress(mousebutton);
 	}
 
 	@Override
 	public boolean glMouseRelease(int mousebutton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glMouseRelease(mousebutton))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.mouseRelease(mousebutton);
 	}
 
 	@Override
 	public boolean glMouseWheel(int units)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glMouseWheel(units))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.mouseWheel(units);
 	}
 
 	@Override
 	public void glMouseMove(int unitsX, int coordinateX, int units, int coordinate)
 	{
-		for (OGLCanvasNode node : canvasNodeList)
-			node.glMouseMove(unitsX, coordinateX, units, coordinate);
+		inputRouter.mouseMove(unitsX, coordinateX, units, coordinate);
 	}
 
 	@Override
 	public void glMouseEnter()
 	{
-		for (OGLCanvasNode node : canvasNodeList)
-			node.glMouseEnter();
+		inputRouter.mouseEnter();
 	}
 
 	@Override
 	public void glMouseExit()
 	{
-		for (OGLCanvasNode node : canvasNodeList)
-			node.glMouseExit();
+		inputRouter.mouseExit();
 	}
 
 	@Override
 	public boolean glGamepadPress(int gamepadId, int gamepadButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glGamepadPress(gamepadId, gamepadButton))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.gamepadPress(gamepadId, gamepadButton);
 	}
 
 	@Override
 	public boolean glGamepadRelease(int gamepadId, int gamepadButton)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glGamepadRelease(gamepadId, gamepadButton))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.gamepadRelease(gamepadId, gamepadButton);
 	}
 
 	@Override
 	public boolean glGamepadAxisChange(int gamepadId, int gamepadAxisId, float value)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glGamepadAxisChange(gamepadId, gamepadAxisId, value))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.gamepadAxis(gamepadId, gamepadAxisId, value);
 	}
 
 	@Override
 	public boolean glGamepadAxisTap(int gamepadId, int gamepadAxisId, boolean positive)
 	{
-		// goes backwards. last to be drawn is closest to the screen.
-		if (acceptsInput) for (int i = canvasNodeList.size()-1; i >= 0; i--)
-		{
-			OGLCanvasNode node = canvasNodeList.getByIndex(i);
-			if (node != null && node.isEnabled() && node.glGamepadAxisTap(gamepadId, gamepadAxisId, positive))
-				return true;
-		}
-		return false;
+		return acceptsInput && inputRouter.gamepadAxisTap(gamepadId, gamepadAxisId, positive);
 	}
 
 	@Override
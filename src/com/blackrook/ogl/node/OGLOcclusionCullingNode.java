@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2014-2015 Black Rook Software
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.ogl.node;
+
+import com.blackrook.ogl.OGLGraphics;
+import com.blackrook.ogl.OGLOcclusionQuery;
+import com.blackrook.ogl.OGLOcclusionQueryPool;
+import com.blackrook.ogl.enums.AttribType;
+
+/**
+ * A multi-node that skips displaying its children when a cheap proxy 
+ * of them (usually a bounding box) is hidden behind what was already drawn.
+ * <p>
+ * Each frame, the proxy is drawn with color and depth writes off, inside an occlusion query. 
+ * Query results are never waited on, so culling decisions lag by at least a frame:
+ * children are skipped only if the most recently available result says no samples passed.
+ * If the device supports conditional rendering, visible children are also drawn conditionally
+ * on the current frame's query, so the GPU can still skip them if the proxy turns out hidden.
+ * <p>
+ * Because of the lag, children may be drawn a frame late when they come into view,
+ * so the proxy should be a bit larger than what it bounds for fast-moving views.
+ * If the device does not support occlusion queries, this behaves like a plain {@link OGLMultiNode}.
+ * @author Matthew Tropiano
+ */
+public abstract class OGLOcclusionCullingNode extends OGLMultiNode
+{
+	/** The query pool. */
+	private OGLOcclusionQueryPool queryPool;
+	/** Is conditional rendering used, if supported? */
+	private boolean conditionalRenderEnabled;
+	/** Was this culled last display? */
+	private boolean culled;
+	/** Number of displays culled. */
+	private long culledCount;
+
+	/**
+	 * Creates a new occlusion culling node.
+	 */
+	public OGLOcclusionCullingNode()
+	{
+		this(new OGLOcclusionQueryPool());
+	}
+
+	/**
+	 * Creates a new occlusion culling node that shares a query pool with other nodes.
+	 * @param queryPool the query pool to use.
+	 */
+	public OGLOcclusionCullingNode(OGLOcclusionQueryPool queryPool)
+	{
+		super();
+		this.queryPool = queryPool;
+		this.conditionalRenderEnabled = true;
+		this.culled = false;
+		this.culledCount = 0L;
+	}
+
+	@Override
+	public void display(OGLGraphics g)
+	{
+		if (!g.supportsOcclusionQueries())
+		{
+			culled = false;
+			super.display(g);
+			return;
+		}
+
+		long nanos = System.nanoTime();
+		g.attribPush(AttribType.COLOR_BUFFER, AttribType.DEPTH_BUFFER);
+		g.setColorMask(false, false, false, false);
+		g.setDepthMask(false);
+		OGLOcclusionQuery query = queryPool.startQuery(g, this);
+		drawProxy(g);
+		queryPool.endQuery(g);
+		g.attribPop();
+
+		culled = !queryPool.isVisible(this);
+		if (culled)
+		{
+			culledCount++;
+			polygonsRendered = 0;
+			renderTimeNanos = System.nanoTime() - nanos;
+			return;
+		}
+
+		// conditional renders cannot be nested.
+		if (conditionalRenderEnabled && g.supportsConditionalRender() && !g.isConditionalRenderActive())
+		{
+			g.startConditionalRender(query, false);
+			super.display(g);
+			g.endConditionalRender();
+		}
+		else
+			super.display(g);
+	}
+
+	/**
+	 * Draws the proxy for this node's children, usually a bounding box.
+	 * Color and depth writes are off while this is called; everything else 
+	 * (transforms, depth test) is as it was when this node was displayed.
+	 * @param g the graphics context to use.
+	 */
+	public abstract void drawProxy(OGLGraphics g);
+
+	/**
+	 * Sets if visible children are drawn conditionally on the current frame's query result,
+	 * if the device supports it. True by default.
+	 * @param enabled true to enable, false to disable.
+	 */
+	public void setConditionalRenderEnabled(boolean enabled)
+	{
+		this.conditionalRenderEnabled = enabled;
+	}
+
+	/**
+	 * Gets if visible children are drawn conditionally on the current frame's query result.
+	 */
+	public boolean isConditionalRenderEnabled()
+	{
+		return conditionalRenderEnabled;
+	}
+
+	/**
+	 * Returns true if the children were skipped on the last display, false otherwise.
+	 */
+	public boolean isCulled()
+	{
+		return culled;
+	}
+
+	/**
+	 * Returns the number of displays where the children were skipped.
+	 */
+	public long getCulledCount()
+	{
+		return culledCount;
+	}
+
+	/**
+	 * Returns the query pool used by this node.
+	 */
+	public OGLOcclusionQueryPool getQueryPool()
+	{
+		return queryPool;
+	}
+
+	/**
+	 * Releases this node's queries back to its pool.
+	 * The pool itself is not destroyed, since it may be shared.
+	 * @param g the graphics context to use.
+	 */
+	public void releaseQueries(OGLGraphics g)
+	{
+		queryPool.remove(this);
+		queryPool.cleanup(g);
+	}
+
+}